@@ -0,0 +1,47 @@
+package goodRectangle.infinidecimal.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import goodRectangle.infinidecimal.Infinidecimal;
+import goodRectangle.infinidecimal.InfinidecimalCore;
+import processing.awt.PGraphicsJava2D;
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+/**
+ * BufferBenchmark.java - buffered drawing benchmark of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Draws a rectangle on the buffer canvas and applies it, on the Processing
+ * canvas. The buffer is a Java2D graphics, which Processing can only create
+ * with a display, so exclude this benchmark with -e BufferBenchmark on
+ * headless machines.
+ */
+public class BufferBenchmark extends CanvasBenchmark {
+	Infinidecimal canvas;
+
+	@Override
+	InfinidecimalCore Create(int w, int h) {
+		// The sketch is not run, so give it the graphics it would have had,
+		// which createGraphics() looks at.
+		PApplet app = new PApplet();
+		PGraphicsJava2D g = new PGraphicsJava2D();
+		g.setParent(app);
+		g.setPrimary(false);
+		g.setSize(w, h);
+		app.g = g;
+
+		canvas = new Infinidecimal(app, w, h);
+		return canvas;
+	}
+
+	@Benchmark
+	public void ApplyBuffer() {
+		int a = Next();
+		PGraphics buffer = canvas.GetBufferCanvas();
+		buffer.noStroke();
+		buffer.fill(128);
+		buffer.rect(rx[a], ry[a], 100, 100);
+		canvas.ApplyBuffer();
+	}
+}
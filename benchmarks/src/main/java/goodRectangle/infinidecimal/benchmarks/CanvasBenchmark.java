@@ -0,0 +1,76 @@
+package goodRectangle.infinidecimal.benchmarks;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.*;
+
+import goodRectangle.infinidecimal.InfinidecimalCore;
+
+/**
+ * CanvasBenchmark.java - shared state of the Infinidecimal Canvas benchmarks
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Holds a headless canvas of the benchmarked resolution and precomputed random
+ * positions on it, so the timings only contain the canvas's own work. The
+ * canvas is cleared and normalized before every iteration. The benchmarks pick their
+ * positions with an increasing counter, like the Benchmark example sketch.
+ *
+ * Run with -prof gc to see the allocation rate of every case, including the
+ * work done on the fork-join pool.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class CanvasBenchmark {
+	/** Number of precomputed positions. */
+	static final int N = 4096;
+
+	@Param({ "512", "2048" })
+	public int resolution;
+
+	InfinidecimalCore idc;
+	float[] rx = new float[N];
+	float[] ry = new float[N];
+	int i;
+
+	@Setup(Level.Trial)
+	public void SetupCanvas() {
+		idc = Create(resolution, resolution);
+
+		Random random = new Random(0);
+		for (int k = 0; k < N; k++) {
+			rx[k] = random.nextFloat() * resolution;
+			ry[k] = random.nextFloat() * resolution;
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void ClearCanvas() {
+		idc.Clear();
+		idc.SetNormalize(true);
+		i = 0;
+	}
+
+	/**
+	 * Creates the canvas to benchmark.
+	 *
+	 * @param w: width of the canvas
+	 * @param h: height of the canvas
+	 * @return InfinidecimalCore
+	 */
+	InfinidecimalCore Create(int w, int h) {
+		return new InfinidecimalCore(w, h);
+	}
+
+	/**
+	 * Returns the index of the next position to draw at.
+	 *
+	 * @return int
+	 */
+	int Next() {
+		i = (i + 1) % N;
+		return i;
+	}
+}
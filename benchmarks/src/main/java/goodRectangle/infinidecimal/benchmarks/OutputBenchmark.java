@@ -0,0 +1,57 @@
+package goodRectangle.infinidecimal.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * OutputBenchmark.java - batch and output benchmarks of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Batched lines, the full and the incremental output and reading the values.
+ * The full cases switch normalization every call, so every call plots the
+ * whole canvas again. Lines are counted one line per operation, so they
+ * compare with Line() of StrokeBenchmark.
+ */
+public class OutputBenchmark extends CanvasBenchmark {
+	float[] coords;
+	int[] pixels;
+
+	@Setup(Level.Trial)
+	public void SetupArrays() {
+		coords = new float[4 * N];
+		for (int k = 0; k < N; k++) {
+			coords[4 * k] = rx[k];
+			coords[4 * k + 1] = ry[k];
+			coords[4 * k + 2] = rx[(k + 1) % N];
+			coords[4 * k + 3] = ry[(k + 1) % N];
+		}
+
+		pixels = new int[resolution * resolution];
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(N)
+	public void Lines() {
+		idc.Lines(coords);
+	}
+
+	@Benchmark
+	public int[] OutputFull() {
+		idc.SetNormalize(Next() % 2 == 0);
+		idc.Output(pixels);
+		return pixels;
+	}
+
+	@Benchmark
+	public int[] OutputIncremental() {
+		int a = Next();
+		idc.Dot(rx[a], ry[a]);
+		idc.Output(pixels);
+		return pixels;
+	}
+
+	@Benchmark
+	public float[] GetValues() {
+		idc.SetNormalize(Next() % 2 == 0);
+		return idc.GetValues();
+	}
+}
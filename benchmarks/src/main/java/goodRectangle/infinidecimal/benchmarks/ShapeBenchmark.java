@@ -0,0 +1,39 @@
+package goodRectangle.infinidecimal.benchmarks;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * ShapeBenchmark.java - shape benchmarks of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Ellipses and a random 256 x 256 image at the precomputed positions, at
+ * several sizes.
+ */
+public class ShapeBenchmark extends CanvasBenchmark {
+	@Param({ "32", "256" })
+	public float size;
+
+	int[] source;
+
+	@Setup(Level.Trial)
+	public void SetupSource() {
+		Random random = new Random(0);
+		source = new int[256 * 256];
+		for (int k = 0; k < source.length; k++)
+			source[k] = 0xFF000000 | random.nextInt(0x1000000);
+	}
+
+	@Benchmark
+	public void Ellipse() {
+		int a = Next();
+		idc.Ellipse(rx[a], ry[a], size, size);
+	}
+
+	@Benchmark
+	public void Image() {
+		int a = Next();
+		idc.Image(source, 256, 256, rx[a], ry[a], size, size);
+	}
+}
@@ -0,0 +1,34 @@
+package goodRectangle.infinidecimal.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * StrokeBenchmark.java - stroke benchmarks of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Lines and cubic beziers between the precomputed positions, at several
+ * stroke weights.
+ */
+public class StrokeBenchmark extends CanvasBenchmark {
+	@Param({ "1", "4", "16" })
+	public float weight;
+
+	@Setup(Level.Trial)
+	public void SetupWeight() {
+		idc.SetWeight(weight);
+	}
+
+	@Benchmark
+	public void Line() {
+		int a = Next();
+		int b = (a + 1) % N;
+		idc.Line(rx[a], ry[a], rx[b], ry[b]);
+	}
+
+	@Benchmark
+	public void CubicBezier() {
+		int a = Next();
+		int b = (a + 1) % N, c = (a + 2) % N, d = (a + 3) % N;
+		idc.CubicBezier(rx[a], ry[a], rx[b], ry[b], rx[c], ry[c], rx[d], ry[d]);
+	}
+}
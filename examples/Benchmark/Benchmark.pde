@@ -0,0 +1,197 @@
+/**
+  * Infinidecimal Canvas Benchmark
+  * Copyright (C) 2020 C. Sina Cetin
+  *
+  * Measures the throughput of IDC's drawing functions, the output and the
+  * buffered drawing, so changes to the library can be checked for
+  * regressions. Results are printed to the console as operations per
+  * second and bytes allocated per operation.
+  *
+  * Every case is run once to warm up and then timed for a fixed duration,
+  * on freshly cleared canvases of each resolution. Shapes are drawn from
+  * precomputed random positions, so the timings only contain IDC's own work.
+  *
+  * Allocations are counted on the sketch thread only. The work done on the
+  * fork-join pool by Output(), GetValues() and Lines() is included in the
+  * timings, but not in the allocation counts.
+  *
+  * Close other programs and leave the sketch window alone while it runs.
+  * Compare results taken on the same machine only. The same cases are kept
+  * as JMH benchmarks in the benchmarks folder of the source, which give more
+  * reliable numbers and the allocations of every thread.
+  */
+
+import goodRectangle.infinidecimal.*;
+import java.lang.management.ManagementFactory;
+
+int[] resolutions = { 512, 2048 };
+float[] weights = { 1, 4, 16 };
+float[] sizes = { 32, 256 };
+
+int warmupMillis = 1000;
+int runMillis = 2000;
+
+int n = 4096;
+float[] rx = new float[n];
+float[] ry = new float[n];
+
+Infinidecimal idc;
+PImage source;
+
+void setup() {
+  size(200, 200);
+
+  randomSeed(0);
+  source = createImage(256, 256, RGB);
+  source.loadPixels();
+  for (int i = 0; i < source.pixels.length; i++)
+    source.pixels[i] = color(random(255), random(255), random(255));
+  source.updatePixels();
+
+  println("case", "resolution", "param", "ops/s", "bytes/op");
+
+  for (int res : resolutions) {
+    idc = new Infinidecimal(this, res, res);
+
+    for (int i = 0; i < n; i++) {
+      rx[i] = random(res);
+      ry[i] = random(res);
+    }
+
+    for (float w : weights) {
+      idc.SetWeight(w);
+
+      Measure("Line", res, w, new Bench() {
+        void Run(int i) {
+          idc.Line(rx[i], ry[i], rx[(i + 1) % n], ry[(i + 1) % n]);
+        }
+      });
+
+      Measure("CubicBezier", res, w, new Bench() {
+        void Run(int i) {
+          idc.CubicBezier(rx[i], ry[i], rx[(i + 1) % n], ry[(i + 1) % n], rx[(i + 2) % n], ry[(i + 2) % n], rx[(i + 3) % n], ry[(i + 3) % n]);
+        }
+      });
+    }
+
+    idc.SetWeight(1);
+
+    for (final float s : sizes) {
+      Measure("Ellipse", res, s, new Bench() {
+        void Run(int i) {
+          idc.Ellipse(rx[i], ry[i], s, s);
+        }
+      });
+
+      Measure("Image", res, s, new Bench() {
+        void Run(int i) {
+          idc.Image(source, rx[i], ry[i], s, s);
+        }
+      });
+    }
+
+    final float[] coords = new float[4 * n];
+    for (int i = 0; i < n; i++) {
+      coords[4 * i] = rx[i];
+      coords[4 * i + 1] = ry[i];
+      coords[4 * i + 2] = rx[(i + 1) % n];
+      coords[4 * i + 3] = ry[(i + 1) % n];
+    }
+
+    Measure("Lines", res, n, new Bench() {
+      void Run(int i) {
+        idc.Lines(coords);
+      }
+    });
+
+    Measure("Output (full)", res, 0, new Bench() {
+      void Run(int i) {
+        idc.SetNormalize(i % 2 == 0);
+        idc.Output();
+      }
+    });
+
+    Measure("Output (one dot)", res, 0, new Bench() {
+      void Run(int i) {
+        idc.Dot(rx[i], ry[i]);
+        idc.Output();
+      }
+    });
+
+    Measure("GetValues (full)", res, 0, new Bench() {
+      void Run(int i) {
+        idc.SetNormalize(i % 2 == 0);
+        idc.GetValues();
+      }
+    });
+
+    idc.SetNormalize(true);
+
+    Measure("ApplyBuffer", res, 0, new Bench() {
+      void Run(int i) {
+        PGraphics buffer = idc.GetBufferCanvas();
+        buffer.noStroke();
+        buffer.fill(128);
+        buffer.rect(rx[i], ry[i], 100, 100);
+        idc.ApplyBuffer();
+      }
+    });
+  }
+
+  println("done");
+  exit();
+}
+
+/**
+  * A single benchmark case. Run() is called with an increasing counter,
+  * which the cases use to pick their precomputed positions.
+  */
+abstract class Bench {
+  abstract void Run(int i);
+}
+
+/**
+  * Warms up and times a benchmark case on a cleared canvas, and prints
+  * its throughput and allocation rate.
+  */
+void Measure(String name, int res, float param, Bench bench) {
+  idc.Clear();
+  Repeat(bench, warmupMillis);
+
+  idc.Clear();
+  long bytes = AllocatedBytes();
+  long start = System.nanoTime();
+  int ops = Repeat(bench, runMillis);
+  double seconds = (System.nanoTime() - start) / 1e9;
+  bytes = AllocatedBytes() - bytes;
+
+  println(name, res, param, String.format("%.1f", ops / seconds), bytes / ops);
+}
+
+/**
+  * Runs the case until the given duration has passed, and returns the
+  * number of runs. The clock is checked every 16 runs, so that reading
+  * it does not show up in the timings of the fast cases.
+  */
+int Repeat(Bench bench, int millis) {
+  long end = System.nanoTime() + millis * 1000000L;
+  int ops = 0;
+
+  do {
+    for (int i = 0; i < 16; i++, ops++)
+      bench.Run(ops % n);
+  } while (System.nanoTime() < end);
+
+  return ops;
+}
+
+/**
+  * Returns the number of bytes allocated by the sketch thread so far, or
+  * zero if the JVM does not report it.
+  */
+long AllocatedBytes() {
+  java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+  if (bean instanceof com.sun.management.ThreadMXBean)
+    return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+  return 0;
+}
@@ -0,0 +1,184 @@
+package goodRectangle.infinidecimal;
+
+/**
+ * InfinidecimalChannels.java - multi-channel Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * A headless canvas that accumulates a number of channels at once, for
+ * colored accumulation. Every shape is drawn once, and what it leaves is
+ * added to each channel scaled by the intensity of the channel, see
+ * SetChannelIntensities(). The channels are kept in an array each.
+ *
+ * The outputs, Preview() and the levels map the channels to 0 - 1 range
+ * with the normalization and the tone mapping of the canvas, and add them up
+ * in the color of each channel, see SetChannelColor(). The histogram, the
+ * range and GetValues() look at the highest value of the channels at each
+ * pixel.
+ *
+ * Snapshots keep every channel, and can only be loaded into or merged with
+ * canvases of the same number of channels. Canvases are merged channel by
+ * channel, with canvases of the same number of channels only.
+ */
+public class InfinidecimalChannels extends InfinidecimalCore {
+	private final ValueStore.ChannelStore store;
+	private final float[][] colors;
+
+	/**
+	 * Creates a canvas with red, green and blue channels
+	 *
+	 * @param w: the desired width of the canvas
+	 * @param h: the desired height of the canvas
+	 */
+	public InfinidecimalChannels(int w, int h) {
+		this(w, h, 3);
+	}
+
+	/**
+	 * Creates a canvas with the given number of channels. The channels are
+	 * colored red, green and blue in turn until SetChannelColor() is used.
+	 *
+	 * @param w:        the desired width of the canvas
+	 * @param h:        the desired height of the canvas
+	 * @param channels: the number of channels
+	 */
+	public InfinidecimalChannels(int w, int h, int channels) {
+		this(w, h, new ValueStore.ChannelStore(Check(channels), ValueStore.Length(w, h)), null);
+	}
+
+	/**
+	 * Private Function
+	 * Creates a canvas on the given channels, with the given colors or with
+	 * red, green and blue in turn if they are null.
+	 */
+	private InfinidecimalChannels(int w, int h, ValueStore.ChannelStore store, float[][] colors) {
+		super(w, h, Storage.CHANNELS, store);
+		this.store = store;
+
+		if (colors == null) {
+			colors = new float[store.Channels()][3];
+			for (int c = 0; c < colors.length; c++)
+				colors[c][c % 3] = 255;
+		}
+		this.colors = colors;
+	}
+
+	/**
+	 * Private Function
+	 * Returns the number of channels if it is valid.
+	 */
+	private static int Check(int channels) {
+		if (channels < 1)
+			throw new IllegalArgumentException("A canvas needs at least one channel: " + channels);
+		return channels;
+	}
+
+	/**
+	 * Returns the number of channels
+	 *
+	 * @return int
+	 */
+	public int Channels() {
+		return store.Channels();
+	}
+
+	/**
+	 * Sets the intensity of every channel, which scales what the shapes drawn
+	 * from now on add to it, on top of the intensity of the pen. All channels
+	 * start at 1. The intensities are shared by all threads in concurrent
+	 * mode.
+	 *
+	 * @param intensities: intensity of every channel
+	 */
+	public void SetChannelIntensities(float... intensities) {
+		if (intensities.length != store.Channels())
+			throw new IllegalArgumentException("Expected " + store.Channels() + " channel intensities, got " + intensities.length);
+
+		store.SetGains(intensities.clone());
+	}
+
+	/**
+	 * Sets the color a channel is added to the output image with, in RGB
+	 * values from 0 to 255.
+	 *
+	 * @param c: index of the channel
+	 * @param r: red value
+	 * @param g: green value
+	 * @param b: blue value
+	 */
+	public void SetChannelColor(int c, float r, float g, float b) {
+		Lock();
+		try {
+			colors[c] = new float[] { r, g, b };
+		} finally {
+			Unlock();
+		}
+	}
+
+	/**
+	 * Returns the values currently recorded in a channel. The array is the one
+	 * the channel is kept in, not a copy.
+	 *
+	 * @param c: index of the channel
+	 * @return float[]
+	 */
+	public float[] GetChannelRaw(int c) {
+		Sync();
+
+		return store.Floats(c);
+	}
+
+	/**
+	 * Plots the output image into the given ARGB pixel array of the canvas
+	 * size, adding up the channels in their colors in a single pass.
+	 *
+	 * @param pixels: pixel array of the canvas size
+	 */
+	@Override
+	public void Output(int[] pixels) {
+		Composite(pixels, 0, 0, 0, Width(), Height(), colors);
+	}
+
+	/**
+	 * Plots a part of the output image, adding up the channels in their
+	 * colors, see InfinidecimalCore.Output(int[] pixels, int x, int y, int
+	 * sizex, int sizey).
+	 *
+	 * @param pixels: pixel array of the size of the area
+	 * @param x:      left anchor of the area
+	 * @param y:      top anchor of the area
+	 * @param sizex:  width of the area
+	 * @param sizey:  height of the area
+	 */
+	@Override
+	public void Output(int[] pixels, int x, int y, int sizex, int sizey) {
+		Composite(pixels, 0, x, y, sizex, sizey, colors);
+	}
+
+	/**
+	 * Plots a part of a level of the output image, adding up the channels in
+	 * their colors. Every channel keeps a pyramid of its own, see
+	 * InfinidecimalCore.Output(int[] pixels, int level, int x, int y, int
+	 * sizex, int sizey).
+	 *
+	 * @param pixels: pixel array of the size of the area
+	 * @param level:  level to plot, from 0 to Levels() - 1
+	 * @param x:      left anchor of the area, in pixels of the level
+	 * @param y:      top anchor of the area, in pixels of the level
+	 * @param sizex:  width of the area
+	 * @param sizey:  height of the area
+	 */
+	@Override
+	public void Output(int[] pixels, int level, int x, int y, int sizex, int sizey) {
+		Composite(pixels, level, x, y, sizex, sizey, colors);
+	}
+
+	/**
+	 * Private Function
+	 * Creates the canvas the preview is drawn from, with as many channels and
+	 * the same colors as this one.
+	 */
+	@Override
+	InfinidecimalCore NewPreview() {
+		return new InfinidecimalChannels(Width(), Height(), new ValueStore.ChannelStore(store.Channels(), ValueStore.Length(Width(), Height())), colors);
+	}
+}
@@ -0,0 +1,5071 @@
+package goodRectangle.infinidecimal;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * InfinidecimalCore.java - headless core of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Holds the value array, the drawing functions and the colorization of the
+ * canvas, without depending on a running sketch. Output is written into
+ * plain ARGB int arrays, so the core can be used on its own in batch
+ * renderers and on plain JVMs. The core does not depend on the Processing
+ * core library.
+ *
+ * Infinidecimal builds the Processing integration (PImage output, image
+ * input and the buffer canvas) on top of this class.
+ */
+public class InfinidecimalCore {
+	private int w;
+	private int h;
+	private int len;
+	private boolean centered;
+	private boolean normalize;
+
+	private ToneMap tone;
+	private float gamma;
+	private float percentLow, percentHigh;
+	private float toneLow, toneHigh;
+	private int toneVersion, mappedTone, outputTone;
+
+	private int[][] chunkHist;
+	private long[] hist;
+	private float[] cdf;
+	private int histSeen;
+
+	private Storage storage;
+	private ValueStore values;
+	private float[] vals01;
+	private boolean ready;
+
+	private float min, max;
+
+	private int blocks;
+	private int[] touched;
+	private float[] blockMin, blockMax;
+	private int epoch;
+	private int rangeSeen, mappedSeen, outputSeen;
+	private boolean mappedValid, outputValid;
+	private float mappedMin, mappedMax, outputMin, outputMax;
+
+	private Pen pen;
+
+	private StrokeBuffer stroke;
+	private ThreadLocal<StrokeBuffer> strokes;
+	private ThreadLocal<float[]> scratch;
+	private ThreadLocal<float[][]> colorScratch;
+
+	private boolean concurrent;
+	private ReentrantLock[] locks;
+
+	private StatsRecorder stats;
+
+	private float[][][] pyramid;
+	private int pyramidSeen;
+	private boolean pyramidMax, pyramidBuiltMax;
+
+	private Thread worker;
+	private InfinidecimalCore preview;
+	private int previewSeen;
+	private long previewTime;
+	private int previewInterval = 100;
+
+	private StampCache stampCache;
+
+	private static final float EPSILON = 0.0001f;
+
+	private static final int TILE = 128;
+	private static final int LINE_CHUNK = 1 << 16;
+	private static final int DOT_RUN = 1 << 12;
+	private static final int STRIPES = 64;
+	private static final int BLOCK_SHIFT = 12;
+	private static final int BLOCKS_PER_CHUNK = Parallel.CHUNK >> BLOCK_SHIFT;
+	private static final int BIN_SHIFT = 20;
+	private static final int BINS = 0x7F800000 >>> BIN_SHIFT;
+
+	private float[] colorMin = { 0, 0, 0 };
+	private float[] colorMax = { 255, 255, 255 };
+	private float[] stopPos = {};
+	private float[][] stopColor = {};
+	private boolean isHSB;
+
+	private static final int LUT_SIZE = 4096;
+	private int[] lut;
+	private int[] outputTarget;
+	private float[][] outputColors;
+
+	/**
+	 * Creates a headless canvas
+	 * 
+	 * @param w: the desired width of the canvas
+	 * @param h: the desired height of the canvas
+	 */
+	public InfinidecimalCore(int w, int h) {
+		this(w, h, Storage.FLOAT);
+	}
+
+	/**
+	 * Creates a headless canvas that keeps its value array in the given
+	 * storage backend. Storage.FIXED saturates just under 32768, see
+	 * IsSaturated().
+	 * 
+	 * @param w:       the desired width of the canvas
+	 * @param h:       the desired height of the canvas
+	 * @param storage: the backend of the value array
+	 */
+	public InfinidecimalCore(int w, int h, Storage storage) {
+		this(w, h, storage, ValueStore.Create(storage, ValueStore.Length(w, h)));
+	}
+
+	/**
+	 * Creates a headless canvas that keeps its value array in a memory-mapped
+	 * file, off the heap. If the file exists, drawing continues on the values
+	 * recorded in it, otherwise a new file is created.
+	 * 
+	 * The file can be larger than the heap and than 2 GiB, but the canvas is
+	 * still addressed by int pixel indices: w * h can be at most 2147483647
+	 * pixels (e.g. 32768x32768 or 46340x46340), otherwise an
+	 * IllegalArgumentException is thrown.
+	 * 
+	 * @param w:    the desired width of the canvas
+	 * @param h:    the desired height of the canvas
+	 * @param file: the file to keep the values in
+	 */
+	public InfinidecimalCore(int w, int h, java.io.File file) {
+		this(w, h, Storage.MAPPED, ValueStore.Map(file, w, h));
+	}
+
+	/**
+	 * Private Function
+	 * Creates a canvas on the given value array.
+	 */
+	InfinidecimalCore(int w, int h, Storage storage, ValueStore values) {
+		this.w = w;
+		this.h = h;
+		this.len = w * h;
+
+		this.storage = storage;
+		this.values = values;
+		vals01 = null;
+		ready = false;
+		min = max = 0;
+
+		blocks = (len + (1 << BLOCK_SHIFT) - 1) >> BLOCK_SHIFT;
+		touched = new int[blocks];
+		blockMin = new float[blocks];
+		blockMax = new float[blocks];
+		epoch = 0;
+		rangeSeen = mappedSeen = outputSeen = 0;
+		mappedValid = outputValid = false;
+
+		pen = new Pen(1, 1, false);
+
+		normalize = true;
+		tone = ToneMap.LINEAR;
+		gamma = 2.2f;
+		percentLow = 0;
+		percentHigh = 0.995f;
+		centered = false;
+		isHSB = false;
+
+		stroke = new StrokeBuffer();
+		strokes = new ThreadLocal<StrokeBuffer>() {
+			@Override
+			protected StrokeBuffer initialValue() {
+				return new StrokeBuffer();
+			}
+		};
+		stampCache = new StampCache();
+		scratch = new ThreadLocal<float[]>() {
+			@Override
+			protected float[] initialValue() {
+				return new float[1 << BLOCK_SHIFT];
+			}
+		};
+		colorScratch = new ThreadLocal<float[][]>() {
+			@Override
+			protected float[][] initialValue() {
+				return new float[3][1 << BLOCK_SHIFT];
+			}
+		};
+
+		concurrent = false;
+		locks = new ReentrantLock[STRIPES];
+		for (int i = 0; i < STRIPES; i++)
+			locks[i] = new ReentrantLock();
+	}
+
+	/**
+	 * Sets color intensity. This parameter is analogous of stroke, except it isn't
+	 * capped at 255.
+	 * 
+	 * @param val: new intensity value
+	 */
+	public void SetIntensity(float val) {
+		ready = false;
+		pen = pen.WithIntensity(val);
+	}
+
+	/**
+	 * Sets the stroke weight.
+	 * 
+	 * @param val: new stroke weight value
+	 */
+	public void SetWeight(float val) {
+		pen = pen.WithWeight(val);
+	}
+
+	/**
+	 * Returns the current pen, which holds the stroke weight, intensity and
+	 * carve mode set on the canvas.
+	 * 
+	 * @return Pen
+	 */
+	public Pen GetPen() {
+		return pen;
+	}
+
+	/**
+	 * Sets whether the canvas can be drawn on from multiple threads at once.
+	 * 
+	 * In concurrent mode, every thread records its shapes into a stroke buffer
+	 * of its own and applies it to the value array under one of a set of
+	 * striped locks, so threads only wait on each other when they draw over the
+	 * same region at the same time. Output(), GetValues(), Clear() and the
+	 * buffer canvas lock the entire value array.
+	 * 
+	 * Threads should pass their own Pen to the drawing functions instead of
+	 * changing the weight, intensity or carve mode of the canvas while others
+	 * are drawing. Switch the mode before starting the drawing threads.
+	 * 
+	 * @param state: the new concurrent mode
+	 */
+	public void SetConcurrent(boolean state) {
+		concurrent = state;
+	}
+
+	/**
+	 * Sets whether the canvas records statistics of its operations, which can
+	 * be read with GetStats(). Turning statistics on starts them from zero.
+	 * While they are off, recording costs a single check per operation.
+	 * 
+	 * @param state: the new statistics mode
+	 */
+	public void SetStats(boolean state) {
+		stats = state ? new StatsRecorder() : null;
+	}
+
+	/**
+	 * Returns a snapshot of the statistics recorded since they were turned
+	 * on, or null if they are off.
+	 * 
+	 * @return Stats
+	 */
+	public Stats GetStats() {
+		StatsRecorder rec = stats;
+		return rec == null ? null : rec.Snapshot();
+	}
+
+	/**
+	 * Returns the width of the canvas
+	 * 
+	 * @return int
+	 */
+	public int Width() {
+		return w;
+	}
+
+	/**
+	 * Returns the height of the canvas
+	 * 
+	 * @return int
+	 */
+	public int Height() {
+		return h;
+	}
+
+	/**
+	 * Returns the width of the given level of the canvas, which is the width
+	 * of the canvas halved as many times as the level, rounded up
+	 * 
+	 * @param level: level of the canvas, 0 being the canvas itself
+	 * @return int
+	 */
+	public int Width(int level) {
+		return (int) (((long) w + (1L << level) - 1) >> level);
+	}
+
+	/**
+	 * Returns the height of the given level of the canvas, which is the height
+	 * of the canvas halved as many times as the level, rounded up
+	 * 
+	 * @param level: level of the canvas, 0 being the canvas itself
+	 * @return int
+	 */
+	public int Height(int level) {
+		return (int) (((long) h + (1L << level) - 1) >> level);
+	}
+
+	/**
+	 * Returns the number of levels of the canvas, the last one being a single
+	 * pixel
+	 * 
+	 * @return int
+	 */
+	public int Levels() {
+		int levels = 1;
+		while (Width(levels - 1) > 1 || Height(levels - 1) > 1)
+			levels++;
+		return levels;
+	}
+
+	/**
+	 * Private Function
+	 * Used for strokes that plots overlapping points that would
+	 * otherwise cause inconsistent color values. The stroke buffer keeps a
+	 * unique list of points to be drawn.
+	 * 
+	 * @param map: buffer of points to be drawn
+	 */
+	private void ApplyStroke(StrokeBuffer map, Pen pen) {
+		ApplyStroke(map, pen.intensity, pen.carve);
+	}
+
+	/**
+	 * Private Function
+	 * Applies the stroke buffer to the value array, scaled by the given
+	 * intensity. In concurrent mode, each point is written under the lock of
+	 * its stripe, and a lock is only switched when the next point falls into
+	 * another stripe. Stripes interleave the blocks of the value array, so a
+	 * block is always guarded by the same lock.
+	 * 
+	 * @param map:   buffer of points to be drawn
+	 * @param val:   intensity to scale the points with
+	 * @param carve: subtracts the points from the value array if true
+	 */
+	private void ApplyStroke(StrokeBuffer map, float val, boolean carve) {
+		float s = (carve ? -1 : 1) * val;
+
+		StatsRecorder rec = stats;
+		if (rec != null)
+			rec.Stroke(map.Size());
+
+		if (!concurrent) {
+			for (int i = 0; i < map.Size(); i++) {
+				int k = map.Key(i);
+				values.Add(k, map.Value(i) * s);
+				touched[k >>> BLOCK_SHIFT] = epoch;
+			}
+			return;
+		}
+
+		int held = -1;
+		try {
+			for (int i = 0; i < map.Size(); i++) {
+				int k = map.Key(i);
+				int stripe = (k >>> BLOCK_SHIFT) & (STRIPES - 1);
+
+				if (stripe != held) {
+					if (held >= 0)
+						locks[held].unlock();
+					locks[stripe].lock();
+					held = stripe;
+				}
+
+				values.Add(k, map.Value(i) * s);
+				touched[k >>> BLOCK_SHIFT] = epoch;
+			}
+			ready = false;
+		} finally {
+			if (held >= 0)
+				locks[held].unlock();
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Starts recording an operation if statistics are on.
+	 * 
+	 * @param op: operation
+	 * @return the probe to be passed to End(), or null
+	 */
+	private StatsRecorder.Probe Begin(Stats.Op op) {
+		StatsRecorder rec = stats;
+		return rec == null ? null : rec.Begin(op);
+	}
+
+	/**
+	 * Private Function
+	 * Ends recording an operation started with Begin().
+	 * 
+	 * @param probe: probe returned by Begin()
+	 */
+	private static void End(StatsRecorder.Probe probe) {
+		if (probe != null)
+			probe.End();
+	}
+
+	/**
+	 * Private Function
+	 * Returns an empty stroke buffer for the calling thread.
+	 * 
+	 * @return StrokeBuffer
+	 */
+	private StrokeBuffer Stroke() {
+		StrokeBuffer map = concurrent ? strokes.get() : stroke;
+		map.Clear();
+		return map;
+	}
+
+	/**
+	 * Locks the entire value array in concurrent mode.
+	 */
+	void Lock() {
+		if (!concurrent)
+			return;
+
+		for (int i = 0; i < STRIPES; i++)
+			locks[i].lock();
+	}
+
+	/**
+	 * Releases the locks taken by Lock().
+	 */
+	void Unlock() {
+		for (int i = STRIPES - 1; i >= 0; i--)
+			if (locks[i].isHeldByCurrentThread())
+				locks[i].unlock();
+	}
+
+	/**
+	 * Private Function
+	 * Used for complex shapes that contains overlapping strokes,
+	 * that would otherwise cause inconsistent color values. This function merges
+	 * a sub-buffer into the currently open buffer and empties the sub-buffer.
+	 * 
+	 * @param source: sub-buffer to be applied to the current buffer
+	 * @param target: currently open buffer
+	 */
+	private void MergeMaps(StrokeBuffer source, StrokeBuffer target) {
+		source.MergeInto(target);
+		source.Clear();
+	}
+	
+	/**
+	 * Clears the values array.
+	 * Analogous of background(0);
+	 */
+	public void Clear() {
+		StatsRecorder.Probe probe = Begin(Stats.Op.CLEAR);
+		Lock();
+		try {
+			Parallel.For(Parallel.Chunks(len), new Parallel.Job() {
+				public void Run(int chunk) {
+					values.Zero(chunk * Parallel.CHUNK, Math.min(len, (chunk + 1) * Parallel.CHUNK));
+				}
+			});
+			java.util.Arrays.fill(touched, epoch);
+			ready = false;
+		} finally {
+			Unlock();
+		}
+
+		if (probe != null)
+			probe.pixels += len;
+		End(probe);
+	}
+	
+	/**
+	 * Clears a subsection of the canvas, anchored at (x, y) from
+	 * it's top left corner and with the size (sixex, sizey);
+	 * 
+	 * @param x: left anchor of the area
+	 * @param y: top anchor of the area
+	 * @param sizex: width of the area
+	 * @param sizey: height of the area
+	 */
+	public void Clear(int x, int y, int sizex, int sizey) {
+		StatsRecorder.Probe probe = Begin(Stats.Op.CLEAR);
+		int cleared = 0;
+
+		int x0 = Math.max(x, 0), x1 = (int) Math.min((long) x + sizex, w);
+		int y0 = Math.max(y, 0), y1 = (int) Math.min((long) y + sizey, h);
+
+		Lock();
+		try {
+			for (int py = y0; py < y1 && x0 < x1; py++) {
+				int from = py * w + x0, to = py * w + x1;
+
+				values.Zero(from, to);
+				for (int b = from >>> BLOCK_SHIFT; b <= (to - 1) >>> BLOCK_SHIFT; b++)
+					touched[b] = epoch;
+				cleared += x1 - x0;
+			}
+			
+			ready = false;
+		} finally {
+			Unlock();
+		}
+
+		if (probe != null)
+			probe.pixels += cleared;
+		End(probe);
+	}
+	
+	/**
+	 * When the carve mode is on, the intensity values are subtracted, not added to
+	 * the value array. This way, you can carve out with the shapes you draw.
+	 * 
+	 * Values are clipped at zero, which means a high enough intensity effectively
+	 * punches out an entire hole on the canvas.
+	 * 
+	 * Hint: Use in combination with the "MaxValue()" method.
+	 * 
+	 * @param state: new state of the carve mode
+	 */
+	public void SetCarve(boolean state) {
+		pen = pen.WithCarve(state);
+	}
+
+	/**
+	 * Plots an anti-aliased point on the value array, with the set intensity.
+	 * 
+	 * @param x: x position of the point
+	 * @param y: y position of the point
+	 */
+	public void Dot(float x, float y) {
+		Dot(x, y, pen.intensity, pen.carve);
+	}
+
+	/**
+	 * Plots an anti-aliased point on the value array, with the intensity
+	 * of the given pen.
+	 * 
+	 * @param x:   x position of the point
+	 * @param y:   y position of the point
+	 * @param pen: pen to draw with
+	 */
+	public void Dot(float x, float y, Pen pen) {
+		Dot(x, y, pen.intensity, pen.carve);
+	}
+
+	/**
+	 * Plots an anti-aliased point on the value array, with the
+	 * given intensity.
+	 * 
+	 * @param x:   x position of the point
+	 * @param y:   y position of the point
+	 * @param val: manually set intensity for the point
+	 */
+	public void Dot(float xf, float yf, float val) {
+		Dot(xf, yf, val, pen.carve);
+	}
+
+	/**
+	 * Private Function
+	 * Plots an anti-aliased point on the value array, going through
+	 * a stroke buffer in concurrent mode.
+	 * 
+	 * @param x:     x position of the point
+	 * @param y:     y position of the point
+	 * @param val:   manually set intensity for the point
+	 * @param carve: subtracts the point from the value array if true
+	 */
+	private void Dot(float xf, float yf, float val, boolean carve) {
+		StatsRecorder.Probe probe = Begin(Stats.Op.DOT);
+
+		if (!concurrent) {
+			Dot(xf, yf, val, null, false, carve, 0, 0, w, h);
+		} else {
+			StrokeBuffer map = Stroke();
+			Dot(xf, yf, val, map, true);
+			ApplyStroke(map, 1, carve);
+		}
+
+		End(probe);
+	}
+
+	/**
+	 * Private Function
+	 * Adds an anti-aliased point to the stroke buffer, with the
+	 * given intensity.
+	 * 
+	 * @param x:   x position of the point
+	 * @param y:   y position of the point
+	 * @param val: manually set intensity for the point
+	 * @param map: currently open buffer
+	 */
+	private void Dot(float xf, float yf, float val, StrokeBuffer map) {
+		Dot(xf, yf, val, map, false);
+	}
+
+	/**
+	 * Private Function
+	 * Adds or updates an anti-aliased point to the stroke buffer,
+	 * with the given intensity.
+	 * 
+	 * @param x:        x position of the point
+	 * @param y:        y position of the point
+	 * @param val:      manually set intensity for the point
+	 * @param map:      currently open buffer
+	 * @param additive: new points are replaced if false, added to existing values
+	 *                  if true
+	 */
+	private void Dot(float xf, float yf, float val, StrokeBuffer map, boolean additive) {
+		Dot(xf, yf, val, map, additive, false, 0, 0, w, h);
+	}
+
+	/**
+	 * Private Function
+	 * Adds or updates an anti-aliased point to the stroke buffer,
+	 * with the given intensity. Only the pixels within the clipping
+	 * area (cx0, cy0) - (cx1, cy1) are touched.
+	 * 
+	 * The point is split between the four pixels around it. Points on whole
+	 * pixel positions, which is what the curve and ellipse rasterizers
+	 * produce, are written to a single pixel, and points on a whole position
+	 * in one axis, like those of thick lines, to two. This skips the pixels
+	 * that would get zero and gives the same result.
+	 * 
+	 * @param x:        x position of the point
+	 * @param y:        y position of the point
+	 * @param val:      manually set intensity for the point
+	 * @param map:      currently open buffer
+	 * @param additive: new points are replaced if false, added to existing values
+	 *                  if true
+	 * @param carve:    subtracts the point from the value array if true, used
+	 *                  only if there is no buffer
+	 * @param cx0:      left edge of the clipping area, inclusive
+	 * @param cy0:      top edge of the clipping area, inclusive
+	 * @param cx1:      right edge of the clipping area, exclusive
+	 * @param cy1:      bottom edge of the clipping area, exclusive
+	 */
+	private void Dot(float xf, float yf, float val, StrokeBuffer map, boolean additive, boolean carve, int cx0, int cy0, int cx1, int cy1) {
+		ready = false;
+		if (Float.isNaN(val))
+			return;
+
+		int x0, y0, x1, y1;
+
+		x0 = Floor(xf);
+		y0 = Floor(yf);
+
+		x1 = x0 + 1;
+		y1 = y0 + 1;
+
+		float xr = xf - x0;
+		float yr = yf - y0;
+
+		if (yr == 0) {
+			if (y0 < cy0 || y0 >= cy1)
+				return;
+
+			int p = y0 * w + x0;
+
+			if (xr == 0) {
+				if (x0 >= cx0 && x0 < cx1)
+					Plot(p, val, map, additive, carve);
+				return;
+			}
+
+			if (x0 >= cx0 && x0 < cx1)
+				Plot(p, (1 - xr) * val, map, additive, carve);
+			if (x1 >= cx0 && x1 < cx1)
+				Plot(p + 1, xr * val, map, additive, carve);
+			return;
+		}
+
+		if (xr == 0) {
+			if (x0 < cx0 || x0 >= cx1)
+				return;
+
+			int p = y0 * w + x0;
+
+			if (y0 >= cy0 && y0 < cy1)
+				Plot(p, (1 - yr) * val, map, additive, carve);
+			if (y1 >= cy0 && y1 < cy1)
+				Plot(p + w, yr * val, map, additive, carve);
+			return;
+		}
+
+		int p00 = y0 * w + x0, p01 = y0 * w + x1, p11 = y1 * w + x1, p10 = y1 * w + x0;
+
+		float v00 = (1 - xr) * (1 - yr) * val;
+		float v01 =      xr  * (1 - yr) * val;
+		float v11 =      xr  *      yr  * val;
+		float v10 = (1 - xr) *      yr  * val;
+
+		if (map == null) {
+			if(carve) { v00 *= -1; v01 *= -1; v11 *= -1; v10 *= -1; }
+			int n = 0;
+
+			if (x0 >= cx0 && x0 < cx1 && y0 >= cy0 && y0 < cy1) { values.Add(p00, v00); touched[p00 >>> BLOCK_SHIFT] = epoch; n++; }
+			if (x1 >= cx0 && x1 < cx1 && y0 >= cy0 && y0 < cy1) { values.Add(p01, v01); touched[p01 >>> BLOCK_SHIFT] = epoch; n++; }
+			if (x1 >= cx0 && x1 < cx1 && y1 >= cy0 && y1 < cy1) { values.Add(p11, v11); touched[p11 >>> BLOCK_SHIFT] = epoch; n++; }
+			if (x0 >= cx0 && x0 < cx1 && y1 >= cy0 && y1 < cy1) { values.Add(p10, v10); touched[p10 >>> BLOCK_SHIFT] = epoch; n++; }
+
+			StatsRecorder rec = stats;
+			if (rec != null)
+				rec.Plot(n);
+		} else if (additive) {
+			if (x0 >= cx0 && x0 < cx1 && y0 >= cy0 && y0 < cy1) map.Add(p00, v00);
+			if (x1 >= cx0 && x1 < cx1 && y0 >= cy0 && y0 < cy1) map.Add(p01, v01);
+			if (x1 >= cx0 && x1 < cx1 && y1 >= cy0 && y1 < cy1) map.Add(p11, v11);
+			if (x0 >= cx0 && x0 < cx1 && y1 >= cy0 && y1 < cy1) map.Add(p10, v10);
+		} else {
+			if (x0 >= cx0 && x0 < cx1 && y0 >= cy0 && y0 < cy1) map.Max(p00, v00);
+			if (x1 >= cx0 && x1 < cx1 && y0 >= cy0 && y0 < cy1) map.Max(p01, v01);
+			if (x1 >= cx0 && x1 < cx1 && y1 >= cy0 && y1 < cy1) map.Max(p11, v11);
+			if (x0 >= cx0 && x0 < cx1 && y1 >= cy0 && y1 < cy1) map.Max(p10, v10);
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Writes a value to a single pixel within the canvas, either directly on
+	 * the value array or on the stroke buffer.
+	 * 
+	 * @param k:        index of the pixel
+	 * @param val:      value to be written
+	 * @param map:      currently open buffer, or null
+	 * @param additive: new points are replaced if false, added to existing values
+	 *                  if true
+	 * @param carve:    subtracts the value from the value array if true, used
+	 *                  only if there is no buffer
+	 */
+	private void Plot(int k, float val, StrokeBuffer map, boolean additive, boolean carve) {
+		if (map == null) {
+			values.Add(k, carve ? -val : val);
+			touched[k >>> BLOCK_SHIFT] = epoch;
+
+			StatsRecorder rec = stats;
+			if (rec != null)
+				rec.Plot(1);
+		} else if (additive) {
+			map.Add(k, val);
+		} else {
+			map.Max(k, val);
+		}
+	}
+
+	/**
+	 * Plots a batch of anti-aliased points on the value array, with the set
+	 * intensity. The points are read from xs and ys in pairs, up to the
+	 * shorter of the two arrays.
+	 * 
+	 * @param xs: x positions of the points
+	 * @param ys: y positions of the points
+	 */
+	public void Dots(float[] xs, float[] ys) {
+		Dots(xs, ys, null, pen);
+	}
+
+	/**
+	 * Plots a batch of anti-aliased points on the value array, with the
+	 * intensity of the given pen.
+	 * 
+	 * @param xs:  x positions of the points
+	 * @param ys:  y positions of the points
+	 * @param pen: pen to draw with
+	 */
+	public void Dots(float[] xs, float[] ys, Pen pen) {
+		Dots(xs, ys, null, pen);
+	}
+
+	/**
+	 * Plots a batch of anti-aliased points on the value array, each with its
+	 * own intensity. Gives the same result as calling Dot(x, y, val) for every
+	 * point, without the cost of a call per point, so it is the way to splat
+	 * large point clouds.
+	 * 
+	 * @param xs:   x positions of the points
+	 * @param ys:   y positions of the points
+	 * @param vals: intensities of the points
+	 */
+	public void Dots(float[] xs, float[] ys, float[] vals) {
+		Dots(xs, ys, vals, pen);
+	}
+
+	/**
+	 * Private Function
+	 * Plots a batch of points. In concurrent mode the points are collected in
+	 * the stroke buffer of the calling thread in runs of DOT_RUN, and every
+	 * run is applied at once, so the stripe locks are taken once per run
+	 * rather than once per point.
+	 * 
+	 * @param xs:   x positions of the points
+	 * @param ys:   y positions of the points
+	 * @param vals: intensities of the points, or null to use the intensity of
+	 *              the pen
+	 * @param pen:  pen to draw with
+	 */
+	private void Dots(float[] xs, float[] ys, float[] vals, Pen pen) {
+		int n = Math.min(xs.length, ys.length);
+		if (vals != null)
+			n = Math.min(n, vals.length);
+		if (n == 0)
+			return;
+
+		StatsRecorder.Probe probe = Begin(Stats.Op.DOTS);
+		ready = false;
+
+		if (!concurrent) {
+			Splat(xs, ys, vals, pen.intensity, pen.carve, 0, n);
+		} else {
+			StrokeBuffer map = Stroke();
+			for (int i = 0; i < n; i++) {
+				Dot(xs[i], ys[i], vals == null ? pen.intensity : vals[i], map, true);
+
+				if (map.Size() >= DOT_RUN) {
+					ApplyStroke(map, 1, pen.carve);
+					map.Clear();
+				}
+			}
+			ApplyStroke(map, 1, pen.carve);
+		}
+
+		End(probe);
+	}
+
+	/**
+	 * Private Function
+	 * Splats the points from index "from" (inclusive) to "to" (exclusive)
+	 * directly on the value array. Points whose four pixels are all inside the
+	 * canvas are split with a single bounds check. The rest, on the edges,
+	 * go through Dot() with clipping.
+	 * 
+	 * @param xs:    x positions of the points
+	 * @param ys:    y positions of the points
+	 * @param vals:  intensities of the points, or null to use val
+	 * @param val:   intensity used if vals is null
+	 * @param carve: subtracts the points from the value array if true
+	 * @param from:  first point
+	 * @param to:    last point, exclusive
+	 */
+	private void Splat(float[] xs, float[] ys, float[] vals, float val, boolean carve, int from, int to) {
+		float sign = carve ? -1 : 1;
+		int xmax = w - 1, ymax = h - 1;
+		long plotted = 0;
+
+		for (int i = from; i < to; i++) {
+			float xf = xs[i], yf = ys[i];
+			float v = vals == null ? val : vals[i];
+
+			int x0 = (int) xf;
+			int y0 = (int) yf;
+			if (x0 > xf)
+				x0--;
+			if (y0 > yf)
+				y0--;
+
+			if (x0 < 0 || y0 < 0 || x0 >= xmax || y0 >= ymax || Float.isNaN(v) || xf != xf || yf != yf) {
+				Dot(xf, yf, v, null, false, carve, 0, 0, w, h);
+				continue;
+			}
+
+			float xr = xf - x0;
+			float yr = yf - y0;
+			float s = sign * v;
+
+			int p = y0 * w + x0;
+
+			values.AddQuad(p, w, (1 - xr) * (1 - yr) * s, xr * (1 - yr) * s, (1 - xr) * yr * s, xr * yr * s);
+
+			touched[p >>> BLOCK_SHIFT] = epoch;
+			touched[(p + 1) >>> BLOCK_SHIFT] = epoch;
+			touched[(p + w) >>> BLOCK_SHIFT] = epoch;
+			touched[(p + w + 1) >>> BLOCK_SHIFT] = epoch;
+			plotted += 4;
+		}
+
+		StatsRecorder rec = stats;
+		if (rec != null)
+			rec.Plot((int) Math.min(plotted, Integer.MAX_VALUE));
+	}
+
+
+	/**
+	 * Private Function
+	 * Maps the the existing value array to 0 - 1 range. Only the blocks that
+	 * changed since the last time are mapped again, unless the range has
+	 * changed.
+	 */
+	private void MapToOne() {
+		StatsRecorder.Probe probe = Begin(Stats.Op.VALUES);
+		UpdateRange();
+
+		boolean all = !mappedValid || mappedMin != min || mappedMax != max || mappedTone != toneVersion;
+		int since = mappedSeen;
+		mappedSeen = ++epoch;
+
+		if (vals01 == null) {
+			vals01 = new float[len];
+			all = true;
+		}
+
+		final float[] out = vals01;
+		ForEachBlock(all, since, new Parallel.Job() {
+			public void Run(int block) {
+				int end = Math.min(len, (block + 1) << BLOCK_SHIFT);
+				values.Read(block << BLOCK_SHIFT, end, out, block << BLOCK_SHIFT);
+				ToOne(out, block << BLOCK_SHIFT, end);
+			}
+		});
+
+		mappedValid = true;
+		mappedMin = min;
+		mappedMax = max;
+		mappedTone = toneVersion;
+
+		if (probe != null)
+			probe.pixels += Pending(all, since);
+		End(probe);
+	}
+
+	/**
+	 * Private Function
+	 * Finds the lowest and highest values if the values have changed since the
+	 * last time. The range of each block is kept, so only the blocks that
+	 * changed are scanned again.
+	 */
+	private void UpdateRange() {
+		if (ready)
+			return;
+
+		if (normalize) {
+			UpdateBlocks();
+
+			min = Float.MAX_VALUE;
+			max = 0;
+
+			for (int i = 0; i < blocks; i++) {
+				if (max < blockMax[i])
+					max = blockMax[i];
+				if (min > blockMin[i])
+					min = blockMin[i];
+			}
+
+			// an empty or flat canvas maps to 0 instead of dividing by zero
+			if (!(max > min))
+				max = min + Math.ulp(min);
+		}
+
+		if (tone == ToneMap.PERCENTILE || tone == ToneMap.EQUALIZE) {
+			boolean changed = UpdateHistogram();
+
+			float low = Percentile(percentLow);
+			float high = Percentile(percentHigh);
+			if (high <= low)
+				low = 0;
+			if (high <= 0)
+				high = 1;
+
+			// the mapped values only go stale if the mapping itself moved
+			if (low != toneLow || high != toneHigh || (tone == ToneMap.EQUALIZE && changed))
+				toneVersion++;
+
+			toneLow = low;
+			toneHigh = high;
+		}
+
+		ready = true;
+	}
+
+	/**
+	 * Private Function
+	 * Brings the histogram of the drawn pixels up to date. The values are
+	 * binned by the top bits of their float representation, the exponent and
+	 * three bits of the mantissa, which makes eight bins per doubling of the
+	 * value without computing a logarithm. Zero and negative values are not
+	 * counted.
+	 * 
+	 * Every chunk of the value array keeps its own histogram. Only the chunks
+	 * with blocks that changed since the last time are counted again, in
+	 * parallel, and the difference is added to the histogram of the canvas.
+	 * 
+	 * @return true if any bin of the histogram changed
+	 */
+	private boolean UpdateHistogram() {
+		final boolean all = chunkHist == null;
+		final int since = histSeen;
+		final boolean[] changed = { all };
+		histSeen = ++epoch;
+
+		if (all) {
+			chunkHist = new int[Parallel.Chunks(len)][];
+			hist = new long[BINS];
+			cdf = new float[BINS + 1];
+		}
+
+		Parallel.For(chunkHist.length, new Parallel.Job() {
+			public void Run(int chunk) {
+				int first = chunk * BLOCKS_PER_CHUNK;
+				int last = Math.min(blocks, first + BLOCKS_PER_CHUNK);
+
+				boolean dirty = all;
+				for (int b = first; b < last && !dirty; b++)
+					dirty = touched[b] >= since;
+				if (!dirty)
+					return;
+
+				int[] count = new int[BINS];
+				float[] buf = scratch.get();
+				for (int b = first; b < last; b++) {
+					int start = b << BLOCK_SHIFT;
+					int end = Math.min(len, (b + 1) << BLOCK_SHIFT);
+
+					values.Read(start, end, buf, 0);
+					for (int i = 0; i < end - start; i++) {
+						float v = buf[i];
+						if (v > 0 && v <= Float.MAX_VALUE)
+							count[Float.floatToRawIntBits(v) >>> BIN_SHIFT]++;
+					}
+				}
+
+				int[] old = chunkHist[chunk];
+				synchronized (hist) {
+					for (int i = 0; i < BINS; i++) {
+						int diff = old == null ? count[i] : count[i] - old[i];
+						hist[i] += diff;
+						if (diff != 0)
+							changed[0] = true;
+					}
+				}
+				chunkHist[chunk] = count;
+			}
+		});
+
+		if (!changed[0])
+			return false;
+
+		long total = 0;
+		for (int i = 0; i < BINS; i++)
+			total += hist[i];
+
+		long sum = 0;
+		for (int i = 0; i < BINS; i++) {
+			sum += hist[i];
+			cdf[i + 1] = total == 0 ? 0 : (float) ((double) sum / total);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Private Function
+	 * Returns the value below which the given share of the drawn pixels lie,
+	 * interpolated within the bin of the histogram it falls in.
+	 * 
+	 * @param p: share of the drawn pixels, from 0 to 1
+	 * @return float
+	 */
+	private float Percentile(float p) {
+		if (cdf[BINS] == 0)
+			return 0;
+
+		int lo = 0, hi = BINS - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (cdf[mid + 1] >= p)
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+
+		float start = Float.intBitsToFloat(lo << BIN_SHIFT);
+		float end = Float.intBitsToFloat((lo + 1) << BIN_SHIFT);
+		float share = cdf[lo + 1] - cdf[lo];
+		float frac = share > 0 ? (p - cdf[lo]) / share : 0;
+
+		return start + Constrain(frac, 0, 1) * (end - start);
+	}
+
+	/**
+	 * Private Function
+	 * Finds the lowest and highest values of every block that changed since the
+	 * last time, in parallel.
+	 */
+	private void UpdateBlocks() {
+		int since = rangeSeen;
+		rangeSeen = ++epoch;
+
+		ForEachBlock(false, since, new Parallel.Job() {
+			public void Run(int block) {
+				int end = Math.min(len, (block + 1) << BLOCK_SHIFT);
+
+				blockMin[block] = values.Min(block << BLOCK_SHIFT, end);
+				blockMax[block] = values.Max(block << BLOCK_SHIFT, end);
+			}
+		});
+	}
+
+	/**
+	 * Private Function
+	 * Runs the job in parallel for every block of the value array that was
+	 * written to at or after the given epoch, or for every block if all is true.
+	 * 
+	 * Every write to the value array stamps its block with the current epoch.
+	 * Each consumer of the values (the range, the 0 - 1 array and the output
+	 * image) remembers the epoch it last caught up at, and moves the epoch
+	 * forward when it catches up again.
+	 * 
+	 * @param all:   runs the job for every block if true
+	 * @param since: epoch the caller last caught up at
+	 * @param job:   job to run for each block
+	 */
+	private void ForEachBlock(final boolean all, final int since, final Parallel.Job job) {
+		Parallel.For(Parallel.Chunks(len), new Parallel.Job() {
+			public void Run(int chunk) {
+				int end = Math.min(blocks, (chunk + 1) * BLOCKS_PER_CHUNK);
+				for (int b = chunk * BLOCKS_PER_CHUNK; b < end; b++)
+					if (all || touched[b] >= since)
+						job.Run(b);
+			}
+		});
+	}
+
+	/**
+	 * Private Function
+	 * Returns the number of pixels in the blocks ForEachBlock() runs the job
+	 * for with the same arguments. Only used for statistics.
+	 * 
+	 * @param all:   counts every block if true
+	 * @param since: epoch the caller last caught up at
+	 * @return int
+	 */
+	private int Pending(boolean all, int since) {
+		if (all)
+			return len;
+
+		int count = 0;
+		for (int b = 0; b < blocks; b++)
+			if (touched[b] >= since)
+				count += Math.min(len, (b + 1) << BLOCK_SHIFT) - (b << BLOCK_SHIFT);
+
+		return count;
+	}
+
+	/**
+	 * Private Function
+	 * Maps a single value to 0 - 1 range, with the range found by UpdateRange().
+	 * 
+	 * @param val: value to be mapped
+	 * @return float
+	 */
+	private float ToOne(float val) {
+		switch (tone) {
+		case LOG: {
+			float lo = normalize ? min : 0, hi = normalize ? max : 255;
+			return Math.min((float) Math.log1p(Math.max(val - lo, 0)) / (float) Math.log1p(hi - lo), 1);
+		}
+		case GAMMA: {
+			float t = Linear(val);
+			return t > 0 ? (float) Math.pow(t, 1 / gamma) : 0;
+		}
+		case PERCENTILE:
+			return Constrain((val - toneLow) / (toneHigh - toneLow), 0, 1);
+		case EQUALIZE:
+			return Equalize(val);
+		default:
+			return Linear(val);
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Maps a single value to 0 - 1 range linearly, normalized or clamped.
+	 * 
+	 * @param val: value to be mapped
+	 * @return float
+	 */
+	private float Linear(float val) {
+		if (normalize)
+			return (val - min) / (max - min);
+
+		return val > 255 ? 1 : val / 255f;
+	}
+
+	/**
+	 * Private Function
+	 * Maps a single value to the share of the drawn pixels lower than it,
+	 * interpolated within the bin of the histogram it falls in.
+	 * 
+	 * @param val: value to be mapped
+	 * @return float
+	 */
+	private float Equalize(float val) {
+		if (!(val > 0))
+			return 0;
+		if (val > Float.MAX_VALUE)
+			return 1;
+
+		int bin = Float.floatToRawIntBits(val) >>> BIN_SHIFT;
+		float start = Float.intBitsToFloat(bin << BIN_SHIFT);
+		float end = Float.intBitsToFloat((bin + 1) << BIN_SHIFT);
+		float frac = end > start && end <= Float.MAX_VALUE ? (val - start) / (end - start) : 0;
+
+		return cdf[bin] + frac * (cdf[bin + 1] - cdf[bin]);
+	}
+
+	/**
+	 * Private Function
+	 * Maps the values in the given part of an array to 0 - 1 range in place,
+	 * the same way ToOne() maps a single value. The range is read once and the
+	 * loop has no branches, so it is compiled to vector instructions where the
+	 * JVM can.
+	 * 
+	 * @param buf:  array holding the values
+	 * @param from: first index
+	 * @param to:   last index, exclusive
+	 */
+	private void ToOne(float[] buf, int from, int to) {
+		if (tone != ToneMap.LINEAR) {
+			for (int i = from; i < to; i++)
+				buf[i] = ToOne(buf[i]);
+			return;
+		}
+
+		if (normalize) {
+			float lo = min, range = max - min;
+			for (int i = from; i < to; i++)
+				buf[i] = (buf[i] - lo) / range;
+			return;
+		}
+
+		for (int i = from; i < to; i++)
+			buf[i] = Math.min(buf[i], 255f) / 255f;
+	}
+
+	/**
+	 * Sets whether shapes and images are centered at their respective x and y
+	 * positions or positioned by their top left corner. Shapes and images are
+	 * centered if the value is true.
+	 * 
+	 * @param state: the new centered value.
+	 */
+	public void SetCentered(boolean state) {
+		centered = state;
+		ready = false;
+	}
+
+	/**
+	 * Sets whether the value array is normalized by mapping the lowest value to
+	 * zero and the highest value to 1, or just clamped at 0 and 255. Values are
+	 * normalized if value is true.
+	 * 
+	 * @param state: the new normalize value.
+	 */
+	public void SetNormalize(boolean state) {
+		normalize = state;
+		ready = false;
+		mappedValid = outputValid = false;
+	}
+
+	/**
+	 * Sets how the values are mapped to colors, see ToneMap. The default is
+	 * ToneMap.LINEAR.
+	 * 
+	 * @param mode: the new tone mapping mode
+	 */
+	public void SetToneMap(ToneMap mode) {
+		if (mode == null)
+			throw new IllegalArgumentException("Tone mapping mode can not be null");
+
+		tone = mode;
+		ready = false;
+		mappedValid = outputValid = false;
+	}
+
+	/**
+	 * Returns how the values are mapped to colors
+	 * 
+	 * @return ToneMap
+	 */
+	public ToneMap GetToneMap() {
+		return tone;
+	}
+
+	/**
+	 * Sets the gamma of ToneMap.GAMMA. Values above 1 brighten the faint
+	 * parts of the canvas, values below 1 darken them. The default is 2.2.
+	 * 
+	 * @param gamma: the new gamma, above 0
+	 */
+	public void SetGamma(float gamma) {
+		if (!(gamma > 0))
+			throw new IllegalArgumentException("Gamma must be above 0: " + gamma);
+
+		this.gamma = gamma;
+		mappedValid = outputValid = false;
+	}
+
+	/**
+	 * Sets the percentiles of the drawn pixels that are mapped to 0 and 1 by
+	 * ToneMap.PERCENTILE. The values outside are clipped. The defaults are 0
+	 * and 0.995.
+	 * 
+	 * @param low:  share of the drawn pixels mapped to 0, from 0 to 1
+	 * @param high: share of the drawn pixels mapped to 1, from 0 to 1
+	 */
+	public void SetPercentiles(float low, float high) {
+		if (!(low >= 0 && low < high && high <= 1))
+			throw new IllegalArgumentException("Percentiles must be in 0 - 1 range and low must be below high: " + low + ", " + high);
+
+		percentLow = low;
+		percentHigh = high;
+		ready = false;
+		mappedValid = outputValid = false;
+	}
+
+	/**
+	 * Returns the value below which the given share of the drawn pixels lie,
+	 * from the histogram of the canvas. Pixels with a value of 0 or below do
+	 * not count as drawn. Useful to choose an exposure without sorting the
+	 * values.
+	 * 
+	 * @param p: share of the drawn pixels, from 0 to 1
+	 * @return float
+	 */
+	public float GetPercentile(float p) {
+		Lock();
+		try {
+			Sync();
+
+			UpdateHistogram();
+			return Percentile(p);
+		} finally {
+			Unlock();
+		}
+	}
+
+	/**
+	 * Returns whether the colors are input in HSB values
+	 * 
+	 * @return boolean
+	 */
+	boolean IsHSB() {
+		return isHSB;
+	}
+
+	/**
+	 * Sets whether the colors are input in RGB values or HSB values. Color space is
+	 * HSB if the value is true.
+	 * 
+	 * @param state: the new HSB flag
+	 */
+	public void SetHSB(boolean state) {
+		if (isHSB == state)
+			return;
+
+		isHSB = state;
+		outputValid = false;
+		lut = null;
+
+		if (isHSB) {
+			colorMin = ToHSB(colorMin);
+			colorMax = ToHSB(colorMax);
+			for (int i = 0; i < stopColor.length; i++)
+				stopColor[i] = ToHSB(stopColor[i]);
+		}
+		else {
+			colorMin = ToRGB(colorMin);
+			colorMax = ToRGB(colorMax);			
+			for (int i = 0; i < stopColor.length; i++)
+				stopColor[i] = ToRGB(stopColor[i]);
+		}
+	}
+
+	/**
+	 * Sets the color that corresponds to zero. Default value is black. In RGB, the
+	 * range for each channel is 255. In HSB, the range for hue is 360 and the range
+	 * for saturation and brightness is 100.
+	 * 
+	 * @param ch0: value for channel 0 (either red or hue)
+	 * @param ch1: value for channel 1 (either green or saturation)
+	 * @param ch2: value for channel 2 (either blue or brightness)
+	 */
+	public void SetStartColor(float ch0, float ch1, float ch2) {
+		colorMin[0] = ch0;
+		colorMin[1] = ch1;
+		colorMin[2] = ch2;
+		outputValid = false;
+		lut = null;
+	}
+
+	/**
+	 * Sets the color that corresponds to one. Default value is white. In RGB, the
+	 * range for each channel is 255. In HSB, the range for hue is 360 and the range
+	 * for saturation and brightness is 100.
+	 * 
+	 * @param ch0: value for channel 0 (either red or hue)
+	 * @param ch1: value for channel 1 (either green or saturation)
+	 * @param ch2: value for channel 2 (either blue or brightness)
+	 */
+	public void SetTargetColor(float ch0, float ch1, float ch2) {
+		colorMax[0] = ch0;
+		colorMax[1] = ch1;
+		colorMax[2] = ch2;
+		outputValid = false;
+		lut = null;
+	}
+
+	/**
+	 * Adds a color stop to the gradient between the start and target colors, at
+	 * position t in 0 - 1 range. The colors are interpolated between neighbouring
+	 * stops. Setting a stop at the position of an existing one replaces it. The
+	 * channels are in the current color space, like the start and target colors.
+	 * 
+	 * @param t:   position of the stop, between 0 and 1
+	 * @param ch0: value for channel 0 (either red or hue)
+	 * @param ch1: value for channel 1 (either green or saturation)
+	 * @param ch2: value for channel 2 (either blue or brightness)
+	 */
+	public void SetColorStop(float t, float ch0, float ch1, float ch2) {
+		t = Constrain(t, 0, 1);
+		int i = 0;
+		while (i < stopPos.length && stopPos[i] < t)
+			i++;
+
+		if (i == stopPos.length || stopPos[i] != t) {
+			float[] pos = new float[stopPos.length + 1];
+			float[][] col = new float[stopColor.length + 1][];
+			System.arraycopy(stopPos, 0, pos, 0, i);
+			System.arraycopy(stopColor, 0, col, 0, i);
+			System.arraycopy(stopPos, i, pos, i + 1, stopPos.length - i);
+			System.arraycopy(stopColor, i, col, i + 1, stopColor.length - i);
+			stopPos = pos;
+			stopColor = col;
+		}
+
+		stopPos[i] = t;
+		stopColor[i] = new float[] { ch0, ch1, ch2 };
+		outputValid = false;
+		lut = null;
+	}
+
+	/**
+	 * Removes the color stops added with SetColorStop(), leaving a gradient from
+	 * the start color to the target color.
+	 */
+	public void ClearColorStops() {
+		stopPos = new float[0];
+		stopColor = new float[0][];
+		outputValid = false;
+		lut = null;
+	}
+
+	/**
+	 * Private Function
+	 * Returns the gradient as a lookup table of packed colors, compiling it if
+	 * the colors have changed since the last time. Entry k holds the color for
+	 * the value k / (LUT_SIZE - 1) in 0 - 1 range.
+	 * 
+	 * @return int[]
+	 */
+	private int[] Lut() {
+		if (lut != null)
+			return lut;
+
+		int n = stopPos.length + 2;
+		float[] pos = new float[n];
+		float[][] col = new float[n][];
+
+		pos[0] = 0;
+		col[0] = colorMin;
+		pos[n - 1] = 1;
+		col[n - 1] = colorMax;
+		System.arraycopy(stopPos, 0, pos, 1, n - 2);
+		System.arraycopy(stopColor, 0, col, 1, n - 2);
+
+		int[] table = new int[LUT_SIZE];
+		int seg = 0;
+
+		for (int k = 0; k < LUT_SIZE; k++) {
+			float t = k / (float) (LUT_SIZE - 1);
+			while (seg < n - 2 && t > pos[seg + 1])
+				seg++;
+
+			float span = pos[seg + 1] - pos[seg];
+			float u = span > 0 ? (t - pos[seg]) / span : 1;
+			float[] a = col[seg], b = col[seg + 1];
+
+			table[k] = Color(a[0] * (1 - u) + b[0] * u,
+							 a[1] * (1 - u) + b[1] * u,
+							 a[2] * (1 - u) + b[2] * u, isHSB);
+		}
+
+		lut = table;
+		return table;
+	}
+
+	/**
+	 * Private Function
+	 * Returns the lookup table entry for a value in 0 - 1 range. Values out of
+	 * range are clamped, and NaN maps to the start color.
+	 * 
+	 * @param t: value in 0 - 1 range
+	 * @return int
+	 */
+	private static int LutIndex(float t) {
+		if (t >= 1)
+			return LUT_SIZE - 1;
+		if (t > 0)
+			return (int) (t * (LUT_SIZE - 1) + 0.5f);
+		return 0;
+	}
+
+	/**
+	 * Converts RGB values in 0 - 255 range to 
+	 * HSB color values in 0 - 359 (H) 0 - 99 (SB) range.
+	 * 
+	 * @param rgb: RGB values as float array
+	 * @return HSB values as float array
+	 */
+	public float[] ToHSB(float[] rgb) {
+		float[] hsb = new float[3];
+		float minRGB = Math.min(rgb[0], Math.min(rgb[1], rgb[2]));
+		float maxRGB = Math.max(rgb[0], Math.max(rgb[1], rgb[2]));
+		float d = maxRGB - minRGB;
+		hsb[0] = 0;
+		hsb[2] = maxRGB;
+
+		if (maxRGB != 0)
+			hsb[1] = d / maxRGB;
+		else
+			hsb[1] = 0;
+
+		if (hsb[1] != 0) {
+			if (rgb[0] == maxRGB) {
+				hsb[0] = (rgb[1] - rgb[2]) / d;
+			} else {
+				if (rgb[1] == maxRGB) {
+					hsb[0] = 2 + (rgb[2] - rgb[0]) / d;
+				} else {
+					if (rgb[2] == maxRGB) {
+						hsb[0] = 4 + (rgb[0] - rgb[1]) / d;
+					}
+				}
+			}
+		} else {
+			hsb[0] = -1;
+		}
+
+		hsb[0] = hsb[0] * 60;
+		if (hsb[0] < 0)
+			hsb[0] = hsb[0] + 360;
+		hsb[1] = hsb[1] * 100;
+		hsb[2] = hsb[2] * 100 / 255;
+
+		return hsb;
+	}
+
+	/**
+	 * Converts HSB values in 0 - 359 (H) and 0 - 99 (SB) range to 
+	 * RGB color values in 0 - 255 range.
+	 * 
+	 * @param hsb: HSB values as float array
+	 * @return RGB values as float array
+	 */
+	public float[] ToRGB(float[] hsb) {
+		float[] rgb = new float[3];
+		float maxRGB, d, h, s, b;
+
+		h = hsb[0] / 60;
+		if (h > 5)
+			h -= 6;
+		s = hsb[1] * 255 / 100;
+		b = hsb[2] * 255 / 100;
+		maxRGB = b;
+
+		if (s == 0) {
+			rgb[0] = 0;
+			rgb[1] = 0;
+			rgb[2] = 0;
+		} else {
+			d = s * maxRGB / 255;
+			if (h > 3) {
+				rgb[2] = maxRGB;
+				if (h > 4) {
+					rgb[1] = maxRGB - d;
+					rgb[0] = (h - 4) * d + rgb[1];
+				} else {
+					rgb[0] = maxRGB - d;
+					rgb[1] = rgb[0] - (h - 4) * d;
+				}
+			} else {
+				if (h > 1) {
+					rgb[1] = maxRGB;
+
+					if (h > 2) {
+						rgb[0] = maxRGB - d;
+						rgb[2] = (h - 2) * d + rgb[0];
+					} else {
+						rgb[2] = maxRGB - d;
+						rgb[0] = rgb[2] - (h - 2) * d;
+					}
+				} else {
+					if (h > -1) {
+						rgb[0] = maxRGB;
+						if (h > 0) {
+							rgb[2] = maxRGB - d;
+							rgb[1] = h * d + rgb[2];
+						} else {
+							rgb[1] = maxRGB - d;
+							rgb[2] = rgb[1] - h * d;
+						}
+					}
+				}
+			}
+		}
+
+		return rgb;
+	}
+
+	/**
+	 * Private Function
+	 * Packs a color given in the current color space into an opaque ARGB
+	 * integer. Gives the same result as Processing's color() in RGB mode with
+	 * 255 for every channel or in HSB mode with 360, 100 and 100, without
+	 * touching the shared state of a PGraphics, so it is safe to call from
+	 * multiple threads.
+	 * 
+	 * @param ch0: value for channel 0 (either red or hue)
+	 * @param ch1: value for channel 1 (either green or saturation)
+	 * @param ch2: value for channel 2 (either blue or brightness)
+	 * @param hsb: whether the channels are in HSB
+	 * @return int
+	 */
+	private static int Color(float ch0, float ch1, float ch2, boolean hsb) {
+		float mx = hsb ? 360 : 255, my = hsb ? 100 : 255, mz = hsb ? 100 : 255;
+		float r, g, b;
+
+		if (ch0 > mx) ch0 = mx;
+		if (ch1 > my) ch1 = my;
+		if (ch2 > mz) ch2 = mz;
+		if (ch0 < 0) ch0 = 0;
+		if (ch1 < 0) ch1 = 0;
+		if (ch2 < 0) ch2 = 0;
+
+		if (!hsb) {
+			r = ch0 / mx;
+			g = ch1 / my;
+			b = ch2 / mz;
+		} else {
+			ch0 /= mx;
+			ch1 /= my;
+			ch2 /= mz;
+
+			if (ch1 == 0) {
+				r = g = b = ch2;
+			} else {
+				float which = (ch0 - (int) ch0) * 6.0f;
+				float f = which - (int) which;
+				float p = ch2 * (1.0f - ch1);
+				float q = ch2 * (1.0f - ch1 * f);
+				float t = ch2 * (1.0f - (ch1 * (1.0f - f)));
+
+				switch ((int) which) {
+				case 0: r = ch2; g = t; b = p; break;
+				case 1: r = q; g = ch2; b = p; break;
+				case 2: r = p; g = ch2; b = t; break;
+				case 3: r = p; g = q; b = ch2; break;
+				case 4: r = t; g = p; b = ch2; break;
+				case 5: r = ch2; g = p; b = q; break;
+				default: r = g = b = 0;
+				}
+			}
+		}
+
+		return 0xFF000000 | ((int) (255 * r) << 16) | ((int) (255 * g) << 8) | (int) (255 * b);
+	}
+
+	/**
+	 * Private Function
+	 * Normalizes the values and writes them as colors into the output pixel
+	 * array in a single parallel pass, looking the colors up from the compiled
+	 * gradient. If the range and the colors are the same as the last time, only
+	 * the blocks that changed since then are written.
+	 * 
+	 * @param pixels: pixel array of the canvas size
+	 */
+	private void Colorize(final int[] pixels) {
+		StatsRecorder.Probe probe = Begin(Stats.Op.OUTPUT);
+		UpdateRange();
+
+		boolean all = !outputValid || outputMin != min || outputMax != max || outputTone != toneVersion || pixels != outputTarget;
+		int since = outputSeen;
+		outputSeen = ++epoch;
+
+		final int[] table = Lut();
+
+		ForEachBlock(all, since, new Parallel.Job() {
+			public void Run(int block) {
+				int start = block << BLOCK_SHIFT;
+				int end = Math.min(len, (block + 1) << BLOCK_SHIFT);
+				float[] buf = scratch.get();
+
+				values.Read(start, end, buf, 0);
+				ToOne(buf, 0, end - start);
+				for (int i = start; i < end; i++)
+					pixels[i] = table[LutIndex(buf[i - start])];
+			}
+		});
+
+		outputValid = true;
+		outputTarget = pixels;
+		outputMin = min;
+		outputMax = max;
+		outputTone = toneVersion;
+
+		if (probe != null)
+			probe.pixels += Pending(all, since);
+		End(probe);
+	}
+
+	/**
+	 * Private Function
+	 * Plots a part of a level of a multi-channel canvas, see Output(int[]
+	 * pixels, int level, int x, int y, int sizex, int sizey). Every channel is
+	 * mapped to 0 - 1 range and they are added up as colors, in a single
+	 * parallel pass. All channels share the range and the tone mapping of the
+	 * canvas, so the balance between them is kept.
+	 * 
+	 * @param pixels: pixel array of the size of the area
+	 * @param level:  level to plot, 0 for the canvas itself
+	 * @param x:      left anchor of the area, in pixels of the level
+	 * @param y:      top anchor of the area, in pixels of the level
+	 * @param sizex:  width of the area
+	 * @param sizey:  height of the area
+	 * @param colors: RGB color of every channel, 0 - 255
+	 */
+	void Composite(final int[] pixels, final int level, final int x, final int y, final int sizex, final int sizey, final float[][] colors) {
+		if (level < 0 || level >= Levels())
+			throw new IllegalArgumentException("Level " + level + " is not between 0 and " + (Levels() - 1));
+
+		int plotted = Area(pixels, sizex, sizey);
+		StatsRecorder.Probe probe = Begin(Stats.Op.OUTPUT);
+		Lock();
+		try {
+			Sync();
+			UpdateRange();
+
+			if (level == 0 && x == 0 && y == 0 && sizex == w && sizey == h)
+				plotted = CompositeCanvas(pixels, colors);
+			else
+				CompositeArea(pixels, level, x, y, sizex, sizey, colors);
+		} finally {
+			Unlock();
+		}
+
+		if (probe != null)
+			probe.pixels += plotted;
+		End(probe);
+	}
+
+	/**
+	 * Private Function
+	 * Plots any area of any level of a multi-channel canvas, see Composite().
+	 * The area is plotted in full every time.
+	 * 
+	 * @param pixels: pixel array of the size of the area
+	 * @param level:  level to plot, 0 for the canvas itself
+	 * @param x:      left anchor of the area, in pixels of the level
+	 * @param y:      top anchor of the area, in pixels of the level
+	 * @param sizex:  width of the area
+	 * @param sizey:  height of the area
+	 * @param colors: RGB color of every channel, 0 - 255
+	 */
+	private void CompositeArea(final int[] pixels, final int level, final int x, final int y, final int sizex, final int sizey, final float[][] colors) {
+		if (level > 0)
+			UpdatePyramid(level);
+
+		final int channels = values.Channels();
+		final int lw = Width(level), lh = Height(level);
+		final boolean max = pyramidMax;
+		final long side = 1L << level;
+		final int area = Area(pixels, sizex, sizey);
+
+		Parallel.For(Parallel.Chunks(area), new Parallel.Job() {
+			public void Run(int chunk) {
+				int end = Math.min(area, (chunk + 1) * Parallel.CHUNK);
+				float[] buf = scratch.get();
+				float[][] rgb = colorScratch.get();
+
+				// the area is walked in runs that stay within a row
+				for (int i = chunk * Parallel.CHUNK; i < end;) {
+					int n = Math.min(Math.min(end - i, sizex - i % sizex), buf.length);
+					int px = x + i % sizex, py = y + i / sizex;
+					int a = 0, b = 0;
+					if (py >= 0 && py < lh) {
+						a = Math.max(0, Math.min(n, -px));
+						b = Math.max(a, Math.min(n, lw - px));
+					}
+
+					for (float[] ch : rgb)
+						java.util.Arrays.fill(ch, 0, n, 0);
+
+					for (int c = 0; c < channels; c++) {
+						java.util.Arrays.fill(buf, 0, n, 0);
+						if (a < b && level == 0) {
+							values.ReadChannel(c, py * w + px + a, py * w + px + b, buf, a);
+						} else if (a < b) {
+							System.arraycopy(pyramid[c][level], py * lw + px + a, buf, a, b - a);
+							if (!max)
+								for (int k = a; k < b; k++)
+									buf[k] /= (float) (Math.min(side, w - ((long) (px + k) << level)) * Math.min(side, h - ((long) py << level)));
+						}
+						ToOne(buf, 0, n);
+						AddColor(buf, n, colors[c], rgb);
+					}
+
+					PutColors(rgb, n, pixels, i);
+					i += n;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Private Function
+	 * Plots the whole of a multi-channel canvas at its own size, see
+	 * Composite(). Like Colorize(), if the range, the tone mapping, the
+	 * colors and the pixel array are the same as the last time, only the
+	 * blocks that changed since then are plotted.
+	 * 
+	 * @param pixels: pixel array of the canvas size
+	 * @param colors: RGB color of every channel, 0 - 255
+	 * @return the number of pixels plotted
+	 */
+	private int CompositeCanvas(final int[] pixels, final float[][] colors) {
+		boolean all = !outputValid || outputMin != min || outputMax != max || outputTone != toneVersion || pixels != outputTarget || !SameColors(colors);
+		int since = outputSeen;
+		outputSeen = ++epoch;
+
+		final int channels = values.Channels();
+		ForEachBlock(all, since, new Parallel.Job() {
+			public void Run(int block) {
+				int start = block << BLOCK_SHIFT;
+				int n = Math.min(len, (block + 1) << BLOCK_SHIFT) - start;
+				float[] buf = scratch.get();
+				float[][] rgb = colorScratch.get();
+
+				for (float[] ch : rgb)
+					java.util.Arrays.fill(ch, 0, n, 0);
+
+				for (int c = 0; c < channels; c++) {
+					values.ReadChannel(c, start, start + n, buf, 0);
+					ToOne(buf, 0, n);
+					AddColor(buf, n, colors[c], rgb);
+				}
+
+				PutColors(rgb, n, pixels, start);
+			}
+		});
+
+		outputValid = true;
+		outputTarget = pixels;
+		outputColors = colors.clone();
+		outputMin = min;
+		outputMax = max;
+		outputTone = toneVersion;
+
+		return Pending(all, since);
+	}
+
+	/**
+	 * Private Function
+	 * Returns whether the channels have the same colors as the last time the
+	 * whole canvas was plotted. The color of a channel is replaced rather
+	 * than changed, so comparing them by reference is enough.
+	 * 
+	 * @param colors: RGB color of every channel
+	 * @return boolean
+	 */
+	private boolean SameColors(float[][] colors) {
+		if (outputColors == null || outputColors.length != colors.length)
+			return false;
+
+		for (int c = 0; c < colors.length; c++)
+			if (outputColors[c] != colors[c])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Private Function
+	 * Adds a run of 0 - 1 values of a channel to the color sums, in the color
+	 * of the channel.
+	 * 
+	 * @param buf:   0 - 1 values of the channel
+	 * @param n:     number of values
+	 * @param color: RGB color of the channel, 0 - 255
+	 * @param rgb:   red, green and blue sums
+	 */
+	private static void AddColor(float[] buf, int n, float[] color, float[][] rgb) {
+		for (int k = 0; k < 3; k++) {
+			float[] out = rgb[k];
+			float col = color[k];
+			for (int j = 0; j < n; j++)
+				out[j] += buf[j] * col;
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Writes a run of color sums into the pixel array as opaque ARGB colors.
+	 * 
+	 * @param rgb:    red, green and blue sums
+	 * @param n:      number of pixels
+	 * @param pixels: pixel array to write into
+	 * @param off:    index of the first pixel in the array
+	 */
+	private static void PutColors(float[][] rgb, int n, int[] pixels, int off) {
+		float[] r = rgb[0], g = rgb[1], b = rgb[2];
+		for (int j = 0; j < n; j++)
+			pixels[off + j] = 0xFF000000 | (ToByte(r[j]) << 16) | (ToByte(g[j]) << 8) | ToByte(b[j]);
+	}
+
+	/**
+	 * Private Function
+	 * Clamps a color component to 0 - 255 range.
+	 * 
+	 * @param val: color component
+	 * @return int
+	 */
+	private static int ToByte(float val) {
+		return val >= 255 ? 255 : val > 0 ? (int) val : 0;
+	}
+
+	/**
+	 * Plots the output image into the given ARGB pixel array of the canvas
+	 * size. If the same array is passed again, only the parts that changed
+	 * since the last time are written.
+	 * 
+	 * @param pixels: pixel array of the canvas size
+	 */
+	public void Output(int[] pixels) {
+		Lock();
+		try {
+			Sync();
+			Colorize(pixels);
+		} finally {
+			Unlock();
+		}
+	}
+
+	/**
+	 * Plots a part of the output image, anchored at (x, y) from the top left
+	 * corner of the canvas and with the size (sizex, sizey), into the given
+	 * ARGB pixel array of the size of the area. The parts outside the canvas
+	 * are plotted as empty. This makes it possible to render canvases that
+	 * are too large to be plotted in one piece, tile by tile.
+	 * 
+	 * @param pixels: pixel array of the size of the area
+	 * @param x:      left anchor of the area
+	 * @param y:      top anchor of the area
+	 * @param sizex:  width of the area
+	 * @param sizey:  height of the area
+	 */
+	public void Output(final int[] pixels, final int x, final int y, final int sizex, final int sizey) {
+		final int area = Area(pixels, sizex, sizey);
+
+		StatsRecorder.Probe probe = Begin(Stats.Op.OUTPUT);
+		Lock();
+		try {
+			Sync();
+			UpdateRange();
+
+			final int[] table = Lut();
+			final int empty = table[LutIndex(ToOne(0))];
+
+			Parallel.For(Parallel.Chunks(area), new Parallel.Job() {
+				public void Run(int chunk) {
+					int end = Math.min(area, (chunk + 1) * Parallel.CHUNK);
+					float[] buf = scratch.get();
+
+					// the area is walked in runs that stay within a row, and the
+					// part of a run that lies on the canvas is read in one go
+					for (int i = chunk * Parallel.CHUNK; i < end;) {
+						int n = Math.min(Math.min(end - i, sizex - i % sizex), buf.length);
+						int px = x + i % sizex, py = y + i / sizex;
+						int a = 0, b = 0;
+						if (py >= 0 && py < h) {
+							a = Math.max(0, Math.min(n, -px));
+							b = Math.max(a, Math.min(n, w - px));
+						}
+
+						java.util.Arrays.fill(pixels, i, i + a, empty);
+						if (a < b) {
+							values.Read(py * w + px + a, py * w + px + b, buf, 0);
+							ToOne(buf, 0, b - a);
+							for (int k = a; k < b; k++)
+								pixels[i + k] = table[LutIndex(buf[k - a])];
+						}
+						java.util.Arrays.fill(pixels, i + b, i + n, empty);
+						i += n;
+					}
+				}
+			});
+		} finally {
+			Unlock();
+		}
+
+		if (probe != null)
+			probe.pixels += area;
+		End(probe);
+	}
+
+	/**
+	 * Private Function
+	 * Returns the number of pixels of an area to plot, or throws an
+	 * IllegalArgumentException if the size is negative or the area does not
+	 * fit in the pixel array. The area is found in long arithmetic, like in
+	 * ValueStore.Length(), so sizes whose product overflows an int are caught.
+	 * 
+	 * @param pixels: pixel array to plot the area into
+	 * @param sizex:  width of the area
+	 * @param sizey:  height of the area
+	 * @return int
+	 */
+	private static int Area(int[] pixels, int sizex, int sizey) {
+		long area = (long) sizex * sizey;
+		if (sizex < 0 || sizey < 0 || area > pixels.length)
+			throw new IllegalArgumentException("Area " + sizex + "x" + sizey + " does not fit in a pixel array of " + pixels.length);
+		return (int) area;
+	}
+
+	/**
+	 * Flushes the values to the file of a memory-mapped canvas, so they are
+	 * kept even if the sketch does not exit cleanly. Does nothing for the
+	 * canvases kept on the heap.
+	 */
+	public void Flush() {
+		Lock();
+		try {
+			Sync();
+
+			values.Flush();
+		} finally {
+			Unlock();
+		}
+	}
+
+	/**
+	 * Flushes the values to the file of a memory-mapped canvas and releases
+	 * the file, so it can be moved, deleted or mapped again without waiting
+	 * for the garbage collector. The canvas can not be drawn on or plotted
+	 * after that. Does nothing for the canvases kept on the heap.
+	 */
+	public void Close() {
+		Lock();
+		try {
+			Sync();
+
+			values.Close();
+		} finally {
+			Unlock();
+		}
+	}
+
+	/**
+	 * Returns the values currently recorded in the value array, in 0-1 range.
+	 * The array is allocated the first time it is asked for, and kept up to
+	 * date from then on.
+	 * 
+	 * @return float[]
+	 */
+	public float[] GetValues() {
+		Lock();
+		try {
+			Sync();
+
+			MapToOne();
+		} finally {
+			Unlock();
+		}
+
+		return vals01;
+	}
+
+	/**
+	 * Returns the values currently recorded in the value array. With the
+	 * FLOAT backend this is the live array, which keeps changing if other
+	 * threads are drawing in concurrent mode. Other backends, CHANNELS
+	 * included, return a copy that is not updated by later drawing.
+	 * 
+	 * @return float[]
+	 */
+	public float[] GetValuesRaw() {
+		Sync();
+
+		return values.Floats();
+	}
+
+	/**
+	 * Returns the storage backend of the value array
+	 * 
+	 * @return Storage
+	 */
+	public Storage GetStorage() {
+		return storage;
+	}
+
+	/**
+	 * Returns whether a value of the canvas ever reached the ceiling of its
+	 * storage backend and was clamped there, after which the sums of the
+	 * clamped pixels are no longer exact. Only Storage.FIXED has a ceiling,
+	 * just under 32768.
+	 * 
+	 * @return boolean
+	 */
+	public boolean IsSaturated() {
+		Lock();
+		try {
+			return values.Saturated();
+		} finally {
+			Unlock();
+		}
+	}
+
+	/**
+	 * Saves the value array to a binary snapshot file, uncompressed. The
+	 * snapshot can be loaded into a canvas of the same size with Load(), to
+	 * continue an accumulation that was interrupted.
+	 * 
+	 * @param file: file to save to
+	 */
+	public void Save(java.io.File file) {
+		Save(file, false);
+	}
+
+	/**
+	 * Saves the value array to a binary snapshot file. Empty parts of the
+	 * canvas take almost no space, and the rest can be compressed as well,
+	 * which makes the file smaller but the saving slower.
+	 * 
+	 * The values are read one chunk at a time, so in concurrent mode other
+	 * threads keep drawing while the snapshot is written, and each chunk is
+	 * saved as it is at the time it is read. The values are saved as floats,
+	 * whatever the storage backend is, and every channel of a multi-channel
+	 * canvas is saved on its own.
+	 * 
+	 * @param file:     file to save to
+	 * @param compress: compresses the values if true
+	 */
+	public void Save(java.io.File file, boolean compress) {
+		Lock();
+		try {
+			Sync();
+		} finally {
+			Unlock();
+		}
+
+		try {
+			Snapshot.Save(file, w, h, values.Channels(), compress, new Snapshot.Source() {
+				public void Read(int c, int from, int to, float[] dst) {
+					Lock();
+					try {
+						values.ReadChannel(c, from, to, dst, 0);
+					} finally {
+						Unlock();
+					}
+				}
+			});
+		} catch (java.io.IOException e) {
+			throw new java.io.UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Replaces the value array with the values of a snapshot file saved by
+	 * Save(). The snapshot has to be of a canvas of the same size and number
+	 * of channels.
+	 * 
+	 * The whole file is checked before any value is replaced, so a truncated
+	 * or corrupt snapshot throws and leaves the canvas as it was.
+	 * 
+	 * @param file: file to load from
+	 */
+	public void Load(java.io.File file) {
+		Lock();
+		try {
+			Sync();
+
+			Snapshot.Load(file, w, h, values.Channels(), new Snapshot.Sink() {
+				public void Zero(int c, int from, int to) {
+					values.ZeroChannel(c, from, to);
+				}
+
+				public void Write(int c, int from, int to, float[] src) {
+					values.WriteChannel(c, from, to, src, 0);
+				}
+			});
+
+			java.util.Arrays.fill(touched, epoch);
+			ready = false;
+		} catch (java.io.IOException e) {
+			throw new java.io.UncheckedIOException(e);
+		} finally {
+			Unlock();
+		}
+	}
+	
+	/**
+	 * Returns the maximum value in the value array
+	 * 
+	 * @return float
+	 */
+	public float GetMaxValue() {
+		float maxValue = 0;
+		Lock();
+		try {
+			UpdateBlocks();
+			for(float v : blockMax) if(maxValue < v) maxValue = v;
+		} finally {
+			Unlock();
+		}
+		return maxValue;
+	}
+
+	/** DRAWING BY VALUES **/
+
+	/**
+	 * Plots a line from (x1, y1) to (x2, y2)
+	 * 
+	 * @param x1: starting x position
+	 * @param y1: starting y position
+	 * @param x2: starting x position
+	 * @param y2: starting y position
+	 */
+	public void Line(float x1, float y1, float x2, float y2) {
+		Line(x1, y1, x2, y2, pen);
+	}
+
+	/**
+	 * Plots a line from (x1, y1) to (x2, y2) with the given pen
+	 * 
+	 * @param x1:  starting x position
+	 * @param y1:  starting y position
+	 * @param x2:  starting x position
+	 * @param y2:  starting y position
+	 * @param pen: pen to draw with
+	 */
+	public void Line(float x1, float y1, float x2, float y2, Pen pen) {
+		StatsRecorder.Probe probe = Begin(Stats.Op.LINE);
+		Line(x1, y1, x2, y2, pen.intensity, pen);
+		End(probe);
+	}
+
+	/**
+	 * Private Function
+	 * Plots a line from (x1, y1) to (x2, y2) with the weight and the carve mode
+	 * of the given pen, and the given intensity, going through a stroke buffer
+	 * in concurrent mode.
+	 * 
+	 * @param x1:  starting x position
+	 * @param y1:  starting y position
+	 * @param x2:  ending x position
+	 * @param y2:  ending y position
+	 * @param val: intensity of the line
+	 * @param pen: pen to draw with
+	 */
+	private void Line(float x1, float y1, float x2, float y2, float val, Pen pen) {
+		if (!concurrent) {
+			Line(x1, y1, x2, y2, null, pen.weight, val, pen.carve, 0, 0, w, h);
+		} else {
+			StrokeBuffer map = Stroke();
+			Line(x1, y1, x2, y2, map, pen.weight, val, pen.carve, 0, 0, w, h);
+			ApplyStroke(map, val, pen.carve);
+		}
+	}
+
+	/**
+	 * Records the points of a line from (x1, y1) to (x2, y2) on the given stroke buffer
+	 * 
+	 * The line drawing algorithm is taken from:
+	 * http://members.chello.at/~easyfilter/bresenham.html
+	 * 
+	 * @param x1:  starting x position
+	 * @param y1:  starting y position
+	 * @param x2:  starting x position
+	 * @param y2:  starting y position
+	 * @param map: stroke buffer to record the list of points
+	 * @param pen: pen to draw with
+	 */
+	private void Line(float x1, float y1, float x2, float y2, StrokeBuffer map, Pen pen) {
+		Line(x1, y1, x2, y2, map, pen, 0, 0, w, h);
+	}
+
+	/**
+	 * Records the points of a line from (x1, y1) to (x2, y2) that fall within the
+	 * clipping area (cx0, cy0) - (cx1, cy1). Rows (or columns) of the line outside
+	 * the area are stepped over without plotting, and the line is left as soon as
+	 * it has passed the area.
+	 * 
+	 * The line drawing algorithm is taken from:
+	 * http://members.chello.at/~easyfilter/bresenham.html
+	 * 
+	 * @param x1:  starting x position
+	 * @param y1:  starting y position
+	 * @param x2:  starting x position
+	 * @param y2:  starting y position
+	 * @param map: stroke buffer to record the list of points
+	 * @param pen: pen to draw with
+	 * @param cx0: left edge of the clipping area, inclusive
+	 * @param cy0: top edge of the clipping area, inclusive
+	 * @param cx1: right edge of the clipping area, exclusive
+	 * @param cy1: bottom edge of the clipping area, exclusive
+	 */
+	private void Line(float x1, float y1, float x2, float y2, StrokeBuffer map, Pen pen, int cx0, int cy0, int cx1, int cy1) {
+		Line(x1, y1, x2, y2, map, pen.weight, pen.intensity, pen.carve, cx0, cy0, cx1, cy1);
+	}
+
+	/**
+	 * Records the points of a line from (x1, y1) to (x2, y2) that fall within the
+	 * clipping area (cx0, cy0) - (cx1, cy1), with the pen given by its parts.
+	 * 
+	 * @param x1:        starting x position
+	 * @param y1:        starting y position
+	 * @param x2:        ending x position
+	 * @param y2:        ending y position
+	 * @param map:       stroke buffer to record the list of points
+	 * @param weight:    stroke weight
+	 * @param intensity: intensity of the line, used only if there is no buffer
+	 * @param carve:     subtracts the line from the value array if true, used
+	 *                   only if there is no buffer
+	 * @param cx0:       left edge of the clipping area, inclusive
+	 * @param cy0:       top edge of the clipping area, inclusive
+	 * @param cx1:       right edge of the clipping area, exclusive
+	 * @param cy1:       bottom edge of the clipping area, exclusive
+	 */
+	private void Line(float x1, float y1, float x2, float y2, StrokeBuffer map, float weight, float intensity, boolean carve, int cx0, int cy0, int cx1, int cy1) {
+		ready = false;
+		x1 = Math.round(x1);
+		y1 = Math.round(y1);
+		x2 = Math.round(x2);
+		y2 = Math.round(y2);
+
+		float dx = Math.abs(x2 - x1);
+		float dy = Math.abs(y2 - y1);
+		float mag = Sqrt(dx * dx + dy * dy);
+		StrokeBuffer bufferMap = (map == null ? null : map.Sub());
+
+		float sx = x1 < x2 ? 1 : -1;
+		float sy = y1 < y2 ? 1 : -1;
+
+		float e, e2 = mag;
+
+		boolean cont = true;
+
+		dx /= mag;
+		dy /= mag;
+		float th = weight - 1;
+
+		float val;
+		float s = map == null ? intensity : 1;
+		float m = 2 * weight + 4;
+
+		if (dx < dy) {
+			x2 = (th / 2) / dy;
+			x1 -= x2 * sx;
+			e = x2 * dy - th / 2;
+
+			while (cont) {
+				if (sy > 0 ? y1 >= cy1 : y1 < cy0)
+					break;
+
+				if (y1 >= cy0 && y1 < cy1 && x1 + m >= cx0 && x1 - m < cx1) {
+					val = (1 - e) * s;
+					x2 = x1;
+					Dot(x2, y1, val, bufferMap, true, carve, cx0, cy0, cx1, cy1);
+
+					for (e2 = dy - e - th; e2 + dy < 1; e2 += dy) {
+						x2 += sx;
+						Dot(x2, y1, s, bufferMap, true, carve, cx0, cy0, cx1, cy1);
+					}
+
+					val = (1 - e2) * s;
+					Dot(x2 + sx, y1, val, bufferMap, true, carve, cx0, cy0, cx1, cy1);
+				}
+
+				e += dx;
+				if (e > 1) {
+					e -= dy;
+					x1 += sx;
+				}
+
+				cont = Math.abs(y1 - y2) > EPSILON;
+				y1 += sy;
+			}
+
+			if (map != null)
+				MergeMaps(bufferMap, map);
+			return;
+		}
+
+		y2 = (th / 2) / dx;
+		y1 -= y2 * sy;
+		e = y2 * dx - th / 2;
+
+		while (cont) {
+			if (sx > 0 ? x1 >= cx1 : x1 < cx0)
+				break;
+
+			if (x1 >= cx0 && x1 < cx1 && y1 + m >= cy0 && y1 - m < cy1) {
+				y2 = y1;
+				val = (1 - e) * s;
+				Dot(x1, y2, val, bufferMap, true, carve, cx0, cy0, cx1, cy1);
+
+				for (e2 = dx - e - th; e2 + dx < 1; e2 += dx) {
+					y2 += sy;
+					Dot(x1, y2, s, bufferMap, true, carve, cx0, cy0, cx1, cy1);
+				}
+
+				val = (1 - e2) * s;
+				Dot(x1, y2 + sy, val, bufferMap, true, carve, cx0, cy0, cx1, cy1);
+			}
+
+			e += dy;
+			if (e > 1) {
+				e -= dx;
+				y1 += sy;
+			}
+
+			cont = Math.abs(x1 - x2) > EPSILON;
+			x1 += sx;
+		}
+
+		if (map != null)
+			MergeMaps(bufferMap, map);
+	}
+
+	/**
+	 * Plots a batch of lines, packed as {x1, y1, x2, y2, x1, y1, x2, y2, ...}
+	 * in the coords array. Trailing values that do not make up a whole line are
+	 * ignored.
+	 * 
+	 * The canvas is split into tiles which are drawn in parallel, each tile
+	 * plotting the lines that cross it in the order they are given, so the
+	 * result is the same as calling Line() for every line one by one.
+	 * 
+	 * @param coords: packed start and end positions of the lines
+	 */
+	public void Lines(float[] coords) {
+		Lines(coords, pen);
+	}
+
+	/**
+	 * Plots a batch of lines with the given pen, packed as
+	 * {x1, y1, x2, y2, x1, y1, x2, y2, ...} in the coords array.
+	 * 
+	 * @param coords: packed start and end positions of the lines
+	 * @param pen:    pen to draw with
+	 */
+	public void Lines(float[] coords, Pen pen) {
+		Lines(coords, coords.length / 4, 4, pen);
+	}
+
+	/**
+	 * Plots the lines stored in a binary file, packed the same way as in
+	 * Lines(float[] coords) as little-endian floats. See
+	 * Lines(java.io.File file, boolean intensities, Pen pen).
+	 * 
+	 * @param file: file holding the packed lines
+	 */
+	public void Lines(java.io.File file) {
+		Lines(file, false, pen);
+	}
+
+	/**
+	 * Plots the lines stored in a binary file with the given pen, packed the
+	 * same way as in Lines(float[] coords) as little-endian floats. See
+	 * Lines(java.io.File file, boolean intensities, Pen pen).
+	 * 
+	 * @param file: file holding the packed lines
+	 * @param pen:  pen to draw with
+	 */
+	public void Lines(java.io.File file, Pen pen) {
+		Lines(file, false, pen);
+	}
+
+	/**
+	 * Plots the lines stored in a binary file, packed as little-endian floats
+	 * {x1, y1, x2, y2, ...}, or {x1, y1, x2, y2, intensity, ...} if
+	 * intensities is true. See Lines(java.io.File file, boolean intensities,
+	 * Pen pen).
+	 * 
+	 * @param file:        file holding the packed lines
+	 * @param intensities: lines carry their own intensity if true
+	 */
+	public void Lines(java.io.File file, boolean intensities) {
+		Lines(file, intensities, pen);
+	}
+
+	/**
+	 * Plots the lines stored in a binary file with the given pen, packed as
+	 * little-endian floats {x1, y1, x2, y2, ...}, or
+	 * {x1, y1, x2, y2, intensity, ...} if intensities is true, in which case
+	 * every line is drawn with its own intensity instead of the intensity of
+	 * the pen. Trailing bytes that do not make up a whole line are ignored.
+	 * 
+	 * The file is memory-mapped and streamed through the rasterizer in chunks
+	 * that are drawn like Lines(float[] coords), tile by tile in parallel, so
+	 * files that are far larger than the heap can be plotted in one pass and
+	 * the result is the same as drawing the lines one by one.
+	 * 
+	 * @param file:        file holding the packed lines
+	 * @param intensities: lines carry their own intensity if true
+	 * @param pen:         pen to draw with
+	 */
+	public void Lines(java.io.File file, boolean intensities, Pen pen) {
+		int stride = intensities ? 5 : 4;
+		long record = 4L * stride;
+		long window = (1L << 30) / record;
+
+		StatsRecorder.Probe probe = Begin(Stats.Op.LINES);
+		try {
+			java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(file.toPath(), java.nio.file.StandardOpenOption.READ);
+			try {
+				long count = channel.size() / record;
+				float[] coords = new float[(int) Math.min(count, LINE_CHUNK) * stride];
+
+				for (long first = 0; first < count; first += window) {
+					long lines = Math.min(window, count - first);
+					java.nio.FloatBuffer floats = channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, first * record, lines * record)
+							.order(java.nio.ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+
+					while (floats.hasRemaining()) {
+						int n = Math.min(floats.remaining(), coords.length);
+						floats.get(coords, 0, n);
+						Lines(coords, n / stride, stride, pen);
+					}
+				}
+			} finally {
+				channel.close();
+			}
+		} catch (java.io.IOException e) {
+			throw new java.io.UncheckedIOException(e);
+		} finally {
+			End(probe);
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Plots a batch of lines packed in the coords array, stride values per
+	 * line. The first four values of a line are its start and end positions.
+	 * A fifth value, if the stride has one, is the intensity of the line, which
+	 * is used instead of the intensity of the pen.
+	 * 
+	 * @param coords: packed lines
+	 * @param count:  number of lines
+	 * @param stride: number of values per line, 4 or 5
+	 * @param pen:    pen to draw with
+	 */
+	private void Lines(float[] coords, int count, int stride, Pen pen) {
+		ready = false;
+		int tx = (w + TILE - 1) / TILE;
+		int ty = (h + TILE - 1) / TILE;
+		int tiles = tx * ty;
+
+		StatsRecorder.Probe probe = Begin(Stats.Op.LINES);
+
+		if (tiles < 2 || ForkJoinPool.getCommonPoolParallelism() < 2) {
+			for (int i = 0; i < count * stride; i += stride)
+				Line(coords[i], coords[i + 1], coords[i + 2], coords[i + 3], stride > 4 ? coords[i + 4] : pen.intensity, pen);
+			End(probe);
+			return;
+		}
+
+		StatsRecorder.Tally tally = probe == null ? null : new StatsRecorder.Tally(probe.recorder);
+
+		int[] start = new int[tiles + 1];
+		int[] next = new int[tiles];
+		int[] bins = new int[0];
+		int[] range = new int[2];
+
+		for (int first = 0; first < count; first += LINE_CHUNK) {
+			int last = Math.min(count, first + LINE_CHUNK);
+			java.util.Arrays.fill(start, 0);
+
+			for (int i = first; i < last; i++) {
+				for (int y = 0; y < ty; y++) {
+					if (!LineTileRange(coords, i * stride, y, tx, pen.weight, range))
+						continue;
+
+					for (int x = range[0]; x <= range[1]; x++)
+						start[y * tx + x + 1]++;
+				}
+			}
+
+			for (int t = 0; t < tiles; t++) {
+				start[t + 1] += start[t];
+				next[t] = start[t];
+			}
+
+			if (bins.length < start[tiles])
+				bins = new int[start[tiles]];
+
+			for (int i = first; i < last; i++) {
+				for (int y = 0; y < ty; y++) {
+					if (!LineTileRange(coords, i * stride, y, tx, pen.weight, range))
+						continue;
+
+					for (int x = range[0]; x <= range[1]; x++)
+						bins[next[y * tx + x]++] = i;
+				}
+			}
+
+			ForkJoinPool.commonPool().invoke(new LineTiles(coords, stride, pen, start, bins, tx, 0, tiles, tally));
+		}
+
+		if (tally != null)
+			tally.AddTo(probe);
+		End(probe);
+	}
+
+	/**
+	 * Private Function
+	 * Finds the range of tiles in the given tile row that a line of a packed
+	 * coords array may touch, taking the stroke weight into account.
+	 * 
+	 * @param coords: packed start and end positions of the lines
+	 * @param i:      index of the first value of the line
+	 * @param row:    tile row to look into
+	 * @param tx:     number of tile columns
+	 * @param weight: stroke weight
+	 * @param range:  receives the first and last tile column
+	 * @return false if the line does not touch the tile row
+	 */
+	private boolean LineTileRange(float[] coords, int i, int row, int tx, float weight, int[] range) {
+		float m = 2 * weight + 4;
+		float x1 = Math.round(coords[i]), y1 = Math.round(coords[i + 1]);
+		float x2 = Math.round(coords[i + 2]), y2 = Math.round(coords[i + 3]);
+
+		if (y1 > y2) {
+			float t = y1; y1 = y2; y2 = t;
+			t = x1; x1 = x2; x2 = t;
+		}
+
+		float top = row * TILE - m, bottom = Math.min(h, (row + 1) * TILE) + m;
+		if (y2 < top || y1 > bottom)
+			return false;
+
+		float left = x1, right = x2;
+		if (y2 - y1 > EPSILON) {
+			float xt = x1 + (x2 - x1) * Math.max(0, (top - y1) / (y2 - y1));
+			float xb = x1 + (x2 - x1) * Math.min(1, (bottom - y1) / (y2 - y1));
+			left = xt;
+			right = xb;
+		}
+
+		if (left > right) {
+			float t = left; left = right; right = t;
+		}
+
+		left -= m;
+		right += m;
+		if (right < 0 || left >= w)
+			return false;
+
+		range[0] = Math.max(0, Floor(left / TILE));
+		range[1] = Math.min(tx - 1, Floor(right / TILE));
+
+		return true;
+	}
+
+	/**
+	 * Private Class
+	 * Draws the lines binned into a range of tiles, splitting the range in half
+	 * until a single tile is left. Each tile only touches its own pixels, so
+	 * tiles can be drawn at the same time without locking, unless other
+	 * threads are drawing on the canvas in concurrent mode.
+	 */
+	private class LineTiles extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final float[] coords;
+		private final int stride;
+		private final Pen pen;
+		private final int[] start, bins;
+		private final int tx, from, to;
+		private final StatsRecorder.Tally tally;
+
+		LineTiles(float[] coords, int stride, Pen pen, int[] start, int[] bins, int tx, int from, int to, StatsRecorder.Tally tally) {
+			this.coords = coords;
+			this.stride = stride;
+			this.pen = pen;
+			this.start = start;
+			this.bins = bins;
+			this.tx = tx;
+			this.from = from;
+			this.to = to;
+			this.tally = tally;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new LineTiles(coords, stride, pen, start, bins, tx, from, mid, tally), new LineTiles(coords, stride, pen, start, bins, tx, mid, to, tally));
+				return;
+			}
+
+			int cx0 = (from % tx) * TILE, cy0 = (from / tx) * TILE;
+			int cx1 = Math.min(w, cx0 + TILE), cy1 = Math.min(h, cy0 + TILE);
+
+			StrokeBuffer map = concurrent ? Stroke() : null;
+			StatsRecorder.Probe probe = tally == null ? null : tally.Mark();
+			long pixels = probe == null ? 0 : probe.pixels;
+			int peak = probe == null ? 0 : probe.peak;
+
+			for (int j = start[from]; j < start[from + 1]; j++) {
+				int i = bins[j] * stride;
+				float val = stride > 4 ? coords[i + 4] : pen.intensity;
+				Line(coords[i], coords[i + 1], coords[i + 2], coords[i + 3], map, pen.weight, val, pen.carve, cx0, cy0, cx1, cy1);
+
+				if (map != null) {
+					ApplyStroke(map, val, pen.carve);
+					map.Clear();
+				}
+			}
+
+			if (probe != null)
+				tally.Take(probe, pixels, peak);
+		}
+	}
+
+	/* Polyline */
+
+	/**
+	 * Draws an open path through the vertices (xs[0], ys[0]), (xs[1], ys[1]) ...
+	 * 
+	 * All segments are recorded on a single stroke buffer, so the joints are
+	 * drawn once instead of being counted by both of the segments that meet
+	 * there.
+	 * 
+	 * @param xs: x positions of the vertices
+	 * @param ys: y positions of the vertices
+	 */
+	public void Polyline(float[] xs, float[] ys) {
+		Path(xs, ys, false, pen);
+	}
+
+	/**
+	 * Draws an open path through the vertices (xs[0], ys[0]), (xs[1], ys[1]) ...
+	 * with the given pen
+	 * 
+	 * @param xs:  x positions of the vertices
+	 * @param ys:  y positions of the vertices
+	 * @param pen: pen to draw with
+	 */
+	public void Polyline(float[] xs, float[] ys, Pen pen) {
+		Path(xs, ys, false, pen);
+	}
+
+	/**
+	 * Draws a closed path through the vertices (xs[0], ys[0]), (xs[1], ys[1]) ...
+	 * joining the last vertex back to the first one.
+	 * 
+	 * @param xs: x positions of the vertices
+	 * @param ys: y positions of the vertices
+	 */
+	public void Polygon(float[] xs, float[] ys) {
+		Path(xs, ys, true, pen);
+	}
+
+	/**
+	 * Draws a closed path through the vertices (xs[0], ys[0]), (xs[1], ys[1]) ...
+	 * joining the last vertex back to the first one, with the given pen
+	 * 
+	 * @param xs:  x positions of the vertices
+	 * @param ys:  y positions of the vertices
+	 * @param pen: pen to draw with
+	 */
+	public void Polygon(float[] xs, float[] ys, Pen pen) {
+		Path(xs, ys, true, pen);
+	}
+
+	/**
+	 * Private Function
+	 * Records the segments of a path on a single stroke buffer and applies it
+	 * once. A path of a single vertex is drawn as a dot. Extra values in the
+	 * longer of the two arrays are ignored.
+	 * 
+	 * @param xs:     x positions of the vertices
+	 * @param ys:     y positions of the vertices
+	 * @param closed: joins the last vertex back to the first one if true
+	 * @param pen:    pen to draw with
+	 */
+	private void Path(float[] xs, float[] ys, boolean closed, Pen pen) {
+		int n = Math.min(xs.length, ys.length);
+		if (n == 0)
+			return;
+
+		ready = false;
+		StatsRecorder.Probe probe = Begin(Stats.Op.POLYLINE);
+		StrokeBuffer map = Stroke();
+
+		// a zero-length line draws nothing, so a single vertex is a dot
+		if (n == 1)
+			Dot(xs[0], ys[0], 1, map);
+
+		for (int i = 1; i < n; i++)
+			Line(xs[i - 1], ys[i - 1], xs[i], ys[i], map, pen);
+
+		if (closed && n > 2)
+			Line(xs[n - 1], ys[n - 1], xs[0], ys[0], map, pen);
+
+		ApplyStroke(map, pen);
+		End(probe);
+	}
+
+	/* QuadBezier */
+	/**
+	 * Draws a Quadratic Bezier from (x0, y0) to (x2, y2), with the control point at
+	 * (x1, y1)
+	 * 
+	 * @param x0: starting x position
+	 * @param y0: starting y position
+	 * @param x1: control point x
+	 * @param y1: control point y
+	 * @param x2: end x position
+	 * @param y2: end y position
+	 */
+	public void QuadraticBezier(float x0, float y0, float x1, float y1, float x2, float y2) {
+		QuadraticRationalBezier(x0, y0, x1, y1, x2, y2, 1, pen);
+	}
+
+	/**
+	 * Draws a Quadratic Bezier from (x0, y0) to (x2, y2), with the control point at
+	 * (x1, y1), with the given pen
+	 * 
+	 * @param x0:  starting x position
+	 * @param y0:  starting y position
+	 * @param x1:  control point x
+	 * @param y1:  control point y
+	 * @param x2:  end x position
+	 * @param y2:  end y position
+	 * @param pen: pen to draw with
+	 */
+	public void QuadraticBezier(float x0, float y0, float x1, float y1, float x2, float y2, Pen pen) {
+		QuadraticRationalBezier(x0, y0, x1, y1, x2, y2, 1, pen);
+	}
+
+	/**
+	 * Draws a Quadratic Rational Bezier from (x0, y0) to (x2, y2), with the control
+	 * point at (x1, y1) and weight w for the control point
+	 * 
+	 * The quadratic rational bezier drawing algorithm is taken from:
+	 * http://members.chello.at/~easyfilter/bresenham.html
+	 *
+	 * @param x0:      starting x position
+	 * @param y0:      starting y position
+	 * @param x1:      control point x
+	 * @param y1:      control point y
+	 * @param x2:      end x position
+	 * @param y2:      end y position
+	 * @param bweight: weight of the control point
+	 */
+	public void QuadraticRationalBezier(float x0, float y0, float x1, float y1, float x2, float y2, float bweight) {
+		QuadraticRationalBezier(x0, y0, x1, y1, x2, y2, bweight, pen);
+	}
+
+	/**
+	 * Draws a Quadratic Rational Bezier from (x0, y0) to (x2, y2), with the control
+	 * point at (x1, y1) and weight w for the control point, with the given pen
+	 * 
+	 * @param x0:      starting x position
+	 * @param y0:      starting y position
+	 * @param x1:      control point x
+	 * @param y1:      control point y
+	 * @param x2:      end x position
+	 * @param y2:      end y position
+	 * @param bweight: weight of the control point
+	 * @param pen:     pen to draw with
+	 */
+	public void QuadraticRationalBezier(float x0, float y0, float x1, float y1, float x2, float y2, float bweight, Pen pen) {
+		x0 = Math.round(x0);
+		y0 = Math.round(y0);
+		x1 = Math.round(x1);
+		y1 = Math.round(y1);
+		x2 = Math.round(x2);
+		y2 = Math.round(y2);
+
+		ready = false;
+		StrokeBuffer map = Stroke();
+
+		float x = x0 - 2 * x1 + x2, y = y0 - 2 * y1 + y2;
+		float xx = x0 - x1, yy = y0 - y1;
+		float ww, t, q;
+
+		if (bweight < 0.0f)
+			return;
+
+		StatsRecorder.Probe probe = Begin(Stats.Op.QUADRATIC_BEZIER);
+
+		if (xx * (x2 - x1) > 0) {
+			if (yy * (y2 - y1) > 0) {
+				if (Math.abs(xx * y) > Math.abs(yy * x)) {
+					x0 = x2;
+					x2 = xx + x1;
+					y0 = y2;
+					y2 = yy + y1;
+				}
+			}
+
+			if (x0 == x2 || bweight == 1.0f) {
+				t = (x0 - x1) / x;
+			} else {
+				q = Sqrt(4.0f * bweight * bweight * (x0 - x1) * (x2 - x1) + (x2 - x0) * (x2 - x0));
+				if (x1 < x0)
+					q = -q;
+
+				t = (2.0f * bweight * (x0 - x1) - x0 + x2 + q) / (2.0f * (1.0f - bweight) * (x2 - x0));
+			}
+
+			q = 1.0f / (2.0f * t * (1.0f - t) * (bweight - 1.0f) + 1.0f);
+
+			xx = (t * t * (x0 - 2.0f * bweight * x1 + x2) + 2.0f * t * (bweight * x1 - x0) + x0) * q;
+			yy = (t * t * (y0 - 2.0f * bweight * y1 + y2) + 2.0f * t * (bweight * y1 - y0) + y0) * q;
+			ww = t * (bweight - 1.0f) + 1.0f;
+			ww *= ww * q;
+			bweight = ((1.0f - t) * (bweight - 1.0f) + 1.0f) * Sqrt(q);
+			x = Floor(xx + 0.5f);
+			y = Floor(yy + 0.5f);
+			yy = (xx - x0) * (y1 - y0) / (x1 - x0) + y0;
+
+			QuadraticBezierSegment(x0, y0, x, Floor(yy + 0.5f), x, y, ww, map, pen);
+
+			yy = (xx - x2) * (y1 - y2) / (x1 - x2) + y2;
+			y1 = Floor(yy + 0.5f);
+			x0 = x1 = x;
+			y0 = y;
+		}
+
+		if ((y0 - y1) * (y2 - y1) > 0) {
+			if (y0 == y2 || bweight == 1.0f) {
+				t = (y0 - y1) / (y0 - 2.0f * y1 + y2);
+			} else {
+				q = Sqrt(4.0f * bweight * bweight * (y0 - y1) * (y2 - y1) + (y2 - y0) * (y2 - y0));
+				if (y1 < y0)
+					q = -q;
+
+				t = (2.0f * bweight * (y0 - y1) - y0 + y2 + q) / (2.0f * (1.0f - bweight) * (y2 - y0));
+			}
+
+			q = 1.0f / (2.0f * t * (1.0f - t) * (bweight - 1.0f) + 1.0f);
+			xx = (t * t * (x0 - 2.0f * bweight * x1 + x2) + 2.0f * t * (bweight * x1 - x0) + x0) * q;
+			yy = (t * t * (y0 - 2.0f * bweight * y1 + y2) + 2.0f * t * (bweight * y1 - y0) + y0) * q;
+			ww = t * (bweight - 1.0f) + 1.0f;
+			ww *= ww * q;
+
+			bweight = ((1.0f - t) * (bweight - 1.0f) + 1.0f) * Sqrt(q);
+			x = Floor(xx + 0.5f);
+			y = Floor(yy + 0.5f);
+
+			xx = (x1 - x0) * (yy - y0) / (y1 - y0) + x0;
+
+			QuadraticBezierSegment(x0, y0, Floor(xx + 0.5f), y, x, y, ww, map, pen);
+
+			xx = (x1 - x2) * (yy - y2) / (y1 - y2) + x2;
+			x1 = Floor(xx + 0.5f);
+			x0 = x;
+			y0 = y1 = y;
+		}
+
+		QuadraticBezierSegment(x0, y0, x1, y1, x2, y2, bweight * bweight, map, pen);
+
+		ApplyStroke(map, pen);
+		End(probe);
+	}
+
+	/**
+	 * Private Function
+	 * Records the points of a segment of a quadratic bezier, used by the
+	 * QuadratcRationalBezier function
+	 *
+	 * The quadratic rational bezier drawing algorithm is taken from:
+	 * http://members.chello.at/~easyfilter/bresenham.html
+	 * 
+	 * @param x0:      starting x position
+	 * @param y0:      starting y position
+	 * @param x1:      control point x
+	 * @param y1:      control point y
+	 * @param x2:      end x position
+	 * @param y2:      end y position
+	 * @param bweight: weight of the control point
+	 * @param map:     stroke buffer to record the list of points
+	 * @param pen:     pen to draw with
+	 */
+	private void QuadraticBezierSegment(float x0, float y0, float x1, float y1, float x2, float y2, float bweight, StrokeBuffer map, Pen pen) {
+		ready = false;
+		float th = pen.weight;
+		float sx = x2 - x1, sy = y2 - y1;
+		float dx = x0 - x2, dy = y0 - y2;
+		float xx = x0 - x1, yy = y0 - y1;
+
+		float xy = xx * sy + yy * sx;
+		float cur = xx * sy - yy * sx;
+		float err, e2, ed;
+
+		if (xx * sx > 0.0f || yy * sy > 0.0f)
+			return;
+
+		if (cur != 0.0f && bweight > 0.0f) {
+			if (sx * sx + sy * sy > xx * xx + yy * yy) {
+				x2 = x0;
+				x0 -= dx;
+				y2 = y0;
+				y0 -= dy;
+				cur = -cur;
+			}
+
+			xx = 2.0f * (4.0f * bweight * sx * xx + dx * dx);
+			yy = 2.0f * (4.0f * bweight * sy * yy + dy * dy);
+
+			sx = x0 < x2 ? 1 : -1;
+			sy = y0 < y2 ? 1 : -1;
+
+			xy = -2.0f * sx * sy * (2.0f * bweight * xy + dx * dy);
+
+			if (cur * sx * sy < 0) {
+				xx = -xx;
+				yy = -yy;
+				cur = -cur;
+				xy = -xy;
+			}
+
+			dx = 4.0f * bweight * (x1 - x0) * sy * cur + xx / 2.0f;
+			dy = 4.0f * bweight * (y0 - y1) * sx * cur + yy / 2.0f;
+
+			if (bweight < 0.5f && (dx + xx <= 0 || dy + yy >= 0)) {
+				cur = (bweight + 1.0f) / 2.0f;
+				bweight = Sqrt(bweight);
+				xy = 1.0f / (bweight + 1.0f);
+
+				sx = Floor((x0 + 2.0f * bweight * x1 + x2) * xy / 2.0f + 0.5f);
+				sy = Floor((y0 + 2.0f * bweight * y1 + y2) * xy / 2.0f + 0.5f);
+
+				dx = Floor((bweight * x1 + x0) * xy + 0.5f);
+				dy = Floor((y1 * bweight + y0) * xy + 0.5f);
+				QuadraticBezierSegment(x0, y0, dx, dy, sx, sy, cur, map, pen);
+
+				dx = Floor((bweight * x1 + x2) * xy + 0.5f);
+				dy = Floor((y1 * bweight + y2) * xy + 0.5f);
+				QuadraticBezierSegment(sx, sy, dx, dy, x2, y2, cur, map, pen);
+
+				return;
+			}
+
+			fail: for (err = 0; dy + 2 * yy < 0 && dx + 2 * xx > 0;) {
+				if (dx + dy + xy < 0) {
+					do {
+						ed = -dy - 2 * dy * dx * dx / (4.f * dy * dy + dx * dx);
+						bweight = (th - 1) * ed;
+
+						x1 = Floor((err - ed - bweight / 2) / dy);
+						e2 = err - x1 * dy - bweight / 2;
+
+						x1 = x0 - x1 * sx;
+						Dot(x1, y0, 1 - e2 / ed, map);
+
+						for (e2 = -bweight - dy - e2; e2 - dy < ed; e2 -= dy)
+							Dot(x1 += sx, y0, 1, map);
+
+						Dot(x1 + sx, y0, 1 - e2 / ed, map);
+						if (Math.abs(y0 - y2) < EPSILON)
+							return;
+
+						err += dx;
+						y0 += sy;
+						dy += xy;
+						dx += xx;
+
+						if (2 * err + dy > 0) {
+							err += dy;
+							x0 += sx;
+							dx += xy;
+							dy += yy;
+						}
+
+						if (x0 != x2 && (dx + 2 * xx <= 0 || dy + 2 * yy >= 0)) {
+							if (Math.abs(y2 - y0) > Math.abs(x2 - x0))
+								break fail;
+							else
+								break;
+						}
+					} while (dx + dy + xy < 0);
+
+					for (cur = err - dy - bweight / 2, y1 = y0; cur < ed; y1 += sy, cur += dx) {
+						for (e2 = cur, x1 = x0; e2 - dy < ed; e2 -= dy)
+							Dot(x1 -= sx, y1, 1, map);
+
+						Dot(x1 - sx, y1, 1 - e2 / ed, map);
+					}
+				} else {
+					do {
+						ed = dx + 2 * dx * dy * dy / (4.f * dx * dx + dy * dy);
+						bweight = (th - 1) * ed;
+
+						y1 = Floor((err + ed + bweight / 2) / dx);
+						e2 = y1 * dx - bweight / 2 - err;
+						y1 = y0 - y1 * sy;
+
+						Dot(x0, y1, 1 - e2 / ed, map);
+						for (e2 = dx - e2 - bweight; e2 + dx < ed; e2 += dx)
+							Dot(x0, y1 += sy, 1, map);
+
+						Dot(x0, y1 + sy, 1 - e2 / ed, map);
+
+						if (Math.abs(x0 - x2) < EPSILON)
+							return;
+
+						x0 += sx;
+						dx += xy;
+						err += dy;
+						dy += yy;
+
+						if (2 * err + dx < 0) {
+							y0 += sy;
+							dy += xy;
+							err += dx;
+							dx += xx;
+						}
+
+						if (y0 != y2 && (dx + 2 * xx <= 0 || dy + 2 * yy >= 0)) {
+							if (Math.abs(y2 - y0) <= Math.abs(x2 - x0))
+								break fail;
+							else
+								break;
+						}
+					} while (dx + dy + xy >= 0);
+
+					for (cur = -err + dx - bweight / 2, x1 = x0; cur < ed; x1 += sx, cur -= dy) {
+						for (e2 = cur, y1 = y0; e2 + dx < ed; e2 += dx)
+							Dot(x1, y1 -= sy, 1, map);
+
+						Dot(x1, y1 - sy, 1 - e2 / ed, map);
+					}
+				}
+			}
+		}
+		Line(x0, y0, x2, y2, map, pen);
+	}
+
+	/* Cubic Bezier */
+
+	/**
+	 * Draws a cubic bezier from (x0, x0) to (x3, y3) with control points (x1, y1)
+	 * and (x2, y2)
+	 * 
+	 * The cubic bezier drawing algorithm is taken from:
+	 * http://members.chello.at/~easyfilter/bresenham.html
+	 *
+	 * @param x0: starting point of the curve
+	 * @param y0: starting point of the curve
+	 * @param x1: control point 1
+	 * @param y1: control point 1
+	 * @param x2: control point 2
+	 * @param y2: control point 2
+	 * @param x3: end point of the curve
+	 * @param y3: end point of the curve
+	 */
+	public void CubicBezier(float x0, float y0, float x1, float y1, float x2, float y2, float x3, float y3) {
+		CubicBezier(x0, y0, x1, y1, x2, y2, x3, y3, pen);
+	}
+
+	/**
+	 * Draws a cubic bezier from (x0, x0) to (x3, y3) with control points (x1, y1)
+	 * and (x2, y2), with the given pen
+	 * 
+	 * @param x0:  starting point of the curve
+	 * @param y0:  starting point of the curve
+	 * @param x1:  control point 1
+	 * @param y1:  control point 1
+	 * @param x2:  control point 2
+	 * @param y2:  control point 2
+	 * @param x3:  end point of the curve
+	 * @param y3:  end point of the curve
+	 * @param pen: pen to draw with
+	 */
+	public void CubicBezier(float x0, float y0, float x1, float y1, float x2, float y2, float x3, float y3, Pen pen) {
+		x0 = Math.round(x0);
+		y0 = Math.round(y0);
+		x1 = Math.round(x1);
+		y1 = Math.round(y1);
+		x2 = Math.round(x2);
+		y2 = Math.round(y2);
+		x3 = Math.round(x3);
+		y3 = Math.round(y3);
+		
+		ready = false;
+		StatsRecorder.Probe probe = Begin(Stats.Op.CUBIC_BEZIER);
+		StrokeBuffer map = Stroke();
+
+		int n = 0;
+		float i = 0;
+		float xc = x0 + x1 - x2 - x3, xa = xc - 4 * (x1 - x2);
+		float xb = x0 - x1 - x2 + x3, xd = xb + 4 * (x1 + x2);
+		float yc = y0 + y1 - y2 - y3, ya = yc - 4 * (y1 - y2);
+		float yb = y0 - y1 - y2 + y3, yd = yb + 4 * (y1 + y2);
+		float fx0 = x0, fx1, fx2, fx3, fy0 = y0, fy1, fy2, fy3;
+		float t1 = xb * xb - xa * xc, t2;
+		float[] t = new float[7];
+
+		if (xa == 0) {
+			if (Math.abs(xc) < 2 * Math.abs(xb))
+				t[n++] = xc / (2.0f * xb);
+		} else if (t1 > 0.0f) {
+			t2 = Sqrt(t1);
+			t1 = (xb - t2) / xa;
+			if (Math.abs(t1) < 1.0f)
+				t[n++] = t1;
+
+			t1 = (xb + t2) / xa;
+			if (Math.abs(t1) < 1.0f)
+				t[n++] = t1;
+		}
+
+		t1 = yb * yb - ya * yc;
+		if (ya == 0) {
+			if (Math.abs(yc) < 2 * Math.abs(yb))
+				t[n++] = yc / (2.0f * yb);
+		} else if (t1 > 0.0f) {
+			t2 = Sqrt(t1);
+			t1 = (yb - t2) / ya;
+			if (Math.abs(t1) < 1.0f)
+				t[n++] = t1;
+			t1 = (yb + t2) / ya;
+			if (Math.abs(t1) < 1.0f)
+				t[n++] = t1;
+		}
+		t1 = 2 * (xa * yb - xb * ya);
+		t2 = xa * yc - xc * ya;
+		i = t2 * t2 - 2 * t1 * (xb * yc - xc * yb);
+
+		if (i > 0) {
+			i = Sqrt(i);
+			t[n] = (t2 + i) / t1;
+			if (Math.abs(t[n]) < 1.0f)
+				n++;
+			t[n] = (t2 - i) / t1;
+			if (Math.abs(t[n]) < 1.0f)
+				n++;
+		}
+
+		for (int j = 1; j < n; j++) {
+			if ((t1 = t[j - 1]) > t[j]) {
+				t[j - 1] = t[j];
+				t[j] = t1;
+				j = 0;
+			}
+		}
+
+		t1 = -1.0f;
+		t[n] = 1.0f;
+
+		for (int j = 0; j <= n; j++) {
+			t2 = t[j];
+			fx1 = (t1 * (t1 * xb - 2 * xc) - t2 * (t1 * (t1 * xa - 2 * xb) + xc) + xd) / 8 - fx0;
+			fy1 = (t1 * (t1 * yb - 2 * yc) - t2 * (t1 * (t1 * ya - 2 * yb) + yc) + yd) / 8 - fy0;
+			fx2 = (t2 * (t2 * xb - 2 * xc) - t1 * (t2 * (t2 * xa - 2 * xb) + xc) + xd) / 8 - fx0;
+			fy2 = (t2 * (t2 * yb - 2 * yc) - t1 * (t2 * (t2 * ya - 2 * yb) + yc) + yd) / 8 - fy0;
+			fx0 -= fx3 = (t2 * (t2 * (3 * xb - t2 * xa) - 3 * xc) + xd) / 8;
+			fy0 -= fy3 = (t2 * (t2 * (3 * yb - t2 * ya) - 3 * yc) + yd) / 8;
+			x3 = Floor(fx3 + 0.5f);
+			y3 = Floor(fy3 + 0.5f);
+			if (fx0 != 0.0f) {
+				fx1 *= fx0 = (x0 - x3) / fx0;
+				fx2 *= fx0;
+			}
+			if (fy0 != 0.0f) {
+				fy1 *= fy0 = (y0 - y3) / fy0;
+				fy2 *= fy0;
+			}
+
+			if (Math.abs(x0 - x3) > EPSILON || Math.abs(y0 - y3) > EPSILON)
+				CubicBezierSegment(x0, y0, x0 + fx1, y0 + fy1, x0 + fx2, y0 + fy2, x3, y3, map, pen);
+
+			x0 = x3;
+			y0 = y3;
+			fx0 = fx3;
+			fy0 = fy3;
+			t1 = t2;
+		}
+
+		ApplyStroke(map, pen);
+		End(probe);
+	}
+
+	/**
+	 * Private Function
+	 * Records the points of a cubic bezier from (x0, x0) to (x3,
+	 * y3) with control points (x1, y1) and (x2, y2)
+	 * 
+	 * The cubic bezier segment drawing algorithm is taken from:
+	 * http://members.chello.at/~easyfilter/bresenham.html
+	 * 
+	 * @param x0
+	 * @param y0
+	 * @param x1
+	 * @param y1
+	 * @param x2
+	 * @param y2
+	 * @param x3
+	 * @param y3
+	 * @param map
+	 * @param pen
+	 */
+	private void CubicBezierSegment(float x0, float y0, float x1, float y1, float x2, float y2, float x3, float y3, StrokeBuffer map, Pen pen) {
+		ready = false;
+		float x = Floor((x0 + 3 * x1 + 3 * x2 + x3 + 4) / 8);
+		float y = Floor((y0 + 3 * y1 + 3 * y2 + y3 + 4) / 8);
+
+		QuadraticBezierSegment(x0, y0, Floor((x0 + 3 * x1 + 2) / 4), Floor((y0 + 3 * y1 + 2) / 4), x, y, 1, map, pen);
+		QuadraticBezierSegment(x, y, Floor((3 * x2 + x3 + 2) / 4), Floor((3 * y2 + y3 + 2) / 4), x3, y3, 1, map, pen);
+	}
+
+	/* Shapes */
+	/**
+	 * Draws a rectangle at (x, y) with the size (sizex, sizey)
+	 * 
+	 * @param x:     x anchor point of the rectangle
+	 * @param y:     y anchor point of the rectangle
+	 * @param sizex: width of the rectangle
+	 * @param sizey: height of the rectangle
+	 */
+	public void Rectangle(float x, float y, float sizex, float sizey) {
+		Rectangle(x, y, sizex, sizey, pen);
+	}
+
+	/**
+	 * Draws a rectangle at (x, y) with the size (sizex, sizey), with the given pen
+	 * 
+	 * @param x:     x anchor point of the rectangle
+	 * @param y:     y anchor point of the rectangle
+	 * @param sizex: width of the rectangle
+	 * @param sizey: height of the rectangle
+	 * @param pen:   pen to draw with
+	 */
+	public void Rectangle(float x, float y, float sizex, float sizey, Pen pen) {
+		ready = false;
+		StatsRecorder.Probe probe = Begin(Stats.Op.RECTANGLE);
+		StrokeBuffer map = Stroke();
+
+		if (centered) {
+			x = Math.round(x - sizex / 2);
+			y = Math.round(y - sizey / 2);
+		} else {
+			x = Math.round(x);
+			y = Math.round(y);
+		}
+
+		sizex = Math.round(sizex);
+		sizey = Math.round(sizey);
+
+		float o1 = pen.weight / 2 - (pen.weight + 1) % 2;
+		float o2 = o1 - pen.weight % 2;
+
+		float x2 = x + sizex;
+		float y2 = y + sizey;
+
+		if (y > y2) {
+			float t = y2;
+			y2 = y;
+			y = t;
+		}
+		if (x > x2) {
+			float t = x2;
+			x2 = x;
+			x = t;
+		}
+
+		Line(x - o1, y, x2 + o2, y, map, pen);
+		Line(x - o1, y2, x2 + o2, y2, map, pen);
+
+		Line(x, y - o1, x, y2 + o2, map, pen);
+		Line(x2, y - o1, x2, y2 + o2, map, pen);
+
+		ApplyStroke(map, pen);
+		End(probe);
+	}
+
+	/**
+	 * Draws an ellipse at (x, y) with the size (sizex, sizey)
+	 * 
+	 * The ellipse drawing algorithm is taken from:
+	 * http://members.chello.at/~easyfilter/bresenham.html
+	 *
+	 * @param x:     x anchor point of the ellipse
+	 * @param y:     y anchor point of the ellipse
+	 * @param sizex: width of the ellipse
+	 * @param sizey: height of the ellipse
+	 */
+	public void Ellipse(float x, float y, float sizex, float sizey) {
+		Ellipse(x, y, sizex, sizey, pen);
+	}
+
+	/**
+	 * Draws an ellipse at (x, y) with the size (sizex, sizey), with the given pen
+	 * 
+	 * The ellipse drawing algorithm is taken from:
+	 * http://members.chello.at/~easyfilter/bresenham.html
+	 *
+	 * @param x:     x anchor point of the ellipse
+	 * @param y:     y anchor point of the ellipse
+	 * @param sizex: width of the ellipse
+	 * @param sizey: height of the ellipse
+	 * @param pen:   pen to draw with
+	 */
+	public void Ellipse(float x, float y, float sizex, float sizey, Pen pen) {
+		ready = false;
+		StatsRecorder.Probe probe = Begin(Stats.Op.ELLIPSE);
+		StrokeBuffer map = Stroke();
+
+		if (centered) {
+			x = Math.round(x - sizex / 2);
+			y = Math.round(y - sizey / 2);
+		} else {
+			x = Math.round(x);
+			y = Math.round(y);
+		}
+
+		float x1 = Math.round(x + sizex);
+		float y1 = Math.round(y + sizey);
+
+		float th = pen.weight;
+		float a = Math.abs(x1 - x);
+		float b = Math.abs(y1 - y);
+		float b1 = Math.round(b) % 2;
+		float a2 = a - 2 * th, b2 = b - 2 * th;
+		float dx = 4 * (a - 1) * b * b, dy = 4 * (b1 - 1) * a * a;
+		float i = a + b2, err = b1 * a * a, dx2, dy2, e2, ed;
+
+		if ((th - 1) * (2 * b - th) > a * a)
+			b2 = Sqrt(a * (b - a) * i * a2) / (a - th);
+		if ((th - 1) * (2 * a - th) > b * b) {
+			a2 = Sqrt(b * (a - b) * i * b2) / (b - th);
+			th = (a - a2) / 2;
+		}
+		if (a == 0 || b == 0) {
+			Line(x, y, x1, y1, map, pen);
+			End(probe);
+			return;
+		}
+
+		if (x > x1) {
+			x = x1;
+			x1 += a;
+		}
+
+		if (y > y1)
+			y = y1;
+		if (b2 <= 0)
+			th = a;
+
+		e2 = th - Floor(th);
+		th = x + th - e2;
+
+		dx2 = 4 * (a2 + 2 * e2 - 1) * b2 * b2;
+		dy2 = 4 * (b1 - 1) * a2 * a2;
+		e2 = dx2 * e2;
+
+		y += Floor((b + 1) / 2);
+		y1 = y - b1;
+		a = 8 * a * a;
+		b1 = 8 * b * b;
+		a2 = 8 * a2 * a2;
+		b2 = 8 * b2 * b2;
+
+		do {
+			for (;;) {
+				if (err < 0 || x > x1) {
+					i = x;
+					break;
+				}
+
+				i = Math.min(dx, dy);
+				ed = Math.max(dx, dy);
+
+				if (y == y1 + 1 && 2 * err > dx && a > b1)
+					ed = a / 4;
+				else
+					ed += 2 * ed * i * i / (4 * ed * ed + i * i + 1) + 1;
+
+				i = 1 - err / ed;
+				Dot(x, y, i, map);
+				Dot(x, y1, i, map);
+				Dot(x1, y, i, map);
+				Dot(x1, y1, i, map);
+
+				if (err + dy + a < dx) {
+					i = x + 1;
+					break;
+				}
+				x++;
+				x1--;
+				err -= dx;
+				dx -= b1;
+			}
+
+			for (; i < th && 2 * i <= x + x1; i++) {
+				Dot(i, y, 1, map);
+				Dot(x + x1 - i, y, 1, map);
+				Dot(i, y1, 1, map);
+				Dot(x + x1 - i, y1, 1, map);
+			}
+
+			while (e2 > 0 && x + x1 >= 2 * th) {
+				i = Math.min(dx2, dy2);
+				ed = Math.max(dx2, dy2);
+
+				if (y == y1 + 1 && 2 * e2 > dx2 && a2 > b2)
+					ed = a2 / 4;
+				else
+					ed += 2 * ed * i * i / (4 * ed * ed + i * i);
+
+				i = e2 / ed;
+				Dot(th, y, i, map);
+				Dot(x + x1 - th, y, i, map);
+				Dot(th, y1, i, map);
+				Dot(x + x1 - th, y1, i, map);
+
+				if (e2 + dy2 + a2 < dx2)
+					break;
+
+				th++;
+				e2 -= dx2;
+				dx2 -= b2;
+			}
+
+			e2 += dy2 += a2;
+			y++;
+			y1--;
+			err += dy += a;
+		} while (x < x1);
+
+		if (y - y1 <= b) {
+			if (err > dy + a) {
+				y--;
+				y1++;
+				err -= dy -= a;
+			}
+
+			for (; y - y1 <= b; err += dy += a) {
+				i = 4 * err / b1;
+				Dot(x, y, i, map);
+				Dot(x1, y++, i, map);
+				Dot(x, y1, i, map);
+				Dot(x1, y1--, i, map);
+			}
+		}
+
+		ApplyStroke(map, pen);
+		End(probe);
+	}
+	
+	/**
+	 * Draws a circle at (x, y) with the radius (radius)
+	 * 
+	 * @param x:      x anchor point of the circle
+	 * @param y:      y anchor point of the circle
+	 * @param radius: radius of the circle
+	 */
+	public void Circle(float x, float y, float radius) {
+		Ellipse(x, y, radius * 2, radius * 2, pen);
+	}
+
+	/**
+	 * Draws a circle at (x, y) with the radius (radius), with the given pen
+	 * 
+	 * @param x:      x anchor point of the circle
+	 * @param y:      y anchor point of the circle
+	 * @param radius: radius of the circle
+	 * @param pen:    pen to draw with
+	 */
+	public void Circle(float x, float y, float radius, Pen pen) {
+		Ellipse(x, y, radius * 2, radius * 2, pen);
+	}
+
+	/* Filled Shapes */
+	/**
+	 * Fills a rectangle at (x, y) with the size (sizex, sizey). Pixels on the
+	 * edges get the share of their area the rectangle covers.
+	 * 
+	 * @param x:     x anchor point of the rectangle
+	 * @param y:     y anchor point of the rectangle
+	 * @param sizex: width of the rectangle
+	 * @param sizey: height of the rectangle
+	 */
+	public void FillRectangle(float x, float y, float sizex, float sizey) {
+		FillRectangle(x, y, sizex, sizey, pen);
+	}
+
+	/**
+	 * Fills a rectangle at (x, y) with the size (sizex, sizey), with the given
+	 * pen. Pixels on the edges get the share of their area the rectangle covers.
+	 * 
+	 * @param x:     x anchor point of the rectangle
+	 * @param y:     y anchor point of the rectangle
+	 * @param sizex: width of the rectangle
+	 * @param sizey: height of the rectangle
+	 * @param pen:   pen to draw with
+	 */
+	public void FillRectangle(float x, float y, float sizex, float sizey, Pen pen) {
+		if (centered) {
+			x -= sizex / 2;
+			y -= sizey / 2;
+		}
+
+		float[] xs = { x, x + sizex, x + sizex, x };
+		float[] ys = { y, y, y + sizey, y + sizey };
+		Fill(xs, ys, 4, true, pen);
+	}
+
+	/**
+	 * Fills an ellipse at (x, y) with the size (sizex, sizey). Pixels on the
+	 * edge get the share of their area the ellipse covers.
+	 * 
+	 * @param x:     x anchor point of the ellipse
+	 * @param y:     y anchor point of the ellipse
+	 * @param sizex: width of the ellipse
+	 * @param sizey: height of the ellipse
+	 */
+	public void FillEllipse(float x, float y, float sizex, float sizey) {
+		FillEllipse(x, y, sizex, sizey, pen);
+	}
+
+	/**
+	 * Fills an ellipse at (x, y) with the size (sizex, sizey), with the given
+	 * pen. Pixels on the edge get the share of their area the ellipse covers.
+	 * 
+	 * The ellipse is filled as a polygon with enough vertices to stay within
+	 * 1/64 of a pixel of the curve.
+	 * 
+	 * @param x:     x anchor point of the ellipse
+	 * @param y:     y anchor point of the ellipse
+	 * @param sizex: width of the ellipse
+	 * @param sizey: height of the ellipse
+	 * @param pen:   pen to draw with
+	 */
+	public void FillEllipse(float x, float y, float sizex, float sizey, Pen pen) {
+		float rx = Math.abs(sizex) / 2, ry = Math.abs(sizey) / 2;
+		float cx = centered ? x : x + sizex / 2;
+		float cy = centered ? y : y + sizey / 2;
+
+		int n = Math.max(8, Ceil((float) Math.PI * Sqrt(32 * Math.max(rx, ry))));
+		float[] xs = new float[n], ys = new float[n];
+		for (int i = 0; i < n; i++) {
+			double a = 2 * Math.PI * i / n;
+			xs[i] = cx + rx * (float) Math.cos(a);
+			ys[i] = cy + ry * (float) Math.sin(a);
+		}
+
+		Fill(xs, ys, n, true, pen);
+	}
+
+	/**
+	 * Fills a circle at (x, y) with the radius (radius)
+	 * 
+	 * @param x:      x anchor point of the circle
+	 * @param y:      y anchor point of the circle
+	 * @param radius: radius of the circle
+	 */
+	public void FillCircle(float x, float y, float radius) {
+		FillEllipse(x, y, radius * 2, radius * 2, pen);
+	}
+
+	/**
+	 * Fills a circle at (x, y) with the radius (radius), with the given pen
+	 * 
+	 * @param x:      x anchor point of the circle
+	 * @param y:      y anchor point of the circle
+	 * @param radius: radius of the circle
+	 * @param pen:    pen to draw with
+	 */
+	public void FillCircle(float x, float y, float radius, Pen pen) {
+		FillEllipse(x, y, radius * 2, radius * 2, pen);
+	}
+
+	/**
+	 * Fills the polygon with the vertices (xs[0], ys[0]), (xs[1], ys[1]) ...
+	 * by the nonzero winding rule: areas the outline goes around more than
+	 * once in the same direction are filled once, and areas it goes around as
+	 * many times clockwise as counterclockwise are left empty.
+	 * 
+	 * @param xs: x positions of the vertices
+	 * @param ys: y positions of the vertices
+	 */
+	public void FillPolygon(float[] xs, float[] ys) {
+		FillPolygon(xs, ys, pen);
+	}
+
+	/**
+	 * Fills the polygon with the vertices (xs[0], ys[0]), (xs[1], ys[1]) ...
+	 * with the given pen, by the nonzero winding rule: areas the outline goes
+	 * around more than once in the same direction are filled once, and areas
+	 * it goes around as many times clockwise as counterclockwise are left
+	 * empty. Polygons that cross or touch themselves are filled row by row
+	 * and cost more than simple ones. Extra values in the longer of the two
+	 * arrays are ignored.
+	 * 
+	 * @param xs:  x positions of the vertices
+	 * @param ys:  y positions of the vertices
+	 * @param pen: pen to draw with
+	 */
+	public void FillPolygon(float[] xs, float[] ys, Pen pen) {
+		int n = Math.min(xs.length, ys.length);
+		Fill(xs, ys, n, Winding.Simple(xs, ys, n), pen);
+	}
+
+	/**
+	 * Private Function
+	 * Fills a polygon with anti-aliased coverage. Pixel (i, j) is the square
+	 * from (i, j) to (i + 1, j + 1), and its value is raised by the intensity
+	 * of the pen times the share of the square the polygon covers.
+	 * 
+	 * Every edge adds the signed area it leaves to its right to an accumulation
+	 * buffer of the bounding box, row by row, and the running sum of a row is
+	 * the coverage of its pixels. The rows are split into bands that are
+	 * accumulated in parallel, and only the covered span of each row is added
+	 * to the value array.
+	 * 
+	 * The running sum is the average winding number of a pixel, which is its
+	 * coverage only if the polygon neither crosses nor touches itself. Other
+	 * polygons accumulate just the sides of their areas of nonzero winding,
+	 * row by row, see Winding.
+	 * 
+	 * @param xs:     x positions of the vertices
+	 * @param ys:     y positions of the vertices
+	 * @param n:      number of vertices
+	 * @param simple: whether the polygon neither crosses nor touches itself
+	 * @param pen:    pen to draw with
+	 */
+	private void Fill(float[] xs, float[] ys, int n, final boolean simple, final Pen pen) {
+		if (n < 3)
+			return;
+
+		float minx = xs[0], maxx = xs[0], miny = ys[0], maxy = ys[0];
+		for (int i = 1; i < n; i++) {
+			minx = Math.min(minx, xs[i]);
+			maxx = Math.max(maxx, xs[i]);
+			miny = Math.min(miny, ys[i]);
+			maxy = Math.max(maxy, ys[i]);
+		}
+		if (!(minx <= maxx && miny <= maxy))
+			return;
+
+		final int bx = Math.max(0, Floor(minx));
+		final int by = Math.max(0, Floor(miny));
+		final int bw = Math.min(w, Ceil(maxx)) - bx;
+		final int bh = Math.min(h, Ceil(maxy)) - by;
+		if (bw <= 0 || bh <= 0)
+			return;
+
+		ready = false;
+		StatsRecorder.Probe probe = Begin(Stats.Op.FILL);
+
+		final float[] edges = new float[12 * n];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			int j = i + 1 == n ? 0 : i + 1;
+			count = ClipEdge(edges, count, xs[i] - bx, ys[i] - by, xs[j] - bx, ys[j] - by, bw);
+		}
+
+		final int m = count;
+		final int stride = bw + 2;
+		final int rows = Math.max(1, Parallel.CHUNK / stride);
+		final long[] written = new long[(bh + rows - 1) / rows];
+
+		Parallel.For(written.length, new Parallel.Job() {
+			public void Run(int band) {
+				int top = band * rows;
+				int bottom = Math.min(bh, top + rows);
+				float[] acc = new float[(bottom - top) * stride];
+				float[] row = new float[bw];
+
+				if (simple) {
+					for (int i = 0; i < m; i += 4)
+						Accumulate(acc, stride, top, bottom, edges[i], edges[i + 1], edges[i + 2], edges[i + 3]);
+				} else {
+					Winding winding = new Winding();
+					for (int y = top; y < bottom; y++)
+						winding.Row(acc, stride, top, y, edges, m);
+				}
+
+				for (int y = top; y < bottom; y++) {
+					int base = (y - top) * stride;
+					int first = 0, last = stride;
+					while (first < stride && acc[base + first] == 0)
+						first++;
+					if (first == stride)
+						continue;
+					while (acc[base + last - 1] == 0)
+						last--;
+
+					int end = Math.min(bw, last - 1);
+					if (end <= first)
+						continue;
+
+					float sum = 0;
+					for (int x = first; x < end; x++) {
+						sum += acc[base + x];
+						row[x - first] = pen.intensity * Math.min(Math.abs(sum), 1);
+					}
+
+					written[band] += AddRow((by + y) * w + bx + first, row, 0, end - first, pen.carve);
+				}
+			}
+		});
+
+		if (probe != null)
+			for (long k : written)
+				probe.pixels += k;
+		End(probe);
+	}
+
+	/**
+	 * Private Function
+	 * Writes an edge of a polygon into the edge list, in coordinates of the
+	 * bounding box. The parts of the edge left of 0 or right of the box are
+	 * moved onto its sides, which leaves the coverage of the pixels inside the
+	 * box the same. Horizontal edges cover nothing and are left out.
+	 * 
+	 * @param edges: edge list, four values per edge
+	 * @param k:     number of values in the edge list
+	 * @param x0:    x position of the start of the edge
+	 * @param y0:    y position of the start of the edge
+	 * @param x1:    x position of the end of the edge
+	 * @param y1:    y position of the end of the edge
+	 * @param right: width of the bounding box
+	 * @return the new number of values in the edge list
+	 */
+	private static int ClipEdge(float[] edges, int k, float x0, float y0, float x1, float y1, float right) {
+		if (y0 == y1)
+			return k;
+
+		float t0 = -x0 / (x1 - x0), t1 = (right - x0) / (x1 - x0);
+		float[] cuts = { Math.min(t0, t1), Math.max(t0, t1), 1 };
+
+		float px = x0, py = y0;
+		for (int c = 0; c < 3; c++) {
+			float t = cuts[c];
+			if (c < 2 && !(t > 0 && t < 1))
+				continue;
+
+			float qx = c == 2 ? x1 : x0 + t * (x1 - x0);
+			float qy = c == 2 ? y1 : y0 + t * (y1 - y0);
+
+			edges[k++] = Constrain(px, 0, right);
+			edges[k++] = py;
+			edges[k++] = Constrain(qx, 0, right);
+			edges[k++] = qy;
+
+			px = qx;
+			py = qy;
+		}
+
+		return k;
+	}
+
+	/**
+	 * Private Function
+	 * Adds the signed area an edge leaves to its right in the rows from top to
+	 * bottom to the accumulation buffer. The area of each row is split between
+	 * the cells the edge crosses in it, so the running sum of the row gives the
+	 * coverage of every pixel.
+	 * 
+	 * @param acc:    accumulation buffer of the rows
+	 * @param stride: length of a row of the buffer
+	 * @param top:    first row of the buffer
+	 * @param bottom: last row of the buffer, exclusive
+	 * @param x0:     x position of the start of the edge
+	 * @param y0:     y position of the start of the edge
+	 * @param x1:     x position of the end of the edge
+	 * @param y1:     y position of the end of the edge
+	 */
+	static void Accumulate(float[] acc, int stride, int top, int bottom, float x0, float y0, float x1, float y1) {
+		float dir = 1;
+		if (y0 > y1) {
+			float t = x0;
+			x0 = x1;
+			x1 = t;
+			t = y0;
+			y0 = y1;
+			y1 = t;
+			dir = -1;
+		}
+		if (y1 <= top || y0 >= bottom || y0 == y1)
+			return;
+
+		float dxdy = (x1 - x0) / (y1 - y0);
+		float x = y0 < top ? x0 + (top - y0) * dxdy : x0;
+		int start = Math.max(top, Floor(y0));
+		int end = Math.min(bottom, Ceil(y1));
+
+		for (int y = start; y < end; y++) {
+			float dy = Math.min(y + 1, y1) - Math.max(y, y0);
+			float xn = x + dxdy * dy;
+			float d = dy * dir;
+			float lo = Math.min(x, xn), hi = Math.max(x, xn);
+			int base = (y - top) * stride;
+
+			float lof = Floor(lo);
+			int loi = (int) lof;
+			int hii = Ceil(hi);
+
+			if (hii <= loi + 1) {
+				float mid = 0.5f * (x + xn) - lof;
+				acc[base + loi] += d - d * mid;
+				acc[base + loi + 1] += d * mid;
+			} else {
+				float s = 1 / (hi - lo);
+				float lofr = lo - lof;
+				float a0 = 0.5f * s * (1 - lofr) * (1 - lofr);
+				float hifr = hi - hii + 1;
+				float am = 0.5f * s * hifr * hifr;
+
+				acc[base + loi] += d * a0;
+				if (hii == loi + 2) {
+					acc[base + loi + 1] += d * (1 - a0 - am);
+				} else {
+					float a1 = s * (1.5f - lofr);
+					acc[base + loi + 1] += d * (a1 - a0);
+					for (int k = loi + 2; k < hii - 1; k++)
+						acc[base + k] += d * s;
+					float a2 = a1 + (hii - loi - 3) * s;
+					acc[base + hii - 1] += d * (1 - a2 - am);
+				}
+				acc[base + hii] += d * am;
+			}
+
+			x = xn;
+		}
+	}
+
+	/* Image */
+
+	/**
+	 * Renders an image at (0,0) in its original size, mapped to the set intensity
+	 * 
+	 * @param pixels: ARGB pixels of the source image
+	 * @param iw:     width of the source image
+	 * @param ih:     height of the source image
+	 */
+	public void Image(int[] pixels, int iw, int ih) {
+		Image(pixels, iw, ih, 0, 0, w, h, true, pen);
+	}
+
+	/**
+	 * Renders an image at (x,y) in its original size, mapped to the set intensity
+	 * 
+	 * @param pixels: ARGB pixels of the source image
+	 * @param iw:     width of the source image
+	 * @param ih:     height of the source image
+	 * @param x:      x anchor
+	 * @param y:      y anchor
+	 */
+	public void Image(int[] pixels, int iw, int ih, float x, float y) {
+		Image(pixels, iw, ih, x, y, pen);
+	}
+
+	/**
+	 * Renders an image at (x,y) in its original size, mapped to the intensity of
+	 * the given pen
+	 * 
+	 * @param pixels: ARGB pixels of the source image
+	 * @param iw:     width of the source image
+	 * @param ih:     height of the source image
+	 * @param x:      x anchor
+	 * @param y:      y anchor
+	 * @param pen:    pen to draw with
+	 */
+	public void Image(int[] pixels, int iw, int ih, float x, float y, Pen pen) {
+		ready = false;
+		StatsRecorder.Probe probe = Begin(Stats.Op.IMAGE);
+
+		if (centered) {
+			x -= iw / 2;
+			y -= ih / 2;
+		}
+
+		if (ImageAligned(pixels, iw, ih, x, y, iw, ih, false, pen, probe)) {
+			End(probe);
+			return;
+		}
+
+		StrokeBuffer map = concurrent ? Stroke() : null;
+
+		for (int i = 0; i < ih; i++) {
+			for (int j = 0; j < iw; j++) {
+				int c = pixels[i * iw + j];
+				float val = pen.intensity * ((c >> 16 & 0xFF) + (c >> 8 & 0xFF) + (c & 0xFF)) / 765;
+				Dot(j + x, i + y, val, map, true, pen.carve, 0, 0, w, h);
+			}
+
+			if (map != null) {
+				ApplyStroke(map, 1, pen.carve);
+				map.Clear();
+			}
+		}
+
+		End(probe);
+	}
+
+	/**
+	 * Renders an image at (x,y) with the size (sizex, sizey), mapped to the set
+	 * intensity
+	 *
+	 * @param pixels: ARGB pixels of the source image
+	 * @param iw:     width of the source image
+	 * @param ih:     height of the source image
+	 * @param x:      x anchor
+	 * @param y:      y anchor
+	 * @param sizex:  width of the image
+	 * @param sizey:  height of the image
+	 */
+	public void Image(int[] pixels, int iw, int ih, float x, float y, float sizex, float sizey) {
+		Image(pixels, iw, ih, x, y, sizex, sizey, false, pen);
+	}
+
+	/**
+	 * Renders an image at (x,y) with the size (sizex, sizey), mapped to the
+	 * intensity of the given pen
+	 *
+	 * @param pixels: ARGB pixels of the source image
+	 * @param iw:     width of the source image
+	 * @param ih:     height of the source image
+	 * @param x:      x anchor
+	 * @param y:      y anchor
+	 * @param sizex:  width of the image
+	 * @param sizey:  height of the image
+	 * @param pen:    pen to draw with
+	 */
+	public void Image(int[] pixels, int iw, int ih, float x, float y, float sizex, float sizey, Pen pen) {
+		Image(pixels, iw, ih, x, y, sizex, sizey, false, pen);
+	}
+
+	/**
+	 * Renders an image at (x,y) with the size (sizex, sizey), mapped to the set
+	 * intensity
+	 *
+	 * @param pixels:      ARGB pixels of the source image
+	 * @param iw:          width of the source image
+	 * @param ih:          height of the source image
+	 * @param x:           x anchor
+	 * @param y:           y anchor
+	 * @param sizex:       width of the image
+	 * @param sizey:       height of the image
+	 * @param forceCorner: overrides centered.
+	 * @param pen:         pen to draw with
+	 */
+	private void Image(int[] pixels, int iw, int ih, float x, float y, float sizex, float sizey, boolean forceCorner, Pen pen) {
+		ready = false;
+		StatsRecorder.Probe probe = Begin(Stats.Op.IMAGE);
+
+		sizex = Floor(sizex);
+		sizey = Floor(sizey);
+
+		if (centered && !forceCorner) {
+			x -= sizex / 2;
+			y -= sizey / 2;
+		}
+
+		if (ImageAligned(pixels, iw, ih, x, y, (int) sizex, (int) sizey, true, pen, probe)) {
+			End(probe);
+			return;
+		}
+
+		StrokeBuffer map = concurrent ? Stroke() : null;
+
+		for (int i = 0; i < sizey; i++) {
+			for (int j = 0; j < sizex; j++) {
+				float pxf = (iw - 1) * j / (sizex - 1);
+				float pyf = (ih - 1) * i / (sizey - 1);
+
+				int px = Floor(pxf), py = Floor(pyf);
+				int pxn = px == iw - 1 ? px : px + 1;
+				int pyn = py == ih - 1 ? py : py + 1;
+
+				float rx = pxf - px, ry = pyf - py;
+
+				int c00 = pixels[py * iw + px];
+				int c10 = pixels[py * iw + pxn];
+				int c01 = pixels[pyn * iw + px];
+				int c11 = pixels[pyn * iw + pxn];
+
+				float r00 = (1 - rx) * (1 - ry);
+				float r01 = (1 - rx) * (ry);
+				float r11 = (rx) * (ry);
+				float r10 = (rx) * (1 - ry);
+
+				float val = pen.intensity * (r00 * ((c00 >> 16 & 0xFF) + (c00 >> 8 & 0xFF) + (c00 & 0xFF))
+						+ r01 * ((c01 >> 16 & 0xFF) + (c01 >> 8 & 0xFF) + (c01 & 0xFF))
+						+ r11 * ((c11 >> 16 & 0xFF) + (c11 >> 8 & 0xFF) + (c11 & 0xFF))
+						+ r10 * ((c10 >> 16 & 0xFF) + (c10 >> 8 & 0xFF) + (c10 & 0xFF))) / 765;
+
+				Dot(j + x, i + y, val, map, true, pen.carve, 0, 0, w, h);
+			}
+
+			if (map != null) {
+				ApplyStroke(map, 1, pen.carve);
+				map.Clear();
+			}
+		}
+
+		End(probe);
+	}
+	
+
+	/**
+	 * Private Function
+	 * Plots an image whose pixels fall on whole canvas pixels, which is the
+	 * case whenever the anchor has no fractional part. Every pixel then goes
+	 * to a single canvas pixel, so the image is plotted row by row: a row is
+	 * clipped to the canvas once, its values are computed into a scratch row
+	 * and added to the value array in one run. Rows are plotted in parallel.
+	 * 
+	 * Scaled images are resampled with the same bilinear weights as the
+	 * general path, but the source columns and weights of every canvas column
+	 * are computed once for the whole image rather than for every pixel.
+	 * 
+	 * @param pixels: ARGB pixels of the source image
+	 * @param iw:     width of the source image
+	 * @param ih:     height of the source image
+	 * @param x:      x anchor
+	 * @param y:      y anchor
+	 * @param sizex:  width of the image on the canvas
+	 * @param sizey:  height of the image on the canvas
+	 * @param scaled: resamples the image to (sizex, sizey) if true
+	 * @param pen:    pen to draw with
+	 * @param probe:  probe of the calling operation, or null
+	 * @return false if the anchor is not on a whole pixel and nothing was
+	 *         plotted
+	 */
+	private boolean ImageAligned(final int[] pixels, final int iw, final int ih, float x, float y, int sizex, int sizey, final boolean scaled, final Pen pen, StatsRecorder.Probe probe) {
+		if (x != Floor(x) || y != Floor(y) || Math.abs(x) > 1 << 24 || Math.abs(y) > 1 << 24)
+			return false;
+
+		final int ox = (int) x, oy = (int) y;
+		final int j0 = Math.max(0, -ox), j1 = Math.min(sizex, w - ox);
+		final int i0 = Math.max(0, -oy), i1 = Math.min(sizey, h - oy);
+		if (j0 >= j1 || i0 >= i1)
+			return true;
+
+		final int[] cx = new int[j1], cxn = new int[j1];
+		final float[] crx = new float[j1];
+		if (scaled) {
+			for (int j = j0; j < j1; j++) {
+				float pxf = (iw - 1) * j / (float) (sizex - 1);
+				cx[j] = Floor(pxf);
+				cxn[j] = cx[j] == iw - 1 ? cx[j] : cx[j] + 1;
+				crx[j] = pxf - cx[j];
+			}
+		}
+
+		final int rows = i1 - i0;
+		final int rowsPerChunk = Math.max(1, Parallel.CHUNK / (j1 - j0));
+		final float sy = sizey;
+		final long[] written = new long[(rows + rowsPerChunk - 1) / rowsPerChunk];
+
+		Parallel.For(written.length, new Parallel.Job() {
+			public void Run(int chunk) {
+				float[] row = new float[j1 - j0];
+				int end = Math.min(i1, i0 + (chunk + 1) * rowsPerChunk);
+
+				for (int i = i0 + chunk * rowsPerChunk; i < end; i++) {
+					if (scaled) {
+						float pyf = (ih - 1) * i / (sy - 1);
+						int py = Floor(pyf);
+						int pyn = py == ih - 1 ? py : py + 1;
+						float ry = pyf - py;
+
+						for (int j = j0; j < j1; j++) {
+							int px = cx[j], pxn = cxn[j];
+							float rx = crx[j];
+
+							int c00 = pixels[py * iw + px];
+							int c10 = pixels[py * iw + pxn];
+							int c01 = pixels[pyn * iw + px];
+							int c11 = pixels[pyn * iw + pxn];
+
+							float r00 = (1 - rx) * (1 - ry);
+							float r01 = (1 - rx) * (ry);
+							float r11 = (rx) * (ry);
+							float r10 = (rx) * (1 - ry);
+
+							row[j - j0] = pen.intensity * (r00 * ((c00 >> 16 & 0xFF) + (c00 >> 8 & 0xFF) + (c00 & 0xFF))
+									+ r01 * ((c01 >> 16 & 0xFF) + (c01 >> 8 & 0xFF) + (c01 & 0xFF))
+									+ r11 * ((c11 >> 16 & 0xFF) + (c11 >> 8 & 0xFF) + (c11 & 0xFF))
+									+ r10 * ((c10 >> 16 & 0xFF) + (c10 >> 8 & 0xFF) + (c10 & 0xFF))) / 765;
+						}
+					} else {
+						for (int j = j0; j < j1; j++) {
+							int c = pixels[i * iw + j];
+							row[j - j0] = pen.intensity * ((c >> 16 & 0xFF) + (c >> 8 & 0xFF) + (c & 0xFF)) / 765;
+						}
+					}
+
+					written[chunk] += AddRow((oy + i) * w + ox + j0, row, 0, j1 - j0, pen.carve);
+				}
+			}
+		});
+
+		if (probe != null)
+			for (long n : written)
+				probe.pixels += n;
+
+		return true;
+	}
+
+	/**
+	 * Private Function
+	 * Adds a run of values to the value array, starting at the given index.
+	 * Values that are not numbers are skipped, the way Dot() skips them. In
+	 * concurrent mode, the run is written one block at a time under the lock
+	 * of the block's stripe, and the range is marked stale after each block
+	 * is written, so an Output() between two blocks can not keep a range
+	 * that misses the rest of the run.
+	 * 
+	 * @param k:     index of the first value
+	 * @param row:   values to be added
+	 * @param off:   index of the first value in row
+	 * @param n:     number of values
+	 * @param carve: subtracts the values from the value array if true
+	 * @return the number of values written
+	 */
+	private int AddRow(int k, float[] row, int off, int n, boolean carve) {
+		return AddRow(k, row, off, n, carve ? -1 : 1);
+	}
+
+	/**
+	 * Private Function
+	 * Adds a run of values to the value array, each multiplied by scale, see
+	 * AddRow(int k, float[] row, int off, int n, boolean carve).
+	 * 
+	 * @param k:     index of the first value
+	 * @param row:   values to be added
+	 * @param off:   index of the first value in row
+	 * @param n:     number of values
+	 * @param scale: factor of the values, negative to subtract them
+	 * @return the number of values written
+	 */
+	private int AddRow(int k, float[] row, int off, int n, float scale) {
+		int written = 0;
+
+		for (int i = 0; i < n;) {
+			int block = (k + i) >>> BLOCK_SHIFT;
+			int end = Math.min(n, ((block + 1) << BLOCK_SHIFT) - k);
+			ReentrantLock lock = concurrent ? locks[block & (STRIPES - 1)] : null;
+
+			if (lock != null)
+				lock.lock();
+			try {
+				written += values.AddRun(k + i, row, off + i, end - i, scale);
+				i = end;
+				touched[block] = epoch;
+				ready = false;
+			} finally {
+				if (lock != null)
+					lock.unlock();
+			}
+		}
+
+		return written;
+	}
+
+	/** STAMPS **/
+
+	/**
+	 * Registers a shape to be stamped with Stamp() and returns its id. The
+	 * shape is drawn once for every stroke weight and quarter-pixel offset it
+	 * is stamped with, and the values it leaves are kept in a cache. Parts of
+	 * the shape further than extent from its anchor are cut off.
+	 * 
+	 * @param shape:  shape to register
+	 * @param extent: distance from the anchor the shape stays within
+	 * @return int
+	 */
+	public int DefineShape(Shape shape, float extent) {
+		if (shape == null)
+			throw new IllegalArgumentException("Shape can not be null");
+		if (!(extent >= 0))
+			throw new IllegalArgumentException("Extent of a shape can not be negative: " + extent);
+
+		return stampCache.Define(shape, extent);
+	}
+
+	/**
+	 * Registers an ellipse with the size (sizex, sizey) to be stamped with
+	 * Stamp() and returns its id.
+	 * 
+	 * @param sizex: width of the ellipse
+	 * @param sizey: height of the ellipse
+	 * @return int
+	 */
+	public int DefineEllipse(final float sizex, final float sizey) {
+		return DefineShape(new Shape() {
+			public void Draw(InfinidecimalCore canvas, float x, float y, Pen pen) {
+				canvas.Ellipse(x, y, sizex, sizey, pen);
+			}
+		}, Math.max(Math.abs(sizex), Math.abs(sizey)));
+	}
+
+	/**
+	 * Registers a circle with the radius (radius) to be stamped with Stamp()
+	 * and returns its id.
+	 * 
+	 * @param radius: radius of the circle
+	 * @return int
+	 */
+	public int DefineCircle(float radius) {
+		return DefineEllipse(radius * 2, radius * 2);
+	}
+
+	/**
+	 * Sets the number of values the cached stamps may hold before the least
+	 * recently used ones are dropped. The default is 4194304, 16 MB.
+	 * 
+	 * @param values: number of values
+	 */
+	public void SetStampCacheSize(int values) {
+		if (values < 0)
+			throw new IllegalArgumentException("Stamp cache size can not be negative: " + values);
+
+		stampCache.SetCapacity(values);
+	}
+
+	/**
+	 * Draws the shape with the given id, see DefineShape(), at (xs[0], ys[0]),
+	 * (xs[1], ys[1]) ...
+	 * 
+	 * @param shape: id of the shape
+	 * @param xs:    x anchor points
+	 * @param ys:    y anchor points
+	 */
+	public void Stamp(int shape, float[] xs, float[] ys) {
+		Stamp(shape, xs, ys, pen);
+	}
+
+	/**
+	 * Draws the shape with the given id, see DefineShape(), at (xs[0], ys[0]),
+	 * (xs[1], ys[1]) ... with the given pen. The anchors are rounded to a
+	 * quarter of a pixel. Extra values in the longer of the two arrays are
+	 * ignored.
+	 * 
+	 * Instead of drawing the shape again, the values it left the first time
+	 * it was drawn with the same stroke weight and offset are added, run by
+	 * run, scaled by the intensity of the pen as they are added. Scaling by
+	 * the intensity gives the same values as drawing the shape itself.
+	 * 
+	 * @param shape: id of the shape
+	 * @param xs:    x anchor points
+	 * @param ys:    y anchor points
+	 * @param pen:   pen to draw with
+	 */
+	public void Stamp(int shape, float[] xs, float[] ys, Pen pen) {
+		if (!stampCache.Has(shape))
+			throw new IllegalArgumentException("No shape is defined with the id " + shape);
+
+		int n = Math.min(xs.length, ys.length);
+		if (n == 0)
+			return;
+
+		ready = false;
+		StatsRecorder.Probe probe = Begin(Stats.Op.STAMP);
+
+		final int sub = StampCache.SUBPIXEL;
+		float s = (pen.carve ? -1 : 1) * pen.intensity;
+		StampCache.Stamp[] stamps = new StampCache.Stamp[sub * sub];
+		long written = 0;
+
+		for (int i = 0; i < n; i++) {
+			float x = xs[i], y = ys[i];
+			if (Float.isNaN(x) || Float.isNaN(y))
+				continue;
+
+			int ix = Floor(x), iy = Floor(y);
+			int sx = Math.round((x - ix) * sub), sy = Math.round((y - iy) * sub);
+			if (sx == sub) {
+				ix++;
+				sx = 0;
+			}
+			if (sy == sub) {
+				iy++;
+				sy = 0;
+			}
+
+			int q = sy * sub + sx;
+			if (stamps[q] == null)
+				stamps[q] = stampCache.Get(shape, pen.weight, sx, sy, centered);
+
+			int[] runs = stamps[q].runs;
+			float[] data = stamps[q].data;
+			for (int k = 0, off = 0; k < runs.length; k += 3) {
+				int left = ix + runs[k], row = iy + runs[k + 1], size = runs[k + 2];
+				int c0 = Math.max(0, -left), c1 = Math.min(size, w - left);
+
+				if (row >= 0 && row < h && c0 < c1)
+					written += AddRow(row * w + left + c0, data, off + c0, c1 - c0, s);
+				off += size;
+			}
+		}
+
+		if (probe != null)
+			probe.pixels += written;
+		End(probe);
+	}
+
+	/** LEVELS **/
+
+	/**
+	 * Sets whether a pixel of a level above 0 shows the highest value of the
+	 * canvas pixels under it rather than their average. The highest value keeps
+	 * thin strokes visible in overviews, the average gives a smoother image.
+	 * 
+	 * @param state: shows the highest value if true
+	 */
+	public void SetLevelMax(boolean state) {
+		pyramidMax = state;
+	}
+
+	/**
+	 * Plots a part of a level of the output image, anchored at (x, y) from the
+	 * top left corner of the level and with the size (sizex, sizey), into the
+	 * given ARGB pixel array of the size of the area. The parts outside the
+	 * level are plotted as empty.
+	 * 
+	 * Every level halves the size of the one below it, level 0 being the
+	 * canvas itself, so overviews of a large canvas cost as much as the pixels
+	 * they show. The levels are kept in a pyramid that is built up to a level
+	 * the first time it is asked for, and then only updated where the canvas
+	 * has changed. The pyramid takes a third of the memory of a float canvas
+	 * of the same size, for every channel. All levels are normalized with the range of the
+	 * canvas, so they look the same at every zoom. The pixels on the right and
+	 * bottom edges of a level may lie over fewer canvas pixels than the others,
+	 * and are averaged over the ones they lie over.
+	 * 
+	 * @param pixels: pixel array of the size of the area
+	 * @param level:  level to plot, from 0 to Levels() - 1
+	 * @param x:      left anchor of the area, in pixels of the level
+	 * @param y:      top anchor of the area, in pixels of the level
+	 * @param sizex:  width of the area
+	 * @param sizey:  height of the area
+	 */
+	public void Output(final int[] pixels, final int level, final int x, final int y, final int sizex, final int sizey) {
+		if (level < 0 || level >= Levels())
+			throw new IllegalArgumentException("Level " + level + " is not between 0 and " + (Levels() - 1));
+
+		if (level == 0) {
+			Output(pixels, x, y, sizex, sizey);
+			return;
+		}
+
+		final int area = Area(pixels, sizex, sizey);
+
+		StatsRecorder.Probe probe = Begin(Stats.Op.OUTPUT);
+		Lock();
+		try {
+			Sync();
+			UpdateRange();
+			UpdatePyramid(level);
+
+			final float[] src = pyramid[0][level];
+			final int lw = Width(level), lh = Height(level);
+			final boolean max = pyramidMax;
+			final long side = 1L << level;
+			final int[] table = Lut();
+			final int empty = table[LutIndex(ToOne(0))];
+
+			Parallel.For(Parallel.Chunks(area), new Parallel.Job() {
+				public void Run(int chunk) {
+					int end = Math.min(area, (chunk + 1) * Parallel.CHUNK);
+					for (int i = chunk * Parallel.CHUNK; i < end; i++) {
+						int px = x + i % sizex;
+						int py = y + i / sizex;
+
+						if (px >= 0 && px < lw && py >= 0 && py < lh) {
+							float v = src[py * lw + px];
+							if (!max)
+								v /= (float) (Math.min(side, w - ((long) px << level)) * Math.min(side, h - ((long) py << level)));
+							pixels[i] = table[LutIndex(ToOne(v))];
+						} else {
+							pixels[i] = empty;
+						}
+					}
+				}
+			});
+		} finally {
+			Unlock();
+		}
+
+		if (probe != null)
+			probe.pixels += area;
+		End(probe);
+	}
+
+	/**
+	 * Private Function
+	 * Brings the pyramid up to date up to the given level, or up to the
+	 * highest level built so far if that is higher. Levels that were built
+	 * before are updated only in the rows, and the columns of the rows, that
+	 * lie over the blocks written to since the last time. Levels that were not
+	 * built yet are built in full.
+	 * 
+	 * @param level: highest level needed
+	 */
+	private void UpdatePyramid(int level) {
+		if (pyramid == null || pyramidBuiltMax != pyramidMax) {
+			pyramid = new float[values.Channels()][Levels()][];
+			pyramidBuiltMax = pyramidMax;
+		}
+
+		int since = pyramidSeen;
+		pyramidSeen = ++epoch;
+
+		int w1 = Width(1), h1 = Height(1);
+		int[] lo = new int[h1], hi = new int[h1];
+		java.util.Arrays.fill(lo, Integer.MAX_VALUE);
+		java.util.Arrays.fill(hi, -1);
+
+		if (pyramid[0][1] == null) {
+			java.util.Arrays.fill(lo, 0);
+			java.util.Arrays.fill(hi, w1 - 1);
+		} else {
+			for (int b = 0; b < blocks; b++) {
+				if (touched[b] < since)
+					continue;
+
+				int from = b << BLOCK_SHIFT, to = Math.min(len, (b + 1) << BLOCK_SHIFT) - 1;
+				int y0 = from / w, y1 = to / w;
+
+				for (int r = y0 >> 1; r <= y1 >> 1; r++) {
+					lo[r] = Math.min(lo[r], y0 == y1 ? (from % w) >> 1 : 0);
+					hi[r] = Math.max(hi[r], y0 == y1 ? (to % w) >> 1 : w1 - 1);
+				}
+			}
+		}
+
+		int top = level;
+		while (top + 1 < pyramid[0].length && pyramid[0][top + 1] != null)
+			top++;
+
+		for (int k = 1; k <= top; k++) {
+			int lw = Width(k), lh = Height(k);
+
+			if (pyramid[0][k] == null) {
+				for (float[][] levels : pyramid)
+					levels[k] = new float[lw * lh];
+				java.util.Arrays.fill(lo, 0, lh, 0);
+				java.util.Arrays.fill(hi, 0, lh, lw - 1);
+			}
+
+			for (int c = 0; c < pyramid.length; c++)
+				ReduceLevel(c, k, lo, hi);
+
+			if (k == top)
+				break;
+
+			int nh = Height(k + 1);
+			for (int r = 0; r < nh; r++) {
+				int a = r << 1, c = Math.min(lh - 1, a + 1);
+				int l = Math.min(lo[a], lo[c]), u = Math.max(hi[a], hi[c]);
+				lo[r] = l == Integer.MAX_VALUE ? l : l >> 1;
+				hi[r] = u < 0 ? u : u >> 1;
+			}
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Computes the pixels of a level of a channel from the level below it, in
+	 * the columns lo[r] to hi[r] of every row r, in parallel.
+	 * 
+	 * @param c:  index of the channel
+	 * @param k:  level to compute
+	 * @param lo: first column to compute in each row
+	 * @param hi: last column to compute in each row, inclusive
+	 */
+	private void ReduceLevel(final int c, final int k, final int[] lo, final int[] hi) {
+		final int lw = Width(k), lh = Height(k);
+		final int sw = Width(k - 1), sh = Height(k - 1);
+		final float[] dst = pyramid[c][k];
+		final float[] below = pyramid[c][k - 1];
+		final int rowsPerChunk = Math.max(1, Parallel.CHUNK / lw);
+		final boolean max = pyramidMax;
+
+		Parallel.For((lh + rowsPerChunk - 1) / rowsPerChunk, new Parallel.Job() {
+			public void Run(int chunk) {
+				float[] top = below == null ? new float[sw] : below;
+				float[] bottom = below == null ? new float[sw] : below;
+				int end = Math.min(lh, (chunk + 1) * rowsPerChunk);
+
+				for (int r = chunk * rowsPerChunk; r < end; r++) {
+					if (lo[r] > hi[r])
+						continue;
+
+					int a = r << 1, b = a + 1 < sh ? a + 1 : -1;
+					int x0 = lo[r] << 1, x1 = Math.min(sw, (hi[r] << 1) + 2);
+					int ta = a * sw, tb = b * sw;
+
+					if (below == null) {
+						values.ReadChannel(c, a * sw + x0, a * sw + x1, top, x0);
+						if (b >= 0)
+							values.ReadChannel(c, b * sw + x0, b * sw + x1, bottom, x0);
+						ta = tb = 0;
+					}
+
+					for (int x = lo[r]; x <= hi[r]; x++) {
+						int i = x << 1, j = i + 1 < sw ? i + 1 : -1;
+						float v = top[ta + i];
+
+						if (max) {
+							if (j >= 0)
+								v = Math.max(v, top[ta + j]);
+							if (b >= 0) {
+								v = Math.max(v, bottom[tb + i]);
+								if (j >= 0)
+									v = Math.max(v, bottom[tb + j]);
+							}
+						} else {
+							if (j >= 0)
+								v += top[ta + j];
+							if (b >= 0) {
+								v += bottom[tb + i];
+								if (j >= 0)
+									v += bottom[tb + j];
+							}
+						}
+
+						dst[r * lw + x] = v;
+					}
+				}
+			}
+		});
+	}
+
+	/** MERGING **/
+
+	/**
+	 * Adds the values of another canvas of the same size to this one, so a
+	 * drawing can be split over several canvases, in as many threads or
+	 * processes, and put together at the end. The other canvas is left as it
+	 * is.
+	 * 
+	 * Values are clipped at zero in every canvas on its own, so carving on a
+	 * canvas only takes away what was drawn on that canvas. Multi-channel
+	 * canvases are merged channel by channel, and only with canvases of the
+	 * same number of channels.
+	 * 
+	 * @param other: canvas to add the values of
+	 */
+	public void Merge(InfinidecimalCore other) {
+		Merge(new InfinidecimalCore[] { other });
+	}
+
+	/**
+	 * Adds the values of a number of canvases of the same size to this one.
+	 * 
+	 * The canvases are reduced block by block in parallel: the values of a
+	 * block are summed over all of the canvases first, in the order they are
+	 * given, and the sum is added to this canvas once. This reads every value
+	 * once and writes every value of this canvas once, however many canvases
+	 * there are. In concurrent mode, blocks are read and written under the
+	 * lock of their stripe, so the canvases can be drawn on meanwhile.
+	 * 
+	 * @param others: canvases to add the values of
+	 */
+	public void Merge(final InfinidecimalCore[] others) {
+		for (InfinidecimalCore other : others) {
+			if (other == this)
+				throw new IllegalArgumentException("A canvas can not be merged into itself");
+			if (other.w != w || other.h != h)
+				throw new IllegalArgumentException("A " + other.w + "x" + other.h + " canvas can not be merged into a " + w + "x" + h + " canvas");
+			if (other.values.Channels() != values.Channels())
+				throw new IllegalArgumentException("A canvas of " + other.values.Channels() + " channels can not be merged into a canvas of " + values.Channels() + " channels");
+		}
+
+		if (others.length == 0)
+			return;
+
+		StatsRecorder.Probe probe = Begin(Stats.Op.MERGE);
+		Sync();
+		for (InfinidecimalCore other : others)
+			other.Sync();
+
+		final int channels = values.Channels();
+
+		Parallel.For(Parallel.Chunks(len), new Parallel.Job() {
+			public void Run(int chunk) {
+				float[] sum = new float[1 << BLOCK_SHIFT];
+				float[] part = new float[1 << BLOCK_SHIFT];
+
+				int end = Math.min(blocks, (chunk + 1) * BLOCKS_PER_CHUNK);
+				for (int b = chunk * BLOCKS_PER_CHUNK; b < end; b++) {
+					int from = b << BLOCK_SHIFT, to = Math.min(len, (b + 1) << BLOCK_SHIFT);
+
+					for (int c = 0; c < channels; c++) {
+						for (int i = 0; i < others.length; i++) {
+							others[i].ReadBlock(c, b, from, to, i == 0 ? sum : part);
+
+							if (i > 0)
+								for (int k = 0; k < to - from; k++)
+									sum[k] += part[k];
+						}
+
+						AddChannelRow(c, from, sum, to - from);
+					}
+				}
+			}
+		});
+
+		ready = false;
+
+		if (probe != null)
+			probe.pixels += len;
+		End(probe);
+	}
+
+	/**
+	 * Adds the values of a snapshot file saved by Save() to this canvas, see
+	 * Merge(InfinidecimalCore other). Partial drawings done in other processes
+	 * can be saved and merged this way. The snapshot has to be of a canvas of
+	 * the same size and number of channels.
+	 * 
+	 * The whole file is checked before anything is added, so a truncated or
+	 * corrupt snapshot throws and leaves the canvas as it was. Merging it
+	 * again after fixing the file does not count any pixel twice.
+	 * 
+	 * @param file: snapshot file to add the values of
+	 */
+	public void Merge(java.io.File file) {
+		StatsRecorder.Probe probe = Begin(Stats.Op.MERGE);
+		Sync();
+
+		try {
+			Snapshot.Load(file, w, h, values.Channels(), new Snapshot.Sink() {
+				public void Zero(int c, int from, int to) {
+				}
+
+				public void Write(int c, int from, int to, float[] src) {
+					AddChannelRow(c, from, src, to - from);
+				}
+			});
+		} catch (java.io.IOException e) {
+			throw new java.io.UncheckedIOException(e);
+		} finally {
+			ready = false;
+			if (probe != null)
+				probe.pixels += len;
+			End(probe);
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Copies a block of a channel of the value array into the given array from
+	 * index 0 on, under the lock of its stripe in concurrent mode.
+	 * 
+	 * @param c:    index of the channel
+	 * @param b:    index of the block
+	 * @param from: first index of the block
+	 * @param to:   last index of the block, exclusive
+	 * @param dst:  array to copy the values into
+	 */
+	private void ReadBlock(int c, int b, int from, int to, float[] dst) {
+		ReentrantLock lock = concurrent ? locks[b & (STRIPES - 1)] : null;
+
+		if (lock != null)
+			lock.lock();
+		try {
+			values.ReadChannel(c, from, to, dst, 0);
+		} finally {
+			if (lock != null)
+				lock.unlock();
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Adds a run of values to a channel of the value array as they are, block
+	 * by block under the lock of its stripe in concurrent mode. Unlike
+	 * AddRow(), the intensities of the channels are not applied, as the
+	 * values were drawn with them already.
+	 * 
+	 * @param c:   index of the channel
+	 * @param k:   index of the first value
+	 * @param row: values to be added, from index 0 on
+	 * @param n:   number of values
+	 */
+	private void AddChannelRow(int c, int k, float[] row, int n) {
+		for (int i = 0; i < n;) {
+			int block = (k + i) >>> BLOCK_SHIFT;
+			int end = Math.min(n, ((block + 1) << BLOCK_SHIFT) - k);
+			ReentrantLock lock = concurrent ? locks[block & (STRIPES - 1)] : null;
+
+			if (lock != null)
+				lock.lock();
+			try {
+				values.AddChannel(c, k + i, row, i, end - i);
+				i = end;
+				touched[block] = epoch;
+				ready = false;
+			} finally {
+				if (lock != null)
+					lock.unlock();
+			}
+		}
+	}
+
+	/** BACKGROUND DRAWING **/
+
+	/**
+	 * Runs the given job on a background thread, so that a long drawing can go
+	 * on while the sketch keeps drawing its frames. The canvas is switched to
+	 * concurrent mode first, and the job should draw with its own Pen.
+	 * 
+	 * While the job is running, use Preview() to show its progress rather than
+	 * Output(), which would hold the job up for a whole pass over the canvas.
+	 * 
+	 * @param job: drawing to be done in the background
+	 */
+	public void BeginBackground(final Runnable job) {
+		if (!IsBackgroundDone())
+			throw new IllegalStateException("A background job is already running");
+
+		SetConcurrent(true);
+
+		worker = new Thread(job, "Infinidecimal background");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Returns true if there is no background job running.
+	 * 
+	 * @return boolean
+	 */
+	public boolean IsBackgroundDone() {
+		return worker == null || !worker.isAlive();
+	}
+
+	/**
+	 * Waits until the background job is done.
+	 */
+	public void AwaitBackground() {
+		if (worker == null)
+			return;
+
+		try {
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Sets the time in milliseconds that Preview() keeps showing the same
+	 * copy of the values before it takes a new one. 100 by default.
+	 * 
+	 * @param millis: the new interval, 0 to copy the values every time
+	 */
+	public void SetPreviewInterval(int millis) {
+		previewInterval = Math.max(0, millis);
+	}
+
+	/**
+	 * Plots a preview of the output image into the given ARGB pixel array of
+	 * the canvas size, while other threads keep drawing.
+	 * 
+	 * The preview is drawn from a copy of the values that is brought up to
+	 * date at most once every preview interval. Only the blocks that changed
+	 * since the last copy are copied, each under the lock of its own stripe,
+	 * so drawing threads are only held up for the copying of a block, and
+	 * the normalization and colorizing are done on the copy without any
+	 * locks. The copy takes as much memory as a float canvas of the same size,
+	 * for every channel.
+	 * 
+	 * @param pixels: pixel array of the canvas size
+	 */
+	public void Preview(int[] pixels) {
+		long now = System.nanoTime();
+
+		if (preview == null || now - previewTime >= previewInterval * 1000000L) {
+			Sync();
+			UpdatePreview();
+			previewTime = now;
+		}
+
+		if (preview.normalize != normalize)
+			preview.SetNormalize(normalize);
+		if (preview.tone != tone)
+			preview.SetToneMap(tone);
+		if (preview.gamma != gamma)
+			preview.SetGamma(gamma);
+		if (preview.percentLow != percentLow || preview.percentHigh != percentHigh)
+			preview.SetPercentiles(percentLow, percentHigh);
+		if (preview.lut != Lut()) {
+			preview.lut = Lut();
+			preview.outputValid = false;
+		}
+
+		preview.Output(pixels);
+	}
+
+	/**
+	 * Private Function
+	 * Creates the canvas the preview is drawn from, an empty float canvas of
+	 * the same size and number of channels.
+	 * 
+	 * @return InfinidecimalCore
+	 */
+	InfinidecimalCore NewPreview() {
+		return new InfinidecimalCore(w, h);
+	}
+
+	/**
+	 * Private Function
+	 * Copies the blocks of the value array that changed since the last time
+	 * into the preview canvas, channel by channel.
+	 * 
+	 * Each block is checked and copied under the lock of its stripe, after
+	 * the epoch is moved forward. A write that gets the lock after the copy
+	 * sees the new epoch, so it is picked up by the next copy.
+	 */
+	private void UpdatePreview() {
+		boolean first = preview == null;
+		if (first) {
+			preview = NewPreview();
+			previewSeen = 0;
+		}
+
+		final boolean all = first;
+		final int since = previewSeen;
+		previewSeen = ++epoch;
+
+		final float[][] copy = new float[values.Channels()][];
+		for (int c = 0; c < copy.length; c++)
+			copy[c] = preview.values.Floats(c);
+		final int[] copied = preview.touched;
+		final int stamp = ++preview.epoch;
+
+		Parallel.For(Parallel.Chunks(len), new Parallel.Job() {
+			public void Run(int chunk) {
+				int end = Math.min(blocks, (chunk + 1) * BLOCKS_PER_CHUNK);
+				for (int b = chunk * BLOCKS_PER_CHUNK; b < end; b++) {
+					ReentrantLock lock = concurrent ? locks[b & (STRIPES - 1)] : null;
+
+					if (lock != null)
+						lock.lock();
+					try {
+						if (all || touched[b] >= since) {
+							for (int c = 0; c < copy.length; c++)
+								values.ReadChannel(c, b << BLOCK_SHIFT, Math.min(len, (b + 1) << BLOCK_SHIFT), copy[c], b << BLOCK_SHIFT);
+							copied[b] = stamp;
+						}
+					} finally {
+						if (lock != null)
+							lock.unlock();
+					}
+				}
+			}
+		});
+
+		preview.ready = false;
+	}
+
+	/** MATH **/
+
+	/**
+	 * Private Function
+	 * Returns the largest integer that is not above the value.
+	 * 
+	 * @param val: value to be rounded down
+	 * @return int
+	 */
+	private static int Floor(float val) {
+		return (int) Math.floor(val);
+	}
+
+	/**
+	 * Private Function
+	 * Returns the smallest integer that is not below the value.
+	 * 
+	 * @param val: value to be rounded up
+	 * @return int
+	 */
+	private static int Ceil(float val) {
+		return (int) Math.ceil(val);
+	}
+
+	/**
+	 * Private Function
+	 * Returns the square root of the value as a float.
+	 * 
+	 * @param val: value to take the square root of
+	 * @return float
+	 */
+	private static float Sqrt(float val) {
+		return (float) Math.sqrt(val);
+	}
+
+	/**
+	 * Private Function
+	 * Limits the value to the range from low to high.
+	 * 
+	 * @param val:  value to be limited
+	 * @param low:  lowest value
+	 * @param high: highest value
+	 * @return float
+	 */
+	private static float Constrain(float val, float low, float high) {
+		return val < low ? low : val > high ? high : val;
+	}
+
+	/** ADAPTER HOOKS **/
+
+	/**
+	 * Brings the value array up to date before it is read. Does nothing in the
+	 * core; Infinidecimal applies the open buffer canvas here.
+	 */
+	void Sync() {
+	}
+
+	/**
+	 * Forces the next output to be plotted in full, for when the pixel array
+	 * that was written last has been changed from the outside.
+	 */
+	void InvalidateOutput() {
+		outputValid = false;
+	}
+
+	/**
+	 * Adds the brightness of an ARGB image of the canvas size to the value
+	 * array, scaled by the intensity of the given pen.
+	 * 
+	 * @param pixels: pixel array of the canvas size
+	 * @param pen:    pen to add the image with
+	 */
+	void AddPixels(int[] pixels, Pen pen) {
+		StatsRecorder.Probe probe = Begin(Stats.Op.APPLY_BUFFER);
+		Lock();
+		try {
+			ready = false;
+
+			for (int i = 0; i < len; i++) {
+				int c = pixels[i];
+				values.Add(i, (pen.intensity * ((c >> 16 & 0xFF) + (c >> 8 & 0xFF) + (c & 0xFF)) / 765) * (pen.carve ? -1 : 1));
+			}
+			java.util.Arrays.fill(touched, epoch);
+		} finally {
+			Unlock();
+		}
+
+		if (probe != null)
+			probe.pixels += len;
+		End(probe);
+	}
+}
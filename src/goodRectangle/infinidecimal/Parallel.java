@@ -0,0 +1,83 @@
+package goodRectangle.infinidecimal;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel.java - chunked parallel loops for Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Runs a job once for every chunk of a range on the common fork-join pool,
+ * splitting the chunk range in half until a single chunk is left. Jobs that
+ * need to combine results write them into per-chunk slots, which the caller
+ * reduces after the loop returns.
+ */
+final class Parallel {
+	/** Number of array elements in a chunk, for loops over the value array. */
+	static final int CHUNK = 1 << 16;
+
+	/**
+	 * A job that is run once for every chunk.
+	 */
+	interface Job {
+		void Run(int chunk);
+	}
+
+	private Parallel() {
+	}
+
+	/**
+	 * Returns the number of chunks that cover the given number of elements.
+	 *
+	 * @param count: number of elements
+	 * @return int
+	 */
+	static int Chunks(int count) {
+		return (count + CHUNK - 1) / CHUNK;
+	}
+
+	/**
+	 * Runs the job for chunks 0 to (chunks - 1), in parallel when there are
+	 * cores to spare and sequentially otherwise.
+	 *
+	 * @param chunks: number of chunks
+	 * @param job:    job to run for each chunk
+	 */
+	static void For(int chunks, Job job) {
+		if (chunks < 2 || ForkJoinPool.getCommonPoolParallelism() < 2) {
+			for (int i = 0; i < chunks; i++)
+				job.Run(i);
+			return;
+		}
+
+		ForkJoinPool.commonPool().invoke(new Task(job, 0, chunks));
+	}
+
+	/**
+	 * Private Class
+	 * Splits a range of chunks in half until a single chunk is left.
+	 */
+	private static final class Task extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Job job;
+		private final int from, to;
+
+		Task(Job job, int from, int to) {
+			this.job = job;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Task(job, from, mid), new Task(job, mid, to));
+				return;
+			}
+
+			job.Run(from);
+		}
+	}
+}
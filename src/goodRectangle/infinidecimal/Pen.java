@@ -0,0 +1,98 @@
+package goodRectangle.infinidecimal;
+
+/**
+ * Pen.java - drawing style for Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * A pen bundles the stroke weight, intensity and carve mode that a shape is
+ * drawn with. Pens are immutable, so a single pen can be shared by any number
+ * of threads drawing on the same canvas in concurrent mode.
+ *
+ * SetWeight(), SetIntensity() and SetCarve() on the canvas replace its current
+ * pen, which is the one used by the drawing functions that do not take a pen.
+ */
+public final class Pen {
+	final float weight;
+	final float intensity;
+	final boolean carve;
+
+	/**
+	 * Creates a pen that adds to the value array.
+	 *
+	 * @param weight:    stroke weight
+	 * @param intensity: intensity of the strokes
+	 */
+	public Pen(float weight, float intensity) {
+		this(weight, intensity, false);
+	}
+
+	/**
+	 * Creates a pen.
+	 *
+	 * @param weight:    stroke weight
+	 * @param intensity: intensity of the strokes
+	 * @param carve:     subtracts from the value array if true
+	 */
+	public Pen(float weight, float intensity, boolean carve) {
+		this.weight = weight;
+		this.intensity = intensity;
+		this.carve = carve;
+	}
+
+	/**
+	 * Returns the stroke weight of the pen
+	 *
+	 * @return float
+	 */
+	public float Weight() {
+		return weight;
+	}
+
+	/**
+	 * Returns the intensity of the pen
+	 *
+	 * @return float
+	 */
+	public float Intensity() {
+		return intensity;
+	}
+
+	/**
+	 * Returns whether the pen carves out of the value array
+	 *
+	 * @return boolean
+	 */
+	public boolean Carve() {
+		return carve;
+	}
+
+	/**
+	 * Returns a copy of the pen with the given stroke weight
+	 *
+	 * @param val: new stroke weight value
+	 * @return Pen
+	 */
+	public Pen WithWeight(float val) {
+		return new Pen(val, intensity, carve);
+	}
+
+	/**
+	 * Returns a copy of the pen with the given intensity
+	 *
+	 * @param val: new intensity value
+	 * @return Pen
+	 */
+	public Pen WithIntensity(float val) {
+		return new Pen(weight, val, carve);
+	}
+
+	/**
+	 * Returns a copy of the pen with the given carve mode
+	 *
+	 * @param state: new state of the carve mode
+	 * @return Pen
+	 */
+	public Pen WithCarve(boolean state) {
+		return new Pen(weight, intensity, state);
+	}
+}
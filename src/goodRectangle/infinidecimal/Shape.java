@@ -0,0 +1,26 @@
+package goodRectangle.infinidecimal;
+
+/**
+ * Shape.java - shapes for the stamps of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * A shape draws itself with the drawing functions of a canvas, anchored at a
+ * given position. Shapes that are registered with DefineShape() are drawn
+ * once for every stroke weight and sub-pixel offset they are stamped with,
+ * and the result is kept and added wherever the shape is stamped, see
+ * Stamp().
+ */
+public interface Shape {
+	/**
+	 * Draws the shape on the canvas, anchored at (x, y), with the given pen.
+	 * The shape must draw the same thing every time it is called with the
+	 * same arguments, and leave the settings of the canvas as they are, as
+	 * the canvas is reused for the next shapes.
+	 *
+	 * @param canvas: canvas to draw on
+	 * @param x:      x anchor point of the shape
+	 * @param y:      y anchor point of the shape
+	 * @param pen:    pen to draw with
+	 */
+	void Draw(InfinidecimalCore canvas, float x, float y, Pen pen);
+}
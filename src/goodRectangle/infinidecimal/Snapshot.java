@@ -0,0 +1,326 @@
+package goodRectangle.infinidecimal;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Snapshot.java - binary snapshots of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Writes and reads the value array of a canvas as a versioned binary file.
+ * The file starts with a header that holds a magic number, the version of
+ * the format, the size of the canvas, the flags and the number of channels,
+ * followed by the values of every channel in turn, in chunks of
+ * Parallel.CHUNK. Files of version 1 have no channel count in the header
+ * and hold a single channel.
+ *
+ * Every chunk is a sequence of runs. A run is the number of zeros that come
+ * first, the number of values that follow them and the values themselves,
+ * all little-endian. Empty parts of the canvas take eight bytes per chunk.
+ * If the file is compressed, everything after the header is deflated with
+ * Huffman coding only, as the low bytes of floats hardly repeat and string
+ * matching costs several times the time for little gain.
+ *
+ * A snapshot is written to a temporary file next to the target and moved
+ * over it when complete, so a crash while saving leaves the last snapshot
+ * intact.
+ */
+final class Snapshot {
+	private static final int MAGIC = 0x49444353;
+	private static final int VERSION = 2;
+	private static final int HEADER = 24;
+	private static final int FLAG_DEFLATE = 1;
+
+	/** Shortest run of zeros that ends a run of values. */
+	private static final int MIN_ZEROS = 8;
+
+	/**
+	 * Reads a part of the values of a channel to be written, into dst from
+	 * index 0 on.
+	 */
+	interface Source {
+		void Read(int c, int from, int to, float[] dst);
+	}
+
+	/**
+	 * Receives a part of the values of a channel that are read. Write() gets
+	 * the values from index 0 of src on.
+	 */
+	interface Sink {
+		void Zero(int c, int from, int to);
+
+		void Write(int c, int from, int to, float[] src);
+	}
+
+	private Snapshot() {
+	}
+
+	/**
+	 * Writes a snapshot of a canvas of the given size to a file, reading the
+	 * values from the source one chunk of a channel at a time.
+	 *
+	 * @param file:     file to write to
+	 * @param w:        width of the canvas
+	 * @param h:        height of the canvas
+	 * @param channels: number of channels of the canvas
+	 * @param compress: deflates the values if true
+	 * @param src:      source of the values
+	 * @throws IOException
+	 */
+	static void Save(File file, int w, int h, int channels, boolean compress, Source src) throws IOException {
+		int len = ValueStore.Length(w, h);
+		Path target = file.getAbsoluteFile().toPath();
+		Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+		FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		Deflater deflater = null;
+		if (compress) {
+			deflater = new Deflater(Deflater.BEST_SPEED);
+			deflater.setStrategy(Deflater.HUFFMAN_ONLY);
+		}
+
+		boolean done = false;
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(w).putInt(h).putInt(compress ? FLAG_DEFLATE : 0).putInt(channels);
+			header.flip();
+			WriteFully(channel, header);
+
+			WritableByteChannel out = channel;
+			if (compress)
+				out = Channels.newChannel(new DeflaterOutputStream(Channels.newOutputStream(channel), deflater, 1 << 16));
+
+			float[] chunk = new float[Parallel.CHUNK];
+			ByteBuffer buf = ByteBuffer.allocateDirect(6 * Parallel.CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+
+			for (int c = 0; c < channels; c++) {
+				for (int from = 0; from < len; from += Parallel.CHUNK) {
+					int n = Math.min(len - from, Parallel.CHUNK);
+					src.Read(c, from, from + n, chunk);
+
+					buf.clear();
+					Encode(chunk, n, buf);
+					buf.flip();
+					WriteFully(out, buf);
+				}
+			}
+
+			out.close();
+			done = true;
+		} finally {
+			channel.close();
+			if (deflater != null)
+				deflater.end();
+			if (!done)
+				Files.deleteIfExists(temp);
+		}
+
+		try {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Reads a snapshot of a canvas of the given size and number of channels
+	 * from a file into the sink, one chunk of a channel at a time.
+	 *
+	 * The whole file is checked before the sink gets any values: its header,
+	 * the framing of every run and its length. A truncated or corrupt file
+	 * throws without touching the sink, so a failed load or merge leaves the
+	 * canvas as it was and can simply be tried again. This reads the file
+	 * twice, but takes no memory the size of the canvas.
+	 *
+	 * @param file:     file to read from
+	 * @param w:        width of the canvas
+	 * @param h:        height of the canvas
+	 * @param channels: number of channels of the canvas
+	 * @param dst:      sink of the values
+	 * @throws IOException
+	 */
+	static void Load(File file, int w, int h, int channels, Sink dst) throws IOException {
+		Decode(file, w, h, channels, null);
+		Decode(file, w, h, channels, dst);
+	}
+
+	/**
+	 * Private Function
+	 * Decodes a snapshot into the sink, or only checks it if the sink is
+	 * null, see Load().
+	 *
+	 * @param file:     file to read from
+	 * @param w:        width of the canvas
+	 * @param h:        height of the canvas
+	 * @param channels: number of channels of the canvas
+	 * @param dst:      sink of the values, or null
+	 * @throws IOException
+	 */
+	private static void Decode(File file, int w, int h, int channels, Sink dst) throws IOException {
+		int len = ValueStore.Length(w, h);
+
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		Inflater inflater = null;
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			header.limit(8);
+			ReadFully(channel, header);
+
+			if (header.getInt(0) != MAGIC)
+				throw new IOException("Not an Infinidecimal snapshot: " + file);
+
+			int version = header.getInt(4);
+			if (version != 1 && version != VERSION)
+				throw new IOException("Unsupported snapshot version " + version + ": " + file);
+
+			// version 1 headers end before the channel count
+			header.limit(version == 1 ? HEADER - 4 : HEADER);
+			ReadFully(channel, header);
+			header.position(8);
+
+			int sw = header.getInt(), sh = header.getInt();
+			if (sw != w || sh != h)
+				throw new IllegalArgumentException("Snapshot of a " + sw + "x" + sh + " canvas does not fit a " + w + "x" + h + " canvas: " + file);
+
+			int flags = header.getInt();
+			int sc = version == 1 ? 1 : header.getInt();
+			if (sc != channels)
+				throw new IllegalArgumentException("Snapshot of " + sc + " channels does not fit a canvas of " + channels + " channels: " + file);
+
+			ReadableByteChannel in = channel;
+			if ((flags & FLAG_DEFLATE) != 0) {
+				inflater = new Inflater();
+				in = Channels.newChannel(new InflaterInputStream(Channels.newInputStream(channel), inflater, 1 << 16));
+			}
+
+			float[] chunk = new float[Parallel.CHUNK];
+			ByteBuffer run = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			ByteBuffer buf = ByteBuffer.allocateDirect(4 * Parallel.CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+
+			for (int c = 0; c < channels; c++) {
+				for (int from = 0; from < len; from += Parallel.CHUNK) {
+					int n = Math.min(len - from, Parallel.CHUNK);
+
+					for (int i = 0; i < n;) {
+						run.clear();
+						ReadFully(in, run);
+						run.flip();
+
+						int zeros = run.getInt(), count = run.getInt();
+						if (zeros < 0 || count < 0 || zeros + count == 0 || zeros > n - i || count > n - i - zeros)
+							throw new IOException("Corrupt snapshot: " + file);
+
+						if (zeros > 0 && dst != null)
+							dst.Zero(c, from + i, from + i + zeros);
+						i += zeros;
+
+						if (count > 0) {
+							buf.clear();
+							buf.limit(4 * count);
+							ReadFully(in, buf);
+
+							if (dst != null) {
+								buf.flip();
+								buf.asFloatBuffer().get(chunk, 0, count);
+								dst.Write(c, from + i, from + i + count, chunk);
+							}
+						}
+						i += count;
+					}
+				}
+			}
+
+			// anything after the last run means the file is not what it says
+			run.clear();
+			if (in.read(run) > 0)
+				throw new IOException("Corrupt snapshot: " + file);
+
+			in.close();
+		} finally {
+			channel.close();
+			if (inflater != null)
+				inflater.end();
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Encodes a chunk of values as runs of zeros and values.
+	 *
+	 * @param chunk: values of the chunk
+	 * @param n:     number of values in the chunk
+	 * @param buf:   buffer to encode into
+	 */
+	private static void Encode(float[] chunk, int n, ByteBuffer buf) {
+		int i = 0;
+		while (i < n) {
+			int start = i;
+			while (i < n && chunk[i] == 0)
+				i++;
+			int zeros = i - start;
+
+			int first = i, end = i;
+			while (end < n) {
+				if (chunk[end] != 0) {
+					end++;
+					continue;
+				}
+
+				int z = end;
+				while (z < n && z - end < MIN_ZEROS && chunk[z] == 0)
+					z++;
+				if (z - end >= MIN_ZEROS || z == n)
+					break;
+				end = z;
+			}
+
+			buf.putInt(zeros).putInt(end - first);
+			for (int k = first; k < end; k++)
+				buf.putFloat(chunk[k]);
+			i = end;
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Writes the remaining bytes of the buffer to the channel.
+	 *
+	 * @param out: channel to write to
+	 * @param buf: bytes to be written
+	 * @throws IOException
+	 */
+	private static void WriteFully(WritableByteChannel out, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining())
+			out.write(buf);
+	}
+
+	/**
+	 * Private Function
+	 * Fills the remaining space of the buffer from the channel.
+	 *
+	 * @param in:  channel to read from
+	 * @param buf: buffer to be filled
+	 * @throws IOException
+	 */
+	private static void ReadFully(ReadableByteChannel in, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining())
+			if (in.read(buf) < 0)
+				throw new EOFException("Snapshot ends early");
+	}
+}
@@ -0,0 +1,252 @@
+package goodRectangle.infinidecimal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * StampCache.java - cache of drawn shapes for Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Keeps the shapes registered on a canvas, and the values they leave when
+ * drawn on an empty canvas, for every stroke weight and sub-pixel offset
+ * they are used with. A cached stamp holds the values the shape left, drawn
+ * with an intensity of 1, as the runs of values in each row, so the empty
+ * inside of an outline costs nothing to stamp.
+ *
+ * Shapes are drawn on a scratch canvas of the drawing thread, which is kept
+ * for as long as the stamps it draws have the same size and is cleared after
+ * every use, so a stamp costs no more than the values it holds.
+ *
+ * Stamps are evicted least recently used first, once the values they hold
+ * add up to more than the size of the cache. The cache is thread safe, so
+ * stamps can be used from any number of threads in concurrent mode.
+ */
+final class StampCache {
+	/** Number of sub-pixel offsets per pixel a stamp is drawn at. */
+	static final int SUBPIXEL = 4;
+
+	/** Shortest run of zeros that splits a row into two runs. */
+	private static final int MIN_GAP = 8;
+
+	/**
+	 * Values a shape left when drawn. Run i starts at (runs[3 * i],
+	 * runs[3 * i + 1]) relative to the pixel the shape is anchored in, and
+	 * holds runs[3 * i + 2] values, which follow the values of the previous
+	 * runs in data.
+	 */
+	static final class Stamp {
+		final int[] runs;
+		final float[] data;
+
+		Stamp(int[] runs, float[] data) {
+			this.runs = runs;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Private Class
+	 * Identifies a stamp by its shape and everything it was drawn with.
+	 */
+	private static final class Key {
+		private final int shape;
+		private final float weight;
+		private final int sub;
+		private final boolean centered;
+
+		Key(int shape, float weight, int sub, boolean centered) {
+			this.shape = shape;
+			this.weight = weight;
+			this.sub = sub;
+			this.centered = centered;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+
+			Key k = (Key) o;
+			return shape == k.shape && Float.floatToIntBits(weight) == Float.floatToIntBits(k.weight) && sub == k.sub && centered == k.centered;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((shape * 31 + Float.floatToIntBits(weight)) * 31 + sub) * 2 + (centered ? 1 : 0);
+		}
+	}
+
+	private final ArrayList<Shape> shapes = new ArrayList<Shape>();
+	private final ArrayList<Float> extents = new ArrayList<Float>();
+	private final LinkedHashMap<Key, Stamp> stamps = new LinkedHashMap<Key, Stamp>(16, 0.75f, true);
+	private long size;
+	private long capacity = 1 << 22;
+	private final ThreadLocal<InfinidecimalCore> canvases = new ThreadLocal<InfinidecimalCore>();
+
+	/**
+	 * Registers a shape and returns its id.
+	 *
+	 * @param shape:  shape to register
+	 * @param extent: distance from the anchor the shape stays within
+	 * @return int
+	 */
+	synchronized int Define(Shape shape, float extent) {
+		shapes.add(shape);
+		extents.add(extent);
+		return shapes.size() - 1;
+	}
+
+	/**
+	 * Returns whether a shape is registered with the given id.
+	 *
+	 * @param shape: id of the shape
+	 * @return boolean
+	 */
+	synchronized boolean Has(int shape) {
+		return shape >= 0 && shape < shapes.size();
+	}
+
+	/**
+	 * Sets the number of values the cached stamps may hold, evicting the
+	 * least recently used ones if they hold more.
+	 *
+	 * @param values: number of values
+	 */
+	synchronized void SetCapacity(long values) {
+		capacity = values;
+		Evict();
+	}
+
+	/**
+	 * Returns the stamp of a shape, drawing it if it is not cached.
+	 *
+	 * @param shape:    id of the shape
+	 * @param weight:   stroke weight
+	 * @param sx:       sub-pixel x offset, from 0 to SUBPIXEL - 1
+	 * @param sy:       sub-pixel y offset, from 0 to SUBPIXEL - 1
+	 * @param centered: whether the canvas centers shapes at their anchors
+	 * @return Stamp
+	 */
+	Stamp Get(int shape, float weight, int sx, int sy, boolean centered) {
+		Key key = new Key(shape, weight, sy * SUBPIXEL + sx, centered);
+		Shape s;
+		float extent;
+
+		synchronized (this) {
+			Stamp stamp = stamps.get(key);
+			if (stamp != null)
+				return stamp;
+
+			s = shapes.get(shape);
+			extent = extents.get(shape);
+		}
+
+		Stamp stamp = Draw(s, extent, weight, sx, sy, centered);
+
+		synchronized (this) {
+			Stamp old = stamps.put(key, stamp);
+			if (old != null)
+				size -= old.data.length;
+			size += stamp.data.length;
+			Evict();
+		}
+
+		return stamp;
+	}
+
+	/**
+	 * Private Function
+	 * Evicts the least recently used stamps until the rest fit the cache.
+	 */
+	private void Evict() {
+		Iterator<Map.Entry<Key, Stamp>> it = stamps.entrySet().iterator();
+		while (size > capacity && it.hasNext()) {
+			size -= it.next().getValue().data.length;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Draws a shape on the empty scratch canvas of the thread, which is made
+	 * large enough to hold it, and collects the runs of values it left.
+	 *
+	 * @param shape:    shape to draw
+	 * @param extent:   distance from the anchor the shape stays within
+	 * @param weight:   stroke weight
+	 * @param sx:       sub-pixel x offset
+	 * @param sy:       sub-pixel y offset
+	 * @param centered: whether shapes are centered at their anchors
+	 * @return Stamp
+	 */
+	private Stamp Draw(Shape shape, float extent, float weight, int sx, int sy, boolean centered) {
+		int c = (int) Math.ceil(extent + weight) + 2;
+		int n = 2 * c + 1;
+
+		InfinidecimalCore canvas = canvases.get();
+		if (canvas == null || canvas.Width() != n) {
+			canvas = new InfinidecimalCore(n, n);
+			canvases.set(canvas);
+		}
+
+		try {
+			canvas.SetCentered(centered);
+			shape.Draw(canvas, c + (float) sx / SUBPIXEL, c + (float) sy / SUBPIXEL, new Pen(weight, 1, false));
+			return Collect(canvas.GetValuesRaw(), n, c);
+		} finally {
+			canvas.Clear();
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Collects the runs of values of an n x n canvas, relative to the pixel
+	 * (c, c).
+	 *
+	 * @param vals: values of the canvas
+	 * @param n:    size of the canvas
+	 * @param c:    position of the anchor pixel
+	 * @return Stamp
+	 */
+	private static Stamp Collect(float[] vals, int n, int c) {
+		int[] runs = new int[48];
+		float[] data = new float[64];
+		int count = 0, size = 0;
+
+		for (int y = 0; y < n; y++) {
+			for (int x = 0; x < n;) {
+				if (vals[y * n + x] == 0) {
+					x++;
+					continue;
+				}
+
+				int end = x + 1, gap = 0;
+				for (int k = end; k < n && gap < MIN_GAP; k++) {
+					if (vals[y * n + k] == 0) {
+						gap++;
+					} else {
+						end = k + 1;
+						gap = 0;
+					}
+				}
+
+				if (count + 3 > runs.length)
+					runs = Arrays.copyOf(runs, runs.length * 2);
+				if (size + end - x > data.length)
+					data = Arrays.copyOf(data, Math.max(data.length * 2, size + end - x));
+
+				runs[count++] = x - c;
+				runs[count++] = y - c;
+				runs[count++] = end - x;
+				System.arraycopy(vals, y * n + x, data, size, end - x);
+				size += end - x;
+				x = end;
+			}
+		}
+
+		return new Stamp(Arrays.copyOf(runs, count), Arrays.copyOf(data, size));
+	}
+}
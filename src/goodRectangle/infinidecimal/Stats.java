@@ -0,0 +1,97 @@
+package goodRectangle.infinidecimal;
+
+/**
+ * Stats.java - drawing statistics of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * A snapshot of the counters recorded by a canvas while statistics are on,
+ * taken with GetStats(). For every operation it holds the number of calls,
+ * the number of pixels written, the peak size of the stroke buffer and the
+ * total time spent, so it is possible to tell where the time of a frame goes.
+ *
+ * Operations that call each other are counted once, by the outermost call.
+ * Circle() is counted as ELLIPSE, Polygon() as POLYLINE and
+ * QuadraticBezier() as QUADRATIC_BEZIER along with QuadraticRationalBezier().
+ */
+public final class Stats {
+	/**
+	 * The operations that are recorded.
+	 */
+	public enum Op {
+		DOT, DOTS, LINE, LINES, POLYLINE, QUADRATIC_BEZIER, CUBIC_BEZIER, RECTANGLE, ELLIPSE, IMAGE, FILL, STAMP, CLEAR, MERGE, VALUES, OUTPUT, APPLY_BUFFER
+	}
+
+	private final long[] calls;
+	private final long[] pixels;
+	private final long[] peak;
+	private final long[] nanos;
+
+	Stats(long[] calls, long[] pixels, long[] peak, long[] nanos) {
+		this.calls = calls;
+		this.pixels = pixels;
+		this.peak = peak;
+		this.nanos = nanos;
+	}
+
+	/**
+	 * Returns the number of times the operation was called
+	 *
+	 * @param op: operation
+	 * @return long
+	 */
+	public long Calls(Op op) {
+		return calls[op.ordinal()];
+	}
+
+	/**
+	 * Returns the number of pixels the operation wrote to, counting a pixel
+	 * once for every time it is written
+	 *
+	 * @param op: operation
+	 * @return long
+	 */
+	public long Pixels(Op op) {
+		return pixels[op.ordinal()];
+	}
+
+	/**
+	 * Returns the largest number of points a single call of the operation
+	 * recorded in its stroke buffer, or zero if it draws directly on the value
+	 * array
+	 *
+	 * @param op: operation
+	 * @return long
+	 */
+	public long PeakStroke(Op op) {
+		return peak[op.ordinal()];
+	}
+
+	/**
+	 * Returns the total time spent in the operation, in nanoseconds
+	 *
+	 * @param op: operation
+	 * @return long
+	 */
+	public long Nanos(Op op) {
+		return nanos[op.ordinal()];
+	}
+
+	/**
+	 * Returns a table of the operations that were called at least once.
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-16s %10s %14s %10s %12s%n", "op", "calls", "pixels", "peak", "ms"));
+
+		for (Op op : Op.values()) {
+			int i = op.ordinal();
+			if (calls[i] > 0)
+				sb.append(String.format("%-16s %10d %14d %10d %12.3f%n", op, calls[i], pixels[i], peak[i], nanos[i] / 1e6));
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,209 @@
+package goodRectangle.infinidecimal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StatsRecorder.java - statistics counters of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Collects the counters behind Stats. A canvas only has a recorder while
+ * statistics are on, and checks for it before recording anything, so turning
+ * statistics off leaves a single null check on the drawing paths.
+ *
+ * Every thread records into a probe of its own while it is inside an
+ * operation, and the probe is added to the shared counters when the
+ * outermost operation ends. Nested operations only increase the depth of
+ * the probe, so they are counted as a part of the call that started them.
+ */
+final class StatsRecorder {
+	private static final int OPS = Stats.Op.values().length;
+
+	private final LongAdder[] calls = new LongAdder[OPS];
+	private final LongAdder[] pixels = new LongAdder[OPS];
+	private final LongAdder[] nanos = new LongAdder[OPS];
+	private final AtomicLongArray peak = new AtomicLongArray(OPS);
+
+	private final ThreadLocal<Probe> probes = new ThreadLocal<Probe>() {
+		@Override
+		protected Probe initialValue() {
+			return new Probe(StatsRecorder.this);
+		}
+	};
+
+	/**
+	 * The counters of the operation a thread is currently in.
+	 */
+	static final class Probe {
+		final StatsRecorder recorder;
+		int depth;
+		Stats.Op op;
+		long start;
+		long pixels;
+		int peak;
+
+		Probe(StatsRecorder recorder) {
+			this.recorder = recorder;
+		}
+
+		/**
+		 * Ends the operation this probe was returned for by Begin().
+		 */
+		void End() {
+			recorder.End(this);
+		}
+	}
+
+	StatsRecorder() {
+		for (int i = 0; i < OPS; i++) {
+			calls[i] = new LongAdder();
+			pixels[i] = new LongAdder();
+			nanos[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Returns the probe of the calling thread
+	 *
+	 * @return Probe
+	 */
+	Probe Probe() {
+		return probes.get();
+	}
+
+	/**
+	 * Starts recording an operation on the calling thread, unless the thread
+	 * is already inside another one.
+	 *
+	 * @param op: operation
+	 * @return the probe of the calling thread, to be passed to End()
+	 */
+	Probe Begin(Stats.Op op) {
+		Probe p = probes.get();
+
+		if (p.depth++ == 0) {
+			p.op = op;
+			p.pixels = 0;
+			p.peak = 0;
+			p.start = System.nanoTime();
+		}
+
+		return p;
+	}
+
+	/**
+	 * Ends an operation started with Begin(), and adds it to the counters if
+	 * it is the outermost one.
+	 *
+	 * @param p: probe returned by Begin()
+	 */
+	void End(Probe p) {
+		if (--p.depth > 0)
+			return;
+
+		int i = p.op.ordinal();
+		nanos[i].add(System.nanoTime() - p.start);
+		calls[i].increment();
+		pixels[i].add(p.pixels);
+
+		long seen;
+		while ((seen = peak.get(i)) < p.peak && !peak.compareAndSet(i, seen, p.peak))
+			;
+	}
+
+	/**
+	 * Records pixels written directly to the value array by the calling thread.
+	 *
+	 * @param count: number of pixels
+	 */
+	void Plot(int count) {
+		probes.get().pixels += count;
+	}
+
+	/**
+	 * Records a stroke buffer applied to the value array by the calling thread.
+	 *
+	 * @param size: number of points in the buffer
+	 */
+	void Stroke(int size) {
+		Probe p = probes.get();
+		p.pixels += size;
+		if (p.peak < size)
+			p.peak = size;
+	}
+
+	/**
+	 * Collects the pixels and the stroke buffer peak of work that is done on
+	 * other threads for an operation, such as the tiles of Lines(). Every
+	 * part of the work records on the thread it runs on, and then moves what
+	 * it recorded into the tally, which is added to the probe of the operation
+	 * once all parts are done.
+	 */
+	static final class Tally {
+		private final StatsRecorder recorder;
+		private long pixels;
+		private int peak;
+
+		Tally(StatsRecorder recorder) {
+			this.recorder = recorder;
+		}
+
+		/**
+		 * Returns the probe of the calling thread, to be passed to Take()
+		 * along with its pixels and peak when a part of the work starts.
+		 *
+		 * @return Probe
+		 */
+		Probe Mark() {
+			return recorder.Probe();
+		}
+
+		/**
+		 * Ends a part of the work, and moves what the thread recorded since
+		 * the last time into the tally.
+		 *
+		 * @param p:      probe returned by Mark()
+		 * @param pixels: pixels of the probe when the part started
+		 * @param peak:   peak of the probe when the part started
+		 */
+		void Take(Probe p, long pixels, int peak) {
+			synchronized (this) {
+				this.pixels += p.pixels - pixels;
+				if (this.peak < p.peak)
+					this.peak = p.peak;
+			}
+
+			p.pixels = pixels;
+			p.peak = peak;
+		}
+
+		/**
+		 * Adds the tally to the probe of the operation.
+		 *
+		 * @param p: probe returned by Begin()
+		 */
+		synchronized void AddTo(Probe p) {
+			p.pixels += pixels;
+			if (p.peak < peak)
+				p.peak = peak;
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the counters
+	 *
+	 * @return Stats
+	 */
+	Stats Snapshot() {
+		long[] c = new long[OPS], px = new long[OPS], pk = new long[OPS], ns = new long[OPS];
+
+		for (int i = 0; i < OPS; i++) {
+			c[i] = calls[i].sum();
+			px[i] = pixels[i].sum();
+			pk[i] = peak.get(i);
+			ns[i] = nanos[i].sum();
+		}
+
+		return new Stats(c, px, pk, ns);
+	}
+}
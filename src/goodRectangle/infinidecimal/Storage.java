@@ -0,0 +1,45 @@
+package goodRectangle.infinidecimal;
+
+/**
+ * Storage.java - value array backends for Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Selects how the value array of a canvas is kept in memory. The backend is
+ * chosen when the canvas is created and can not be changed afterwards.
+ */
+public enum Storage {
+	/**
+	 * 32-bit floats, 4 bytes per pixel. The default backend.
+	 */
+	FLOAT,
+
+	/**
+	 * 64-bit doubles, 8 bytes per pixel. Keeps faint strokes from being lost
+	 * when they are added to very high values, for deep accumulations.
+	 */
+	DOUBLE,
+
+	/**
+	 * 32-bit fixed-point integers with 16 fractional bits, 4 bytes per pixel.
+	 * Each contribution is rounded to 1/65536 before it is added, so sums are
+	 * exact and do not depend on the order of the strokes, which makes
+	 * concurrent drawing reproducible. Values saturate just under 32768,
+	 * after which sums are no longer exact; IsSaturated() on the canvas tells
+	 * if that happened. Use DOUBLE for deeper accumulations.
+	 */
+	FIXED,
+
+	/**
+	 * 32-bit floats in a memory-mapped file, off the heap. Used by the
+	 * constructor that takes a file, for canvases larger than the heap, or
+	 * for accumulations that continue where they left off after a restart.
+	 */
+	MAPPED,
+
+	/**
+	 * 32-bit floats in one array per channel, 4 bytes per pixel and channel.
+	 * Used by InfinidecimalChannels, and can not be chosen for a canvas of a
+	 * single channel.
+	 */
+	CHANNELS
+}
@@ -0,0 +1,220 @@
+package goodRectangle.infinidecimal;
+
+/**
+ * StrokeBuffer.java - per-stroke point buffer for Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * A primitive int to float map with open addressing, used in place of a
+ * HashMap<Integer, Float> to keep a unique list of points to be drawn for
+ * a single stroke. Points are kept in insertion order in dense arrays, and
+ * the hash table only stores their positions, so clearing the buffer costs
+ * as much as the number of points in it, not the capacity of the table.
+ *
+ * The buffer grows as needed and is never shrunk, which means a reused
+ * buffer stops allocating once it is large enough for the biggest shape.
+ *
+ * Buffers are not thread safe. Each buffer owns a sub-buffer for the strokes
+ * that are merged into it, so a thread only needs a buffer of its own.
+ */
+final class StrokeBuffer {
+	private static final int EMPTY = -1;
+
+	private int[] table;
+	private int mask;
+
+	private int[] keys;
+	private float[] vals;
+	private int[] slots;
+	private int size;
+
+	private StrokeBuffer sub;
+
+	StrokeBuffer() {
+		this(256);
+	}
+
+	/**
+	 * Creates a buffer that can hold the given number of points without growing.
+	 *
+	 * @param capacity: expected number of points
+	 */
+	StrokeBuffer(int capacity) {
+		int tableSize = 16;
+		while (tableSize < capacity * 2)
+			tableSize <<= 1;
+
+		table = new int[tableSize];
+		java.util.Arrays.fill(table, EMPTY);
+		mask = tableSize - 1;
+
+		keys = new int[tableSize / 2];
+		vals = new float[tableSize / 2];
+		slots = new int[tableSize / 2];
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of points in the buffer
+	 *
+	 * @return int
+	 */
+	int Size() {
+		return size;
+	}
+
+	/**
+	 * Returns the pixel index of the i-th point, in insertion order.
+	 *
+	 * @param i: position of the point
+	 * @return int
+	 */
+	int Key(int i) {
+		return keys[i];
+	}
+
+	/**
+	 * Returns the value of the i-th point, in insertion order.
+	 *
+	 * @param i: position of the point
+	 * @return float
+	 */
+	float Value(int i) {
+		return vals[i];
+	}
+
+	/**
+	 * Returns the sub-buffer owned by this buffer, used to record a single
+	 * stroke before merging it into this one.
+	 *
+	 * @return StrokeBuffer
+	 */
+	StrokeBuffer Sub() {
+		if (sub == null)
+			sub = new StrokeBuffer();
+		return sub;
+	}
+
+	/**
+	 * Empties the buffer, keeping the allocated capacity.
+	 */
+	void Clear() {
+		for (int i = 0; i < size; i++)
+			table[slots[i]] = EMPTY;
+		size = 0;
+	}
+
+	/**
+	 * Records the point if it is not in the buffer, or if the new value is
+	 * greater than the recorded one.
+	 *
+	 * @param key: pixel index of the point
+	 * @param val: value of the point
+	 */
+	void Max(int key, float val) {
+		int slot = Find(key);
+		int i = table[slot];
+
+		if (i == EMPTY)
+			Insert(slot, key, val);
+		else if (vals[i] < val)
+			vals[i] = val;
+	}
+
+	/**
+	 * Adds the value to the recorded point, or records it if it is not in the
+	 * buffer.
+	 *
+	 * @param key: pixel index of the point
+	 * @param val: value to be added
+	 */
+	void Add(int key, float val) {
+		int slot = Find(key);
+		int i = table[slot];
+
+		if (i == EMPTY)
+			Insert(slot, key, val);
+		else
+			vals[i] += val;
+	}
+
+	/**
+	 * Merges the points of this buffer into the target, keeping the greater
+	 * value for the points recorded in both.
+	 *
+	 * @param target: buffer to merge into
+	 */
+	void MergeInto(StrokeBuffer target) {
+		for (int i = 0; i < size; i++)
+			target.Max(keys[i], vals[i]);
+	}
+
+	/**
+	 * Private Function
+	 * Returns the table slot that either holds the key or is the empty slot
+	 * where it would be inserted.
+	 *
+	 * @param key: pixel index of the point
+	 * @return int
+	 */
+	private int Find(int key) {
+		int slot = Mix(key) & mask;
+		int i;
+
+		while ((i = table[slot]) != EMPTY && keys[i] != key)
+			slot = (slot + 1) & mask;
+
+		return slot;
+	}
+
+	/**
+	 * Private Function
+	 * Inserts a new point at the given empty slot, growing the buffer first if
+	 * it is at half load.
+	 */
+	private void Insert(int slot, int key, float val) {
+		if (size == keys.length) {
+			Grow();
+			slot = Find(key);
+		}
+
+		table[slot] = size;
+		keys[size] = key;
+		vals[size] = val;
+		slots[size] = slot;
+		size++;
+	}
+
+	/**
+	 * Private Function
+	 * Doubles the capacity and rehashes the recorded points.
+	 */
+	private void Grow() {
+		int tableSize = table.length * 2;
+		table = new int[tableSize];
+		java.util.Arrays.fill(table, EMPTY);
+		mask = tableSize - 1;
+
+		keys = java.util.Arrays.copyOf(keys, tableSize / 2);
+		vals = java.util.Arrays.copyOf(vals, tableSize / 2);
+		slots = java.util.Arrays.copyOf(slots, tableSize / 2);
+
+		for (int i = 0; i < size; i++) {
+			int slot = Mix(keys[i]) & mask;
+			while (table[slot] != EMPTY)
+				slot = (slot + 1) & mask;
+
+			table[slot] = i;
+			slots[i] = slot;
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Scrambles the pixel index so that neighbouring pixels do not end up in
+	 * neighbouring slots.
+	 */
+	private static int Mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
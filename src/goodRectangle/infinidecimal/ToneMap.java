@@ -0,0 +1,43 @@
+package goodRectangle.infinidecimal;
+
+/**
+ * ToneMap.java - tone mapping modes for Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Selects how the recorded values are mapped to 0 - 1 range before they are
+ * colored. The modes that look at the distribution of the values use a
+ * histogram of the drawn pixels, which is kept up to date with the blocks of
+ * the value array that change, so switching modes costs at most one pass.
+ */
+public enum ToneMap {
+	/**
+	 * Maps the values linearly, from the lowest to the highest value if the
+	 * canvas is normalized, or from 0 to 255 otherwise. The default mode.
+	 */
+	LINEAR,
+
+	/**
+	 * Maps the logarithm of the values, so faint strokes stay visible next to
+	 * values many times higher. Uses the same range as LINEAR.
+	 */
+	LOG,
+
+	/**
+	 * Maps the values linearly and raises the result to the power of 1 /
+	 * gamma, see SetGamma().
+	 */
+	GAMMA,
+
+	/**
+	 * Maps the values linearly between two percentiles of the drawn pixels,
+	 * clipping the rest, so a few hot pixels do not darken everything else.
+	 * See SetPercentiles().
+	 */
+	PERCENTILE,
+
+	/**
+	 * Maps every value to the share of the drawn pixels that are lower than
+	 * it, spreading the values evenly over the colors.
+	 */
+	EQUALIZE
+}
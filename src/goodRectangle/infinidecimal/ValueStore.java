@@ -0,0 +1,890 @@
+package goodRectangle.infinidecimal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * ValueStore.java - value array of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Holds the accumulated value of every pixel behind a common interface, so
+ * the canvas does not depend on how the values are stored. Every backend
+ * reads and writes values as floats, and clips them at zero when they are
+ * added to.
+ *
+ * Stores are not thread safe. The canvas guards them with its own locks.
+ */
+abstract class ValueStore {
+	protected final int len;
+
+	ValueStore(int len) {
+		this.len = len;
+	}
+
+	/**
+	 * Creates a zero-filled store of the given backend.
+	 *
+	 * @param type: storage backend
+	 * @param len:  number of values
+	 * @return ValueStore
+	 */
+	static ValueStore Create(Storage type, int len) {
+		switch (type) {
+		case DOUBLE:
+			return new DoubleStore(len);
+		case FIXED:
+			return new FixedStore(len);
+		case MAPPED:
+			throw new IllegalArgumentException("Mapped storage needs a file");
+		case CHANNELS:
+			throw new IllegalArgumentException("Channel storage needs InfinidecimalChannels");
+		default:
+			return new FloatStore(len);
+		}
+	}
+
+	/**
+	 * Returns the number of pixels of a canvas with the given size, or throws
+	 * an IllegalArgumentException if it does not fit in an int.
+	 *
+	 * @param w: width of the canvas
+	 * @param h: height of the canvas
+	 * @return int
+	 */
+	static int Length(int w, int h) {
+		long len = (long) w * h;
+		if (w < 0 || h < 0 || len > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Canvas size " + w + "x" + h + " exceeds " + Integer.MAX_VALUE + " pixels");
+		return (int) len;
+	}
+
+	/**
+	 * Creates a store that is mapped to the given file. A new file is created
+	 * and filled with zeros if it does not exist, otherwise the values in the
+	 * file are used as they are.
+	 *
+	 * @param file: file to map the values to
+	 * @param w:    width of the canvas
+	 * @param h:    height of the canvas
+	 * @return ValueStore
+	 */
+	static ValueStore Map(File file, int w, int h) {
+		try {
+			return new MappedStore(file, w, h);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns the number of values in the store
+	 *
+	 * @return int
+	 */
+	int Length() {
+		return len;
+	}
+
+	/**
+	 * Returns the value at the given index
+	 *
+	 * @param i: index of the value
+	 * @return float
+	 */
+	abstract float Get(int i);
+
+	/**
+	 * Replaces the value at the given index
+	 *
+	 * @param i:   index of the value
+	 * @param val: new value
+	 */
+	abstract void Set(int i, float val);
+
+	/**
+	 * Adds to the value at the given index, clipping the result at zero.
+	 *
+	 * @param i:   index of the value
+	 * @param val: value to be added, negative to subtract
+	 */
+	abstract void Add(int i, float val);
+
+	/**
+	 * Adds to the 2x2 block of values whose top left corner is at the given
+	 * index, clipping the results at zero. Same as four calls of Add(), in a
+	 * single call for the backends that can do better.
+	 *
+	 * @param i:      index of the top left value
+	 * @param stride: number of values in a row
+	 * @param v00:    value added to the top left
+	 * @param v01:    value added to the top right
+	 * @param v10:    value added to the bottom left
+	 * @param v11:    value added to the bottom right
+	 */
+	void AddQuad(int i, int stride, float v00, float v01, float v10, float v11) {
+		Add(i, v00);
+		Add(i + 1, v01);
+		Add(i + stride, v10);
+		Add(i + stride + 1, v11);
+	}
+
+	/**
+	 * Adds a run of values, each multiplied by scale, starting at the given
+	 * index and clipping the results at zero. Values that are not numbers are
+	 * skipped.
+	 *
+	 * @param i:     index of the first value
+	 * @param src:   values to be added
+	 * @param off:   index of the first value in src
+	 * @param n:     number of values
+	 * @param scale: factor of the values, negative to subtract them
+	 * @return the number of values added
+	 */
+	int AddRun(int i, float[] src, int off, int n, float scale) {
+		int added = 0;
+		for (int k = 0; k < n; k++) {
+			float val = src[off + k];
+			if (val != val)
+				continue;
+
+			Add(i + k, scale * val);
+			added++;
+		}
+		return added;
+	}
+
+	/**
+	 * Sets the values from index from (inclusive) to index to (exclusive) to
+	 * zero.
+	 *
+	 * @param from: first index
+	 * @param to:   last index, exclusive
+	 */
+	abstract void Zero(int from, int to);
+
+	/**
+	 * Copies the values from index from (inclusive) to index to (exclusive)
+	 * into the given array, starting at index off.
+	 *
+	 * @param from: first index
+	 * @param to:   last index, exclusive
+	 * @param dst:  array to copy the values into
+	 * @param off:  index of dst to copy the first value to
+	 */
+	void Read(int from, int to, float[] dst, int off) {
+		for (int i = from; i < to; i++)
+			dst[off++] = Get(i);
+	}
+
+	/**
+	 * Replaces the values from index from (inclusive) to index to (exclusive)
+	 * with the values of the given array, starting at index off.
+	 *
+	 * @param from: first index
+	 * @param to:   last index, exclusive
+	 * @param src:  array to copy the values from
+	 * @param off:  index of src to copy the first value from
+	 */
+	void Write(int from, int to, float[] src, int off) {
+		for (int i = from; i < to; i++)
+			Set(i, src[off++]);
+	}
+
+	/**
+	 * Returns the lowest of the values from index from (inclusive) to index to
+	 * (exclusive), or Float.MAX_VALUE if there are none.
+	 *
+	 * @param from: first index
+	 * @param to:   last index, exclusive
+	 * @return float
+	 */
+	float Min(int from, int to) {
+		float min = Float.MAX_VALUE;
+		for (int i = from; i < to; i++) {
+			float val = Get(i);
+			if (min > val)
+				min = val;
+		}
+		return min;
+	}
+
+	/**
+	 * Returns the highest of the values from index from (inclusive) to index
+	 * to (exclusive), or 0 if there are none. Values are never below zero, so
+	 * an empty block reports 0 as well.
+	 *
+	 * @param from: first index
+	 * @param to:   last index, exclusive
+	 * @return float
+	 */
+	float Max(int from, int to) {
+		float max = 0;
+		for (int i = from; i < to; i++) {
+			float val = Get(i);
+			if (max < val)
+				max = val;
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the values as a float array. The float backend returns its live
+	 * array, the others return a copy.
+	 *
+	 * @return float[]
+	 */
+	abstract float[] Floats();
+
+	/**
+	 * Returns whether a value ever reached the ceiling of the backend and was
+	 * clamped there. Only the fixed-point backend has a ceiling.
+	 *
+	 * @return boolean
+	 */
+	boolean Saturated() {
+		return false;
+	}
+
+	/**
+	 * Writes the values to the underlying file, for the backends that have one.
+	 */
+	void Flush() {
+	}
+
+	/**
+	 * Writes the values to the underlying file and releases it, for the
+	 * backends that have one. The store can not be used after that.
+	 */
+	void Close() {
+	}
+
+	/**
+	 * Returns the number of channels the values are kept in. Every backend
+	 * but the multi-channel one keeps a single channel, which the channel
+	 * methods below read and write as the values themselves.
+	 *
+	 * @return int
+	 */
+	int Channels() {
+		return 1;
+	}
+
+	/**
+	 * Returns the values of a channel as a float array, see Floats().
+	 *
+	 * @param c: index of the channel
+	 * @return float[]
+	 */
+	float[] Floats(int c) {
+		return Floats();
+	}
+
+	/**
+	 * Copies the values of a channel from index from (inclusive) to index to
+	 * (exclusive) into the given array, starting at index off.
+	 *
+	 * @param c:    index of the channel
+	 * @param from: first index
+	 * @param to:   last index, exclusive
+	 * @param dst:  array to copy the values into
+	 * @param off:  index of dst to copy the first value to
+	 */
+	void ReadChannel(int c, int from, int to, float[] dst, int off) {
+		Read(from, to, dst, off);
+	}
+
+	/**
+	 * Replaces the values of a channel from index from (inclusive) to index to
+	 * (exclusive) with the values of the given array, starting at index off.
+	 *
+	 * @param c:    index of the channel
+	 * @param from: first index
+	 * @param to:   last index, exclusive
+	 * @param src:  array to copy the values from
+	 * @param off:  index of src to copy the first value from
+	 */
+	void WriteChannel(int c, int from, int to, float[] src, int off) {
+		Write(from, to, src, off);
+	}
+
+	/**
+	 * Sets the values of a channel from index from (inclusive) to index to
+	 * (exclusive) to zero.
+	 *
+	 * @param c:    index of the channel
+	 * @param from: first index
+	 * @param to:   last index, exclusive
+	 */
+	void ZeroChannel(int c, int from, int to) {
+		Zero(from, to);
+	}
+
+	/**
+	 * Adds a run of values to a channel as they are, clipping at zero and
+	 * skipping NaN values like AddRun().
+	 *
+	 * @param c:   index of the channel
+	 * @param i:   index of the first value
+	 * @param src: values to be added
+	 * @param off: index of the first value in src
+	 * @param n:   number of values
+	 * @return the number of values added
+	 */
+	int AddChannel(int c, int i, float[] src, int off, int n) {
+		return AddRun(i, src, off, n, 1);
+	}
+
+	/**
+	 * Private Class
+	 * 32-bit float backend.
+	 */
+	private static final class FloatStore extends ValueStore {
+		private final float[] vals;
+
+		FloatStore(int len) {
+			super(len);
+			vals = new float[len];
+		}
+
+		float Get(int i) {
+			return vals[i];
+		}
+
+		void Set(int i, float val) {
+			vals[i] = val;
+		}
+
+		void Add(int i, float val) {
+			float v = vals[i] + val;
+			vals[i] = v < 0 ? 0 : v;
+		}
+
+		int AddRun(int i, float[] src, int off, int n, float scale) {
+			float[] vals = this.vals;
+			int added = 0;
+			for (int k = 0; k < n; k++) {
+				float val = src[off + k];
+				if (val != val)
+					continue;
+
+				float v = vals[i + k] + scale * val;
+				vals[i + k] = v < 0 ? 0 : v;
+				added++;
+			}
+			return added;
+		}
+
+		void AddQuad(int i, int stride, float v00, float v01, float v10, float v11) {
+			float[] vals = this.vals;
+			int j = i + stride;
+			float a = vals[i] + v00, b = vals[i + 1] + v01, c = vals[j] + v10, d = vals[j + 1] + v11;
+			vals[i] = a < 0 ? 0 : a;
+			vals[i + 1] = b < 0 ? 0 : b;
+			vals[j] = c < 0 ? 0 : c;
+			vals[j + 1] = d < 0 ? 0 : d;
+		}
+
+		void Zero(int from, int to) {
+			java.util.Arrays.fill(vals, from, to, 0);
+		}
+
+		void Read(int from, int to, float[] dst, int off) {
+			System.arraycopy(vals, from, dst, off, to - from);
+		}
+
+		void Write(int from, int to, float[] src, int off) {
+			System.arraycopy(src, off, vals, from, to - from);
+		}
+
+		float Min(int from, int to) {
+			float[] vals = this.vals;
+			float min = Float.MAX_VALUE;
+			for (int i = from; i < to; i++)
+				if (min > vals[i])
+					min = vals[i];
+			return min;
+		}
+
+		float Max(int from, int to) {
+			float[] vals = this.vals;
+			float max = 0;
+			for (int i = from; i < to; i++)
+				if (max < vals[i])
+					max = vals[i];
+			return max;
+		}
+
+		float[] Floats() {
+			return vals;
+		}
+	}
+
+	/**
+	 * Private Class
+	 * 64-bit double backend.
+	 */
+	private static final class DoubleStore extends ValueStore {
+		private final double[] vals;
+
+		DoubleStore(int len) {
+			super(len);
+			vals = new double[len];
+		}
+
+		float Get(int i) {
+			return (float) vals[i];
+		}
+
+		void Set(int i, float val) {
+			vals[i] = val;
+		}
+
+		void Add(int i, float val) {
+			double v = vals[i] + val;
+			vals[i] = v < 0 ? 0 : v;
+		}
+
+		void AddQuad(int i, int stride, float v00, float v01, float v10, float v11) {
+			double[] vals = this.vals;
+			int j = i + stride;
+			double a = vals[i] + v00, b = vals[i + 1] + v01, c = vals[j] + v10, d = vals[j + 1] + v11;
+			vals[i] = a < 0 ? 0 : a;
+			vals[i + 1] = b < 0 ? 0 : b;
+			vals[j] = c < 0 ? 0 : c;
+			vals[j + 1] = d < 0 ? 0 : d;
+		}
+
+		void Zero(int from, int to) {
+			java.util.Arrays.fill(vals, from, to, 0);
+		}
+
+		void Read(int from, int to, float[] dst, int off) {
+			double[] vals = this.vals;
+			for (int i = from; i < to; i++)
+				dst[off++] = (float) vals[i];
+		}
+
+		float Min(int from, int to) {
+			double[] vals = this.vals;
+			float min = Float.MAX_VALUE;
+			for (int i = from; i < to; i++) {
+				float val = (float) vals[i];
+				if (min > val)
+					min = val;
+			}
+			return min;
+		}
+
+		float Max(int from, int to) {
+			double[] vals = this.vals;
+			float max = 0;
+			for (int i = from; i < to; i++) {
+				float val = (float) vals[i];
+				if (max < val)
+					max = val;
+			}
+			return max;
+		}
+
+		float[] Floats() {
+			float[] out = new float[len];
+			for (int i = 0; i < len; i++)
+				out[i] = (float) vals[i];
+			return out;
+		}
+	}
+
+	/**
+	 * Private Class
+	 * 16.16 fixed-point backend. Values are kept as ints with 16 fractional
+	 * bits, 4 bytes per value like FLOAT, which leaves room for sums up to
+	 * CEILING / ONE, just under 32768. Additions saturate there instead of
+	 * wrapping, and the store remembers that they did.
+	 */
+	private static final class FixedStore extends ValueStore {
+		private static final double ONE = 0x1p16;
+		private static final float INV = 0x1p-16f;
+		private static final int CEILING = Integer.MAX_VALUE;
+
+		private final int[] vals;
+		private boolean saturated;
+
+		FixedStore(int len) {
+			super(len);
+			vals = new int[len];
+		}
+
+		/**
+		 * Private Function
+		 * Converts a value to fixed point, saturating at the ceiling.
+		 */
+		private int ToFixed(float val) {
+			double v = val * ONE;
+			if (v >= CEILING) {
+				saturated = true;
+				return CEILING;
+			}
+			return v <= -CEILING ? -CEILING : (int) Math.round(v);
+		}
+
+		float Get(int i) {
+			return vals[i] * INV;
+		}
+
+		void Set(int i, float val) {
+			vals[i] = val < 0 ? 0 : ToFixed(val);
+		}
+
+		void Add(int i, float val) {
+			long v = (long) vals[i] + ToFixed(val);
+			if (v > CEILING) {
+				saturated = true;
+				v = CEILING;
+			}
+			vals[i] = v < 0 ? 0 : (int) v;
+		}
+
+		void Zero(int from, int to) {
+			java.util.Arrays.fill(vals, from, to, 0);
+		}
+
+		void Read(int from, int to, float[] dst, int off) {
+			int[] vals = this.vals;
+			for (int i = from; i < to; i++)
+				dst[off++] = vals[i] * INV;
+		}
+
+		float Min(int from, int to) {
+			int[] vals = this.vals;
+			int min = Integer.MAX_VALUE;
+			for (int i = from; i < to; i++)
+				if (min > vals[i])
+					min = vals[i];
+			return from < to ? min * INV : Float.MAX_VALUE;
+		}
+
+		float Max(int from, int to) {
+			int[] vals = this.vals;
+			int max = 0;
+			for (int i = from; i < to; i++)
+				if (max < vals[i])
+					max = vals[i];
+			return max * INV;
+		}
+
+		boolean Saturated() {
+			return saturated;
+		}
+
+		float[] Floats() {
+			float[] out = new float[len];
+			Read(0, len, out, 0);
+			return out;
+		}
+	}
+
+	/**
+	 * Private Class
+	 * Memory-mapped float backend. The file starts with a header that holds
+	 * the size of the canvas, followed by the little-endian values in row
+	 * order. The values are mapped in segments of 1 GiB, as a single mapping
+	 * can not exceed 2 GiB, and are addressed with long offsets into the file.
+	 *
+	 * Java has no public way to unmap a file, so Close() goes through the
+	 * cleaner of the mappings, and leaves them to the garbage collector on the
+	 * runtimes where that fails. The segments are dropped first, so a closed
+	 * store throws instead of touching a released mapping.
+	 */
+	private static final class MappedStore extends ValueStore {
+		private static final int MAGIC = 0x49444356;
+		private static final int HEADER = 16;
+		private static final int SEGMENT_SHIFT = 28;
+		private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+		private MappedByteBuffer[] maps;
+		private FloatBuffer[] segments;
+
+		MappedStore(File file, int w, int h) throws IOException {
+			super(Length(w, h));
+
+			long bytes = HEADER + 4L * len;
+			int count = (int) ((len + (long) SEGMENT_MASK) >>> SEGMENT_SHIFT);
+
+			maps = new MappedByteBuffer[count];
+			segments = new FloatBuffer[count];
+
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				if (raf.length() == 0) {
+					raf.setLength(bytes);
+					raf.writeInt(MAGIC);
+					raf.writeInt(w);
+					raf.writeInt(h);
+				} else if (raf.readInt() != MAGIC || raf.readInt() != w || raf.readInt() != h || raf.length() != bytes) {
+					throw new IllegalArgumentException("File does not hold a " + w + "x" + h + " canvas: " + file);
+				}
+
+				FileChannel channel = raf.getChannel();
+				for (int i = 0; i < count; i++) {
+					long from = (long) i << SEGMENT_SHIFT;
+					long size = Math.min(len - from, 1L << SEGMENT_SHIFT);
+
+					maps[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER + 4 * from, 4 * size);
+					segments[i] = maps[i].order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+				}
+			} finally {
+				raf.close();
+			}
+		}
+
+		/**
+		 * Private Function
+		 * Returns the segment that holds the value at the given index.
+		 *
+		 * @param i: index of the value
+		 * @return FloatBuffer
+		 */
+		private FloatBuffer Segment(int i) {
+			FloatBuffer[] segments = this.segments;
+			if (segments == null)
+				throw new IllegalStateException("The canvas file is closed");
+			return segments[i >>> SEGMENT_SHIFT];
+		}
+
+		float Get(int i) {
+			return Segment(i).get(i & SEGMENT_MASK);
+		}
+
+		void Set(int i, float val) {
+			Segment(i).put(i & SEGMENT_MASK, val);
+		}
+
+		void Add(int i, float val) {
+			FloatBuffer segment = Segment(i);
+			float v = segment.get(i & SEGMENT_MASK) + val;
+			segment.put(i & SEGMENT_MASK, v < 0 ? 0 : v);
+		}
+
+		void Zero(int from, int to) {
+			float[] zeros = new float[Math.min(to - from, 1 << 16)];
+			for (int i = from; i < to;) {
+				int end = (int) Math.min(to, (long) ((i >>> SEGMENT_SHIFT) + 1) << SEGMENT_SHIFT);
+				int n = Math.min(end - i, zeros.length);
+
+				FloatBuffer segment = Segment(i).duplicate();
+				segment.position(i & SEGMENT_MASK);
+				segment.put(zeros, 0, n);
+				i += n;
+			}
+		}
+
+		void Read(int from, int to, float[] dst, int off) {
+			for (int i = from; i < to;) {
+				int end = (int) Math.min(to, (long) ((i >>> SEGMENT_SHIFT) + 1) << SEGMENT_SHIFT);
+
+				FloatBuffer segment = Segment(i).duplicate();
+				segment.position(i & SEGMENT_MASK);
+				segment.get(dst, off + i - from, end - i);
+				i = end;
+			}
+		}
+
+		void Write(int from, int to, float[] src, int off) {
+			for (int i = from; i < to;) {
+				int end = (int) Math.min(to, (long) ((i >>> SEGMENT_SHIFT) + 1) << SEGMENT_SHIFT);
+
+				FloatBuffer segment = Segment(i).duplicate();
+				segment.position(i & SEGMENT_MASK);
+				segment.put(src, off + i - from, end - i);
+				i = end;
+			}
+		}
+
+		float[] Floats() {
+			float[] out = new float[len];
+			Read(0, len, out, 0);
+			return out;
+		}
+
+		void Flush() {
+			if (maps != null)
+				for (MappedByteBuffer map : maps)
+					map.force();
+		}
+
+		void Close() {
+			if (maps == null)
+				return;
+
+			Flush();
+
+			MappedByteBuffer[] maps = this.maps;
+			this.maps = null;
+			segments = null;
+			for (MappedByteBuffer map : maps)
+				Unmap(map);
+		}
+
+		/**
+		 * Private Function
+		 * Releases a mapping through its cleaner: Unsafe.invokeCleaner() from
+		 * Java 9 on, the cleaner() of the buffer on Java 8. If neither works,
+		 * the mapping is released when it is garbage collected.
+		 *
+		 * @param map: mapping to release
+		 */
+		private static void Unmap(MappedByteBuffer map) {
+			try {
+				Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+				java.lang.reflect.Field field = unsafe.getDeclaredField("theUnsafe");
+				field.setAccessible(true);
+				unsafe.getMethod("invokeCleaner", java.nio.ByteBuffer.class).invoke(field.get(null), map);
+				return;
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				// not Java 9 or later
+			}
+			try {
+				java.lang.reflect.Method method = map.getClass().getMethod("cleaner");
+				method.setAccessible(true);
+				Object cleaner = method.invoke(map);
+				if (cleaner != null)
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				// left to the garbage collector
+			}
+		}
+	}
+
+	/**
+	 * Multi-channel float backend. Every channel is kept in an array of its
+	 * own, and everything added to the store is added to every channel,
+	 * scaled by the gain of the channel. The gains are read once per call, so
+	 * they can be replaced while other threads draw.
+	 *
+	 * Reading the store returns the highest value of the channels at each
+	 * index, which is what the range, the histogram and the single-channel
+	 * output of the canvas are found from. The channel methods read and
+	 * write every channel on its own, without the gains.
+	 */
+	static final class ChannelStore extends ValueStore {
+		private final float[][] channels;
+		private volatile float[] gains;
+
+		ChannelStore(int count, int len) {
+			super(len);
+			channels = new float[count][len];
+			gains = new float[count];
+			java.util.Arrays.fill(gains, 1);
+		}
+
+		/**
+		 * Replaces the gains of the channels. The array is kept as it is.
+		 *
+		 * @param gains: gain of every channel
+		 */
+		void SetGains(float[] gains) {
+			this.gains = gains;
+		}
+
+		float Get(int i) {
+			float max = channels[0][i];
+			for (int c = 1; c < channels.length; c++)
+				max = Math.max(max, channels[c][i]);
+			return max;
+		}
+
+		void Set(int i, float val) {
+			for (float[] ch : channels)
+				ch[i] = val;
+		}
+
+		void Add(int i, float val) {
+			float[] g = gains;
+			for (int c = 0; c < channels.length; c++) {
+				float v = channels[c][i] + val * g[c];
+				channels[c][i] = v < 0 ? 0 : v;
+			}
+		}
+
+		int AddRun(int i, float[] src, int off, int n, float scale) {
+			float[] g = gains;
+			int added = 0;
+			for (int c = 0; c < channels.length; c++) {
+				float[] ch = channels[c];
+				float s = scale * g[c];
+				for (int k = 0; k < n; k++) {
+					float val = src[off + k];
+					if (val != val)
+						continue;
+
+					float v = ch[i + k] + s * val;
+					ch[i + k] = v < 0 ? 0 : v;
+					if (c == 0)
+						added++;
+				}
+			}
+			return added;
+		}
+
+		void Zero(int from, int to) {
+			for (float[] ch : channels)
+				java.util.Arrays.fill(ch, from, to, 0);
+		}
+
+		void Read(int from, int to, float[] dst, int off) {
+			System.arraycopy(channels[0], from, dst, off, to - from);
+			for (int c = 1; c < channels.length; c++) {
+				float[] ch = channels[c];
+				for (int i = from, j = off; i < to; i++, j++)
+					dst[j] = Math.max(dst[j], ch[i]);
+			}
+		}
+
+		float[] Floats() {
+			float[] vals = new float[len];
+			Read(0, len, vals, 0);
+			return vals;
+		}
+
+		int Channels() {
+			return channels.length;
+		}
+
+		float[] Floats(int c) {
+			return channels[c];
+		}
+
+		void ReadChannel(int c, int from, int to, float[] dst, int off) {
+			System.arraycopy(channels[c], from, dst, off, to - from);
+		}
+
+		void WriteChannel(int c, int from, int to, float[] src, int off) {
+			System.arraycopy(src, off, channels[c], from, to - from);
+		}
+
+		void ZeroChannel(int c, int from, int to) {
+			java.util.Arrays.fill(channels[c], from, to, 0);
+		}
+
+		int AddChannel(int c, int i, float[] src, int off, int n) {
+			float[] ch = channels[c];
+			int added = 0;
+			for (int k = 0; k < n; k++) {
+				float val = src[off + k];
+				if (val != val)
+					continue;
+
+				float v = ch[i + k] + val;
+				ch[i + k] = v < 0 ? 0 : v;
+				added++;
+			}
+			return added;
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package goodRectangle.infinidecimal;
+
+import java.util.Arrays;
+
+/**
+ * Winding.java - nonzero winding fill of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * The fill of the canvas adds up the signed area every edge of a polygon
+ * leaves to its right, which gives the average winding number of every
+ * pixel. That is the coverage of the pixel as long as the winding numbers
+ * inside it are 0 and one other value of a single sign, which is always the
+ * case for polygons that do not cross or touch themselves. Pixels of other
+ * polygons can hold areas of opposite windings, which cancel out, or areas
+ * of winding 2 next to areas of winding 0, which count twice.
+ *
+ * For those polygons, the rows are filled one at a time. A row is cut into
+ * slabs at the ends of the edges and where edges cross, so the order of the
+ * edges does not change within a slab. In every slab, the edges are walked
+ * from left to right and only the edges where the winding number turns
+ * nonzero or back to zero are accumulated, as the left and right sides of
+ * the filled spans. The running sum of the row then gives the exact share of
+ * each pixel whose winding number is not zero. Only edges that overlap in a
+ * row are tested for crossings, and the order of the edges is carried from
+ * slab to slab, so a row costs about as much as its edges and crossings.
+ *
+ * A Winding keeps its scratch arrays between rows and is not thread safe.
+ */
+final class Winding {
+	/** Edges of the current row: x at ya and yb, dx/dy, ya, yb and direction. */
+	private double[] xa = new double[16], xb = new double[16], slope = new double[16], ya = new double[16], yb = new double[16];
+	private int[] dir = new int[16];
+
+	/** Heights the row is cut at. */
+	private double[] cuts = new double[64];
+
+	/** Edges ordered by their left ends, and by x in the current slab. */
+	private long[] sweep = new long[16];
+	private int[] order = new int[16];
+	private double[] key = new double[16];
+
+	/**
+	 * Returns whether a polygon neither crosses nor touches itself, so its
+	 * winding numbers are 0 and one other value of a single sign, 1 or -1.
+	 * Edges are swept from left to right, and only the edges whose horizontal
+	 * extents overlap are tested against each other.
+	 *
+	 * @param xs: x positions of the vertices
+	 * @param ys: y positions of the vertices
+	 * @param n:  number of vertices
+	 * @return boolean
+	 */
+	static boolean Simple(float[] xs, float[] ys, int n) {
+		if (n <= 3)
+			return true;
+
+		long[] order = new long[n];
+		for (int i = 0; i < n; i++)
+			order[i] = (long) Sortable(Math.min(xs[i], xs[i + 1 == n ? 0 : i + 1])) << 32 | i;
+		Arrays.sort(order);
+
+		for (int a = 0; a < n; a++) {
+			int i = (int) order[a];
+			int i1 = i + 1 == n ? 0 : i + 1;
+			float right = Math.max(xs[i], xs[i1]);
+
+			for (int b = a + 1; b < n; b++) {
+				int j = (int) order[b];
+				int j1 = j + 1 == n ? 0 : j + 1;
+				if (Math.min(xs[j], xs[j1]) > right)
+					break;
+
+				// neighbours share a vertex, which is not a crossing
+				if (j == i1 || i == j1)
+					continue;
+
+				if (Meet(xs[i], ys[i], xs[i1], ys[i1], xs[j], ys[j], xs[j1], ys[j1]))
+					return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Private Function
+	 * Maps a float to an int with the same order.
+	 */
+	private static int Sortable(float v) {
+		int bits = Float.floatToIntBits(v);
+		return bits ^ (bits >> 31 & 0x7FFFFFFF);
+	}
+
+	/**
+	 * Private Function
+	 * Returns whether two segments cross or touch.
+	 */
+	private static boolean Meet(double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy) {
+		if (Math.max(ay, by) < Math.min(cy, dy) || Math.max(cy, dy) < Math.min(ay, by))
+			return false;
+
+		double o1 = Math.signum((bx - ax) * (cy - ay) - (by - ay) * (cx - ax));
+		double o2 = Math.signum((bx - ax) * (dy - ay) - (by - ay) * (dx - ax));
+		double o3 = Math.signum((dx - cx) * (ay - cy) - (dy - cy) * (ax - cx));
+		double o4 = Math.signum((dx - cx) * (by - cy) - (dy - cy) * (bx - cx));
+
+		// collinear segments with overlapping extents
+		if (o1 == 0 && o2 == 0)
+			return Math.max(ax, bx) >= Math.min(cx, dx) && Math.max(cx, dx) >= Math.min(ax, bx);
+
+		return o1 * o2 <= 0 && o3 * o4 <= 0;
+	}
+
+	/**
+	 * Accumulates the sides of the areas of nonzero winding in row y of the
+	 * edge list into the accumulation buffer, see InfinidecimalCore.Accumulate().
+	 *
+	 * @param acc:    accumulation buffer of the rows
+	 * @param stride: length of a row of the buffer
+	 * @param top:    first row of the buffer
+	 * @param y:      row to fill
+	 * @param edges:  edge list, four values per edge
+	 * @param m:      number of values in the edge list
+	 */
+	void Row(float[] acc, int stride, int top, int y, float[] edges, int m) {
+		int k = 0;
+		for (int i = 0; i < m; i += 4) {
+			double x0 = edges[i], y0 = edges[i + 1], x1 = edges[i + 2], y1 = edges[i + 3];
+			int d = 1;
+			if (y0 > y1) {
+				double t = x0;
+				x0 = x1;
+				x1 = t;
+				t = y0;
+				y0 = y1;
+				y1 = t;
+				d = -1;
+			}
+			if (y1 <= y || y0 >= y + 1 || y0 == y1)
+				continue;
+
+			if (k == dir.length)
+				Grow();
+
+			slope[k] = (x1 - x0) / (y1 - y0);
+			ya[k] = Math.max(y0, y);
+			yb[k] = Math.min(y1, y + 1);
+			xa[k] = x0 + (ya[k] - y0) * slope[k];
+			xb[k] = x0 + (yb[k] - y0) * slope[k];
+			dir[k] = d;
+			k++;
+		}
+		if (k == 0)
+			return;
+
+		int c = 0;
+		cuts = Fit(cuts, 2 * k + 2);
+		cuts[c++] = y;
+		cuts[c++] = y + 1;
+		for (int i = 0; i < k; i++) {
+			cuts[c++] = ya[i];
+			cuts[c++] = yb[i];
+		}
+
+		// only edges whose extents in the row overlap can cross in it
+		for (int i = 0; i < k; i++)
+			sweep[i] = (long) Sortable((float) Math.min(xa[i], xb[i])) << 32 | i;
+		Arrays.sort(sweep, 0, k);
+
+		for (int a = 0; a < k; a++) {
+			int i = (int) sweep[a];
+			int right = Sortable(Math.nextUp((float) Math.max(xa[i], xb[i])));
+
+			for (int b = a + 1; b < k && (int) (sweep[b] >> 32) <= right; b++) {
+				int j = (int) sweep[b];
+				if (slope[i] == slope[j])
+					continue;
+
+				double lo = Math.max(ya[i], ya[j]), hi = Math.min(yb[i], yb[j]);
+				double at = (xa[j] - ya[j] * slope[j] - xa[i] + ya[i] * slope[i]) / (slope[i] - slope[j]);
+				if (at > lo && at < hi) {
+					cuts = Fit(cuts, c + 1);
+					cuts[c++] = at;
+				}
+			}
+		}
+
+		Arrays.sort(cuts, 0, c);
+
+		// the order of the edges is kept from slab to slab, where it changes
+		// only at the crossings, so sorting it again costs little
+		for (int i = 0; i < k; i++)
+			order[i] = (int) sweep[i];
+
+		for (int s = 0; s + 1 < c; s++) {
+			double s0 = cuts[s], s1 = cuts[s + 1];
+			if (!(s1 > s0))
+				continue;
+
+			double mid = 0.5 * (s0 + s1);
+			for (int i = 0; i < k; i++)
+				key[i] = xa[i] + (Math.min(yb[i], Math.max(ya[i], mid)) - ya[i]) * slope[i];
+
+			for (int a = 1; a < k; a++) {
+				int i = order[a];
+				int p = a;
+				while (p > 0 && key[order[p - 1]] > key[i]) {
+					order[p] = order[p - 1];
+					p--;
+				}
+				order[p] = i;
+			}
+
+			int winding = 0;
+			for (int a = 0; a < k; a++) {
+				int i = order[a];
+				if (ya[i] > mid || yb[i] < mid)
+					continue;
+
+				int before = winding;
+				winding += dir[i];
+
+				if ((before == 0) == (winding == 0))
+					continue;
+
+				float x0 = (float) (xa[i] + (s0 - ya[i]) * slope[i]);
+				float x1 = (float) (xa[i] + (s1 - ya[i]) * slope[i]);
+				if (before == 0)
+					InfinidecimalCore.Accumulate(acc, stride, top, y + 1, x0, (float) s0, x1, (float) s1);
+				else
+					InfinidecimalCore.Accumulate(acc, stride, top, y + 1, x1, (float) s1, x0, (float) s0);
+			}
+		}
+	}
+
+	/**
+	 * Private Function
+	 * Doubles the arrays of the edges of a row.
+	 */
+	private void Grow() {
+		int n = dir.length * 2;
+		xa = Arrays.copyOf(xa, n);
+		xb = Arrays.copyOf(xb, n);
+		slope = Arrays.copyOf(slope, n);
+		ya = Arrays.copyOf(ya, n);
+		yb = Arrays.copyOf(yb, n);
+		dir = Arrays.copyOf(dir, n);
+		sweep = Arrays.copyOf(sweep, n);
+		order = Arrays.copyOf(order, n);
+		key = Arrays.copyOf(key, n);
+	}
+
+	/**
+	 * Private Function
+	 * Returns the array, grown to hold at least n values.
+	 */
+	private static double[] Fit(double[] array, int n) {
+		return n <= array.length ? array : Arrays.copyOf(array, Math.max(n, array.length * 2));
+	}
+}
@@ -0,0 +1,113 @@
+package goodRectangle.infinidecimal;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * BackgroundTest.java - tests of the background drawing of Infinidecimal
+ * Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Preview() shows a copy of the values that is taken block by block while a
+ * background job keeps drawing, and is only brought up to date once every
+ * preview interval.
+ */
+public class BackgroundTest {
+	// two blocks of 64 rows
+	private static final int W = 64, H = 128, ROUNDS = 3000;
+
+	/**
+	 * Returns the whole pixel positions of the rows from y0 to y1, packed as
+	 * {xs, ys}. Points on whole pixels are written to a single pixel each.
+	 */
+	private static float[][] Pixels(int y0, int y1) {
+		float[][] points = new float[2][W * (y1 - y0)];
+		for (int i = 0; i < points[0].length; i++) {
+			points[0][i] = i % W;
+			points[1][i] = y0 + i / W;
+		}
+		return points;
+	}
+
+	/**
+	 * Every round adds 1 to each pixel of a block in a single stroke, so a
+	 * copy of a block that is not torn holds the same value everywhere.
+	 */
+	@Test
+	public void PreviewIsNeverTorn() {
+		final InfinidecimalCore canvas = new InfinidecimalCore(W, H);
+		final float[][] top = Pixels(0, 64), bottom = Pixels(64, 128);
+
+		canvas.SetPreviewInterval(0);
+		canvas.BeginBackground(new Runnable() {
+			public void run() {
+				for (int r = 0; r < ROUNDS; r++) {
+					canvas.Dots(top[0], top[1]);
+					canvas.Dots(bottom[0], bottom[1]);
+				}
+			}
+		});
+
+		int[] pixels = new int[W * H];
+		int previews = 0;
+		while (!canvas.IsBackgroundDone()) {
+			canvas.Preview(pixels);
+			for (int i = 0; i < pixels.length; i++)
+				assertEquals("preview " + previews + ", pixel " + i, pixels[i < W * 64 ? 0 : W * 64], pixels[i]);
+			previews++;
+		}
+		canvas.AwaitBackground();
+
+		int[] output = new int[W * H];
+		canvas.Output(output);
+		canvas.Preview(pixels);
+		assertArrayEquals(output, pixels);
+		assertEquals(ROUNDS, canvas.GetMaxValue(), 0);
+	}
+
+	/**
+	 * The preview keeps showing the same copy until the interval has passed,
+	 * even after the job is done.
+	 */
+	@Test
+	public void PreviewKeepsInterval() throws Exception {
+		final InfinidecimalCore canvas = new InfinidecimalCore(W, H);
+		final CountDownLatch drawn = new CountDownLatch(1), go = new CountDownLatch(1);
+
+		canvas.BeginBackground(new Runnable() {
+			public void run() {
+				canvas.FillRectangle(5, 5, 20, 20);
+				drawn.countDown();
+				try {
+					go.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				canvas.FillRectangle(30, 60, 20, 40);
+			}
+		});
+
+		drawn.await();
+		canvas.SetPreviewInterval(60 * 60 * 1000);
+		int[] first = new int[W * H];
+		canvas.Preview(first);
+
+		go.countDown();
+		canvas.AwaitBackground();
+
+		int[] output = new int[W * H], pixels = new int[W * H];
+		canvas.Output(output);
+		canvas.Preview(pixels);
+		assertArrayEquals(first, pixels);
+		assertFalse(Arrays.equals(output, pixels));
+
+		canvas.SetPreviewInterval(20);
+		Thread.sleep(40);
+		canvas.Preview(pixels);
+		assertArrayEquals(output, pixels);
+	}
+}
@@ -0,0 +1,196 @@
+package goodRectangle.infinidecimal;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * ChannelsTest.java - tests of the multi-channel Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ */
+public class ChannelsTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Returns a canvas of three channels with a scene drawn on it, at a
+	 * different intensity in every channel.
+	 */
+	private static InfinidecimalChannels Drawn(int w, int h, long seed) {
+		InfinidecimalChannels canvas = new InfinidecimalChannels(w, h);
+		canvas.SetChannelIntensities(1, 0.5f, 0.25f);
+		Scenes.Draw(canvas, seed);
+		canvas.SetChannelIntensities(0, 0, 1);
+		Scenes.Draw(canvas, seed + 1);
+		return canvas;
+	}
+
+	private static void AssertChannels(InfinidecimalChannels expected, InfinidecimalChannels actual) {
+		assertEquals(expected.Channels(), actual.Channels());
+		for (int c = 0; c < expected.Channels(); c++)
+			assertArrayEquals("channel " + c, expected.GetChannelRaw(c), actual.GetChannelRaw(c), 0);
+	}
+
+	@Test
+	public void StorageIsChannels() {
+		InfinidecimalChannels canvas = new InfinidecimalChannels(64, 48);
+		assertEquals(Storage.CHANNELS, canvas.GetStorage());
+
+		// the raw values are a copy, so they do not follow later drawing
+		float[] raw = canvas.GetValuesRaw();
+		canvas.FillRectangle(0, 0, 64, 48);
+		assertEquals(0, raw[0], 0);
+		assertEquals(1, canvas.GetValuesRaw()[0], 1e-5f);
+	}
+
+	@Test
+	public void SnapshotKeepsEveryChannel() {
+		File file = new File(folder.getRoot(), "channels.idc");
+
+		InfinidecimalChannels saved = Drawn(300, 200, 7);
+		saved.Save(file, true);
+
+		InfinidecimalChannels loaded = Drawn(300, 200, 9);
+		loaded.Load(file);
+
+		AssertChannels(saved, loaded);
+	}
+
+	@Test
+	public void MergeAddsEveryChannel() {
+		File file = new File(folder.getRoot(), "channels.idc");
+
+		InfinidecimalChannels a = Drawn(300, 200, 3), b = Drawn(300, 200, 4);
+		b.Save(file, false);
+
+		InfinidecimalChannels merged = new InfinidecimalChannels(300, 200);
+		merged.SetChannelIntensities(2, 2, 2);
+		merged.Merge(a);
+		merged.Merge(file);
+
+		for (int c = 0; c < 3; c++) {
+			float[] expected = a.GetChannelRaw(c).clone();
+			float[] other = b.GetChannelRaw(c);
+			for (int i = 0; i < expected.length; i++)
+				expected[i] += other[i];
+
+			Scenes.AssertValues(expected, merged.GetChannelRaw(c), 1e-6f);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void MergeRejectsPlainCanvas() {
+		new InfinidecimalChannels(30, 20).Merge(new InfinidecimalCore(30, 20));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void PlainCanvasRejectsChannels() {
+		new InfinidecimalCore(30, 20).Merge(new InfinidecimalChannels(30, 20));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void LoadRejectsOtherChannels() {
+		File file = new File(folder.getRoot(), "channels.idc");
+		new InfinidecimalChannels(30, 20, 2).Save(file);
+
+		new InfinidecimalChannels(30, 20, 3).Load(file);
+	}
+
+	@Test
+	public void AreaMatchesOutput() {
+		InfinidecimalChannels canvas = Drawn(120, 80, 5);
+		int[] full = new int[120 * 80];
+		canvas.Output(full);
+
+		int[] area = new int[140 * 100];
+		canvas.Output(area, -10, -10, 140, 100);
+
+		int[] empty = new int[1];
+		canvas.Output(empty, -1, -1, 1, 1);
+
+		for (int y = 0; y < 100; y++)
+			for (int x = 0; x < 140; x++) {
+				boolean inside = x >= 10 && x < 130 && y >= 10 && y < 90;
+				assertEquals("pixel " + x + ", " + y, inside ? full[(y - 10) * 120 + x - 10] : empty[0], area[y * 140 + x]);
+			}
+	}
+
+	private static void AssertFlatLevels(boolean max) {
+		int w = 67, h = 45;
+		InfinidecimalChannels canvas = new InfinidecimalChannels(w, h);
+		canvas.SetNormalize(false);
+		canvas.SetLevelMax(max);
+		canvas.SetChannelIntensities(0.8f, 0.4f, 0.1f);
+
+		for (int y = 0; y < h; y++)
+			for (int x = 0; x < w; x++)
+				canvas.Dot(x, y, 1);
+
+		int[] base = new int[w * h];
+		canvas.Output(base);
+
+		for (int level = 1; level < canvas.Levels(); level++) {
+			int lw = canvas.Width(level), lh = canvas.Height(level);
+			int[] pixels = new int[lw * lh];
+			canvas.Output(pixels, level, 0, 0, lw, lh);
+
+			for (int i = 0; i < pixels.length; i++)
+				assertEquals("level " + level + ", pixel " + i, base[0], pixels[i]);
+		}
+	}
+
+	@Test
+	public void LevelsAverageEveryChannel() {
+		AssertFlatLevels(false);
+	}
+
+	@Test
+	public void LevelsKeepHighestOfEveryChannel() {
+		AssertFlatLevels(true);
+	}
+
+	@Test
+	public void PreviewMatchesOutput() {
+		InfinidecimalChannels canvas = Drawn(120, 80, 6);
+		canvas.SetChannelColor(1, 255, 255, 0);
+		canvas.SetPreviewInterval(0);
+
+		int[] output = new int[120 * 80], preview = new int[120 * 80];
+		canvas.Output(output);
+		canvas.Preview(preview);
+
+		assertArrayEquals(output, preview);
+	}
+
+	@Test
+	public void IncrementalOutputMatchesFresh() {
+		InfinidecimalChannels canvas = Drawn(300, 200, 7);
+		canvas.SetNormalize(false);
+		canvas.SetStats(true);
+
+		int[] pixels = new int[300 * 200];
+		canvas.Output(pixels);
+		canvas.Dot(150, 100, 0.5f);
+		canvas.Output(pixels);
+
+		// only the block with the dot is plotted again
+		assertTrue(canvas.GetStats().Pixels(Stats.Op.OUTPUT) < 2 * 300 * 200);
+
+		InfinidecimalChannels fresh = Drawn(300, 200, 7);
+		fresh.SetNormalize(false);
+		fresh.Dot(150, 100, 0.5f);
+		int[] expected = new int[300 * 200];
+		fresh.Output(expected);
+		assertArrayEquals(expected, pixels);
+
+		canvas.SetChannelColor(2, 0, 255, 255);
+		canvas.Output(pixels);
+		fresh.SetChannelColor(2, 0, 255, 255);
+		fresh.Output(expected);
+		assertArrayEquals(expected, pixels);
+	}
+}
@@ -0,0 +1,83 @@
+package goodRectangle.infinidecimal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * ColorTest.java - tests of the gradient of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * The output colors are looked up from a table compiled from the start,
+ * target and stop colors, and have to match the gradient interpolated at
+ * the normalized value of every pixel, within the rounding of the table.
+ */
+public class ColorTest {
+	// the values 0 - 4 normalize to 0, 0.25, 0.5, 0.75 and 1
+	private static final int N = 5;
+
+	private static int[] Output(InfinidecimalCore canvas) {
+		for (int x = 1; x < N; x++)
+			canvas.Dot(x, 0, x);
+
+		int[] pixels = new int[N];
+		canvas.Output(pixels);
+		return pixels;
+	}
+
+	private static void AssertColors(float[][] expected, int[] pixels) {
+		for (int i = 0; i < N; i++) {
+			assertEquals("alpha " + i, 0xFF, pixels[i] >>> 24);
+			for (int c = 0; c < 3; c++)
+				assertEquals("pixel " + i + ", channel " + c, expected[i][c], (pixels[i] >> (16 - 8 * c)) & 0xFF, 1);
+		}
+	}
+
+	@Test
+	public void DefaultIsBlackToWhite() {
+		InfinidecimalCore canvas = new InfinidecimalCore(N, 1);
+		AssertColors(new float[][] {
+				{ 0, 0, 0 }, { 63.75f, 63.75f, 63.75f }, { 127.5f, 127.5f, 127.5f },
+				{ 191.25f, 191.25f, 191.25f }, { 255, 255, 255 } }, Output(canvas));
+	}
+
+	@Test
+	public void RgbStopsAreInterpolated() {
+		InfinidecimalCore canvas = new InfinidecimalCore(N, 1);
+		canvas.SetStartColor(10, 20, 30);
+		canvas.SetTargetColor(255, 255, 255);
+		canvas.SetColorStop(0.5f, 200, 100, 0);
+
+		AssertColors(new float[][] {
+				{ 10, 20, 30 }, { 105, 60, 15 }, { 200, 100, 0 },
+				{ 227.5f, 177.5f, 127.5f }, { 255, 255, 255 } }, Output(canvas));
+
+		// without the stop, a single gradient from start to target
+		canvas.ClearColorStops();
+		int[] pixels = new int[N];
+		canvas.Output(pixels);
+		AssertColors(new float[][] {
+				{ 10, 20, 30 }, { 71.25f, 78.75f, 86.25f }, { 132.5f, 137.5f, 142.5f },
+				{ 193.75f, 196.25f, 198.75f }, { 255, 255, 255 } }, pixels);
+	}
+
+	@Test
+	public void HsbStopsAreInterpolated() {
+		InfinidecimalCore canvas = new InfinidecimalCore(N, 1);
+		canvas.SetHSB(true);
+		canvas.SetStartColor(0, 100, 100);
+		canvas.SetTargetColor(240, 100, 100);
+
+		// hue goes from red through yellow, green and cyan to blue
+		AssertColors(new float[][] {
+				{ 255, 0, 0 }, { 255, 255, 0 }, { 0, 255, 0 }, { 0, 255, 255 }, { 0, 0, 255 } }, Output(canvas));
+
+		// a stop at 120, 50, 100 desaturates the middle of the gradient
+		canvas.SetColorStop(0.5f, 120, 50, 100);
+		int[] pixels = new int[N];
+		canvas.Output(pixels);
+		AssertColors(new float[][] {
+				{ 255, 0, 0 }, { 255, 255, 63.75f }, { 127.5f, 255, 127.5f },
+				{ 63.75f, 255, 255 }, { 0, 0, 255 } }, pixels);
+	}
+}
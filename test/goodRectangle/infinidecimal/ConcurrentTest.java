@@ -0,0 +1,85 @@
+package goodRectangle.infinidecimal;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * ConcurrentTest.java - tests of the concurrent mode of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * An Output() that runs while a drawing is being written may only show part
+ * of it, but the first Output() after the drawing is done has to show all of
+ * it with the range it reached.
+ */
+public class ConcurrentTest {
+	private static final int W = 160, H = 120, STEPS = 600;
+
+	private static int[] Source() {
+		Random random = new Random(0);
+		int[] pixels = new int[64 * 48];
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+		return pixels;
+	}
+
+	/**
+	 * Draws the step-th of a series of images and filled shapes, which are
+	 * stacked on the same area so that every step raises the highest value
+	 * of the canvas.
+	 */
+	private static void Draw(InfinidecimalCore canvas, int[] source, int step) {
+		switch (step % 3) {
+		case 0:
+			canvas.Image(source, 64, 48, 20 + step % 5, 30);
+			break;
+		case 1:
+			canvas.FillRectangle(10, 20, 120.5f, 80.25f);
+			break;
+		default:
+			canvas.FillPolygon(new float[] { 15, 150, 70 }, new float[] { 10, 45, 115 });
+		}
+	}
+
+	/**
+	 * Draws the same steps on a canvas in concurrent mode, while another
+	 * thread keeps plotting it, and on a canvas in the default mode. After
+	 * every step, both have to plot the same output.
+	 */
+	@Test
+	public void OutputDuringDrawingKeepsRangeFresh() throws Exception {
+		int[] source = Source();
+		InfinidecimalCore expected = new InfinidecimalCore(W, H);
+
+		final InfinidecimalCore canvas = new InfinidecimalCore(W, H);
+		canvas.SetConcurrent(true);
+
+		final AtomicBoolean done = new AtomicBoolean();
+		Thread output = new Thread(new Runnable() {
+			public void run() {
+				int[] pixels = new int[W * H];
+				while (!done.get())
+					canvas.Output(pixels);
+			}
+		});
+
+		int[] fresh = new int[W * H], pixels = new int[W * H];
+		output.start();
+		try {
+			for (int step = 0; step < STEPS; step++) {
+				Draw(expected, source, step);
+				Draw(canvas, source, step);
+
+				expected.Output(fresh);
+				canvas.Output(pixels);
+				assertArrayEquals("step " + step, fresh, pixels);
+			}
+		} finally {
+			done.set(true);
+			output.join();
+		}
+	}
+}
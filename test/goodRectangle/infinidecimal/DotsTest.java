@@ -0,0 +1,135 @@
+package goodRectangle.infinidecimal;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * DotsTest.java - tests of the batched points of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Dots() splats the points inside the canvas with a single bounds check and
+ * sends the rest through Dot(), and has to leave the same values as calling
+ * Dot() for every point, in both modes.
+ */
+public class DotsTest {
+	private static final int W = 97, H = 61;
+
+	/**
+	 * Returns n points, most of them inside the canvas, followed by points on
+	 * every edge and corner, points outside the canvas and points that are
+	 * not numbers, packed as {xs, ys, vals}.
+	 */
+	private static float[][] Points(int n, long seed) {
+		float[][] edges = {
+				{ 0, 0 }, { W - 1, H - 1 }, { 0, H - 1 }, { W - 1, 0 },
+				{ -0.5f, 30.25f }, { W - 0.5f, 30.25f }, { 40.75f, -0.5f }, { 40.75f, H - 0.5f },
+				{ W - 1, 12.5f }, { 12.5f, H - 1 }, { -0.999f, -0.999f }, { W - 1.001f, H - 1.001f },
+				{ -5, 20 }, { W + 3, 20 }, { 20, -7.5f }, { 20, H + 0.25f }, { -1, -1 }, { W, H },
+				{ Float.NaN, 10 }, { 10, Float.NaN }, { Float.NaN, Float.NaN },
+				{ Float.POSITIVE_INFINITY, 10 }, { 10, Float.NEGATIVE_INFINITY } };
+
+		Random random = new Random(seed);
+		float[][] points = new float[3][n + edges.length];
+		for (int i = 0; i < points[0].length; i++) {
+			if (i < n) {
+				points[0][i] = random.nextFloat() * (W - 1);
+				points[1][i] = random.nextFloat() * (H - 1);
+			} else {
+				points[0][i] = edges[i - n][0];
+				points[1][i] = edges[i - n][1];
+			}
+			points[2][i] = random.nextFloat();
+		}
+
+		// a point with no intensity is skipped
+		points[2][n / 2] = Float.NaN;
+		return points;
+	}
+
+	private static InfinidecimalCore OneByOne(float[][] points, Storage storage) {
+		InfinidecimalCore canvas = new InfinidecimalCore(W, H, storage);
+		for (int i = 0; i < points[0].length; i++)
+			canvas.Dot(points[0][i], points[1][i], points[2][i]);
+		return canvas;
+	}
+
+	@Test
+	public void DotsMatchDot() {
+		float[][] points = Points(5000, 1);
+		for (Storage storage : new Storage[] { Storage.FLOAT, Storage.DOUBLE }) {
+			InfinidecimalCore actual = new InfinidecimalCore(W, H, storage);
+			actual.Dots(points[0], points[1], points[2]);
+
+			Scenes.AssertValues(OneByOne(points, storage).GetValuesRaw(), actual.GetValuesRaw(), 1e-5f);
+		}
+	}
+
+	@Test
+	public void DotsWithPenMatchDot() {
+		float[][] points = Points(5000, 2);
+
+		InfinidecimalCore expected = new InfinidecimalCore(W, H);
+		expected.SetIntensity(0.3f);
+		for (int i = 0; i < points[0].length; i++)
+			expected.Dot(points[0][i], points[1][i]);
+
+		InfinidecimalCore actual = new InfinidecimalCore(W, H);
+		actual.SetIntensity(0.3f);
+		actual.Dots(points[0], points[1]);
+
+		Scenes.AssertValues(expected.GetValuesRaw(), actual.GetValuesRaw(), 1e-5f);
+	}
+
+	@Test
+	public void CarvedDotsMatchDot() {
+		float[][] points = Points(5000, 3);
+
+		InfinidecimalCore expected = OneByOne(Points(5000, 4), Storage.FLOAT);
+		InfinidecimalCore actual = OneByOne(Points(5000, 4), Storage.FLOAT);
+		expected.SetCarve(true);
+		actual.SetCarve(true);
+
+		for (int i = 0; i < points[0].length; i++)
+			expected.Dot(points[0][i], points[1][i], points[2][i]);
+		actual.Dots(points[0], points[1], points[2]);
+
+		Scenes.AssertValues(expected.GetValuesRaw(), actual.GetValuesRaw(), 1e-5f);
+	}
+
+	/**
+	 * In concurrent mode the points of several threads are collected in runs
+	 * and applied under the stripe locks, which has to add up to the same
+	 * values as plotting all of them one by one.
+	 */
+	@Test
+	public void ConcurrentDotsMatchDot() throws Exception {
+		final int threads = 4;
+		final float[][][] parts = new float[threads][][];
+		for (int t = 0; t < threads; t++)
+			parts[t] = Points(20000, 10 + t);
+
+		InfinidecimalCore expected = new InfinidecimalCore(W, H);
+		for (float[][] points : parts)
+			for (int i = 0; i < points[0].length; i++)
+				expected.Dot(points[0][i], points[1][i], points[2][i]);
+
+		final InfinidecimalCore actual = new InfinidecimalCore(W, H);
+		actual.SetConcurrent(true);
+
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final float[][] points = parts[t];
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					actual.Dots(points[0], points[1], points[2]);
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers)
+			worker.join();
+
+		Scenes.AssertValues(expected.GetValuesRaw(), actual.GetValuesRaw(), 1e-5f);
+	}
+}
@@ -0,0 +1,139 @@
+package goodRectangle.infinidecimal;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * FastPathTest.java - tests of the fast paths of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Points on whole pixels skip the pixels the bilinear split would give
+ * nothing, and images on whole pixels are plotted row by row. Both have to
+ * leave the same values as the general path.
+ */
+public class FastPathTest {
+	private static final int W = 97, H = 61;
+
+	/**
+	 * Splits a point between the four pixels around it, like the general
+	 * path of Dot() does.
+	 */
+	private static void Split(float[] vals, float xf, float yf, float val) {
+		int x0 = (int) Math.floor(xf), y0 = (int) Math.floor(yf);
+		float xr = xf - x0, yr = yf - y0;
+
+		vals[y0 * W + x0] += (1 - xr) * (1 - yr) * val;
+		vals[y0 * W + x0 + 1] += xr * (1 - yr) * val;
+		vals[(y0 + 1) * W + x0 + 1] += xr * yr * val;
+		vals[(y0 + 1) * W + x0] += (1 - xr) * yr * val;
+	}
+
+	private static void AssertDot(float x, float y) {
+		InfinidecimalCore canvas = new InfinidecimalCore(W, H);
+		canvas.Dot(x, y, 0.7f);
+
+		float[] expected = new float[W * H];
+		Split(expected, x, y, 0.7f);
+
+		assertArrayEquals(x + ", " + y, expected, canvas.GetValuesRaw(), 0);
+	}
+
+	@Test
+	public void DotOnWholePixel() {
+		AssertDot(10, 20);
+	}
+
+	@Test
+	public void DotOnWholeRow() {
+		AssertDot(10.25f, 20);
+	}
+
+	@Test
+	public void DotOnWholeColumn() {
+		AssertDot(10, 20.75f);
+	}
+
+	@Test
+	public void DotBetweenPixels() {
+		AssertDot(10.5f, 20.125f);
+	}
+
+	private static int[] Source(int iw, int ih) {
+		Random random = new Random(iw * 31 + ih);
+		int[] pixels = new int[iw * ih];
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+		return pixels;
+	}
+
+	/**
+	 * Plots an image point by point with Dot(), like the general path of
+	 * Image() does.
+	 */
+	private static InfinidecimalCore Dots(int[] pixels, int iw, int ih, float x, float y, int sizex, int sizey) {
+		InfinidecimalCore canvas = new InfinidecimalCore(W, H);
+
+		for (int i = 0; i < sizey; i++) {
+			for (int j = 0; j < sizex; j++) {
+				float pxf = (iw - 1) * j / (float) (sizex - 1);
+				float pyf = (ih - 1) * i / (float) (sizey - 1);
+
+				int px = (int) Math.floor(pxf), py = (int) Math.floor(pyf);
+				int pxn = px == iw - 1 ? px : px + 1;
+				int pyn = py == ih - 1 ? py : py + 1;
+
+				float rx = pxf - px, ry = pyf - py;
+
+				float val = 1 * ((1 - rx) * (1 - ry) * Sum(pixels[py * iw + px])
+						+ (1 - rx) * ry * Sum(pixels[pyn * iw + px])
+						+ rx * ry * Sum(pixels[pyn * iw + pxn])
+						+ rx * (1 - ry) * Sum(pixels[py * iw + pxn])) / 765;
+
+				canvas.Dot(j + x, i + y, val);
+			}
+		}
+
+		return canvas;
+	}
+
+	private static int Sum(int c) {
+		return (c >> 16 & 0xFF) + (c >> 8 & 0xFF) + (c & 0xFF);
+	}
+
+	@Test
+	public void ImageOnWholePixel() {
+		int[] pixels = Source(30, 20);
+
+		for (float[] at : new float[][] { { 5, 7 }, { -10, -4 }, { 80, 50 } }) {
+			InfinidecimalCore canvas = new InfinidecimalCore(W, H);
+			canvas.Image(pixels, 30, 20, at[0], at[1]);
+
+			assertArrayEquals(Dots(pixels, 30, 20, at[0], at[1], 30, 20).GetValuesRaw(), canvas.GetValuesRaw(), 1e-6f);
+		}
+	}
+
+	@Test
+	public void ScaledImageOnWholePixel() {
+		int[] pixels = Source(30, 20);
+
+		for (int[] size : new int[][] { { 45, 33 }, { 12, 9 }, { 30, 40 } }) {
+			InfinidecimalCore canvas = new InfinidecimalCore(W, H);
+			canvas.Image(pixels, 30, 20, 3, 4, size[0], size[1]);
+
+			assertArrayEquals(Dots(pixels, 30, 20, 3, 4, size[0], size[1]).GetValuesRaw(), canvas.GetValuesRaw(), 1e-6f);
+		}
+	}
+
+	@Test
+	public void ImageBetweenPixels() {
+		int[] pixels = Source(30, 20);
+
+		InfinidecimalCore canvas = new InfinidecimalCore(W, H);
+		canvas.Image(pixels, 30, 20, 5.5f, 7.25f);
+
+		assertArrayEquals(Dots(pixels, 30, 20, 5.5f, 7.25f, 30, 20).GetValuesRaw(), canvas.GetValuesRaw(), 1e-6f);
+	}
+}
@@ -0,0 +1,107 @@
+package goodRectangle.infinidecimal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * FillTest.java - tests of the filled shapes of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Filled shapes leave the share of every pixel they cover, by the nonzero
+ * winding rule, so the values of a fill add up to its area.
+ */
+public class FillTest {
+	private static final int W = 120, H = 100;
+
+	private static float Sum(InfinidecimalCore canvas) {
+		double sum = 0;
+		for (float v : canvas.GetValuesRaw())
+			sum += v;
+		return (float) sum;
+	}
+
+	private static float Max(InfinidecimalCore canvas) {
+		float max = 0;
+		for (float v : canvas.GetValuesRaw())
+			max = Math.max(max, v);
+		return max;
+	}
+
+	private static InfinidecimalCore Polygon(float... coords) {
+		float[] xs = new float[coords.length / 2], ys = new float[coords.length / 2];
+		for (int i = 0; i < xs.length; i++) {
+			xs[i] = coords[2 * i];
+			ys[i] = coords[2 * i + 1];
+		}
+
+		InfinidecimalCore canvas = new InfinidecimalCore(W, H);
+		canvas.FillPolygon(xs, ys);
+		return canvas;
+	}
+
+	@Test
+	public void RectangleCoversItsArea() {
+		InfinidecimalCore canvas = new InfinidecimalCore(W, H);
+		canvas.FillRectangle(10.25f, 20.5f, 30.5f, 12.75f);
+
+		assertEquals(30.5f * 12.75f, Sum(canvas), 1e-3f);
+		assertEquals(1, Max(canvas), 1e-6f);
+	}
+
+	@Test
+	public void OppositeLoopsDoNotCancel() {
+		// a bow tie: the left triangle winds one way, the right one the other
+		InfinidecimalCore bowtie = Polygon(10.3f, 10.7f, 70.6f, 80.2f, 70.6f, 10.7f, 10.3f, 80.2f);
+
+		InfinidecimalCore triangles = new InfinidecimalCore(W, H);
+		float cx = 40.45f, cy = 45.45f;
+		triangles.FillPolygon(new float[] { 10.3f, cx, 10.3f }, new float[] { 10.7f, cy, 80.2f });
+		triangles.FillPolygon(new float[] { 70.6f, 70.6f, cx }, new float[] { 10.7f, 80.2f, cy });
+
+		Scenes.AssertValues(triangles.GetValuesRaw(), bowtie.GetValuesRaw(), 1e-3f);
+	}
+
+	@Test
+	public void SameWayOverlapsAreFilledOnce() {
+		float[] star = new float[20], outline = new float[20];
+		for (int i = 0; i < 5; i++) {
+			double a = -Math.PI / 2 + i * 4 * Math.PI / 5;
+			star[2 * i] = 60 + 40 * (float) Math.cos(a);
+			star[2 * i + 1] = 50 + 40 * (float) Math.sin(a);
+		}
+
+		// the outline of the same star, without the crossings
+		double inner = 40 * Math.cos(2 * Math.PI / 5) / Math.cos(Math.PI / 5);
+		for (int i = 0; i < 10; i++) {
+			double a = -Math.PI / 2 + i * Math.PI / 5;
+			double r = i % 2 == 0 ? 40 : inner;
+			outline[2 * i] = 60 + (float) (r * Math.cos(a));
+			outline[2 * i + 1] = 50 + (float) (r * Math.sin(a));
+		}
+
+		InfinidecimalCore pentagram = Polygon(java.util.Arrays.copyOf(star, 10));
+		Scenes.AssertValues(Polygon(outline).GetValuesRaw(), pentagram.GetValuesRaw(), 1e-3f);
+		assertEquals(1, Max(pentagram), 1e-4f);
+	}
+
+	@Test
+	public void OppositeOverlapsAreLeftEmpty() {
+		// a square with a square inside it going around the other way, joined
+		// by a seam, leaves a hole
+		InfinidecimalCore ring = Polygon(10, 10, 90, 10, 90, 90, 10, 90, 10, 10, 30, 30, 30, 70, 70, 70, 70, 30, 30, 30);
+		assertEquals(80 * 80 - 40 * 40, Sum(ring), 1e-2f);
+		assertEquals(0, ring.GetValuesRaw()[50 * W + 50], 0);
+
+		// the same square going around the same way is filled once
+		InfinidecimalCore twice = Polygon(10, 10, 90, 10, 90, 90, 10, 90, 10, 10, 30, 30, 70, 30, 70, 70, 30, 70, 30, 30);
+		assertEquals(80 * 80, Sum(twice), 1e-2f);
+		assertEquals(1, Max(twice), 1e-6f);
+	}
+
+	@Test
+	public void SimplePolygonsAreSimple() {
+		assertTrue(Winding.Simple(new float[] { 0, 10, 10, 0 }, new float[] { 0, 0, 10, 10 }, 4));
+		assertFalse(Winding.Simple(new float[] { 0, 10, 10, 0 }, new float[] { 0, 10, 0, 10 }, 4));
+	}
+}
@@ -0,0 +1,56 @@
+package goodRectangle.infinidecimal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * LevelsTest.java - tests of the levels of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ */
+public class LevelsTest {
+	/**
+	 * Returns a canvas of the given size with the same value in every pixel.
+	 */
+	private static InfinidecimalCore Flat(int w, int h, boolean max) {
+		InfinidecimalCore canvas = new InfinidecimalCore(w, h);
+		canvas.SetNormalize(false);
+		canvas.SetLevelMax(max);
+
+		for (int y = 0; y < h; y++)
+			for (int x = 0; x < w; x++)
+				canvas.Dot(x, y, 100);
+
+		return canvas;
+	}
+
+	private static void AssertFlat(int w, int h, boolean max) {
+		InfinidecimalCore canvas = Flat(w, h, max);
+		int[] base = new int[w * h];
+		canvas.Output(base);
+
+		for (int level = 1; level < canvas.Levels(); level++) {
+			int lw = canvas.Width(level), lh = canvas.Height(level);
+			int[] pixels = new int[lw * lh];
+			canvas.Output(pixels, level, 0, 0, lw, lh);
+
+			for (int i = 0; i < pixels.length; i++)
+				assertEquals("level " + level + ", pixel " + i, base[0], pixels[i]);
+		}
+	}
+
+	@Test
+	public void EvenLevelsKeepFlatCanvas() {
+		AssertFlat(64, 32, false);
+	}
+
+	@Test
+	public void OddEdgesAreAveragedOverTheirPixels() {
+		AssertFlat(67, 45, false);
+	}
+
+	@Test
+	public void OddEdgesKeepHighestValue() {
+		AssertFlat(67, 45, true);
+	}
+}
@@ -0,0 +1,130 @@
+package goodRectangle.infinidecimal;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * LinesTest.java - tests of the batched lines of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Lines(float[]) draws its lines tile by tile in parallel, and has to leave
+ * the same values as drawing them one by one with Line(). Lines(File) streams
+ * the same layout from a file, with an optional intensity per line.
+ */
+public class LinesTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static float[] Coords(int n, int w, int h, long seed) {
+		Random random = new Random(seed);
+		float[] coords = new float[4 * n];
+
+		for (int i = 0; i < coords.length; i += 2) {
+			coords[i] = random.nextFloat() * (w + 40) - 20;
+			coords[i + 1] = random.nextFloat() * (h + 40) - 20;
+		}
+
+		return coords;
+	}
+
+	private static void AssertSameAsLine(int n, float weight) {
+		float[] coords = Coords(n, 1024, 768, n);
+
+		InfinidecimalCore expected = new InfinidecimalCore(1024, 768);
+		expected.SetWeight(weight);
+		for (int i = 0; i < coords.length; i += 4)
+			expected.Line(coords[i], coords[i + 1], coords[i + 2], coords[i + 3]);
+
+		InfinidecimalCore actual = new InfinidecimalCore(1024, 768);
+		actual.SetWeight(weight);
+		actual.Lines(coords);
+
+		Scenes.AssertValues(expected.GetValuesRaw(), actual.GetValuesRaw(), 1e-5f);
+	}
+
+	@Test
+	public void FewThinLines() {
+		AssertSameAsLine(10, 1);
+	}
+
+	@Test
+	public void ManyThinLines() {
+		AssertSameAsLine(5000, 1);
+	}
+
+	@Test
+	public void ManyThickLines() {
+		AssertSameAsLine(2000, 5);
+	}
+
+	/**
+	 * Writes the values as little-endian floats, followed by the given number
+	 * of bytes of a record that was cut off.
+	 */
+	private File Write(float[] values, int trailing) throws Exception {
+		ByteBuffer bytes = ByteBuffer.allocate(4 * values.length + trailing).order(ByteOrder.LITTLE_ENDIAN);
+		for (float value : values)
+			bytes.putFloat(value);
+		while (bytes.hasRemaining())
+			bytes.put((byte) 0x3F);
+
+		File file = folder.newFile();
+		Files.write(file.toPath(), bytes.array());
+		return file;
+	}
+
+	/**
+	 * Streams more lines than fit in a single chunk, in the 4-float layout.
+	 */
+	@Test
+	public void FileMatchesLine() throws Exception {
+		int w = 256, h = 192;
+		float[] coords = Coords(70000, w, h, 1);
+		File file = Write(coords, 9);
+
+		InfinidecimalCore expected = new InfinidecimalCore(w, h);
+		for (int i = 0; i < coords.length; i += 4)
+			expected.Line(coords[i], coords[i + 1], coords[i + 2], coords[i + 3]);
+
+		InfinidecimalCore actual = new InfinidecimalCore(w, h);
+		actual.Lines(file);
+
+		Scenes.AssertValues(expected.GetValuesRaw(), actual.GetValuesRaw(), 1e-5f);
+	}
+
+	/**
+	 * Streams lines with their own intensities, in the 5-float layout.
+	 */
+	@Test
+	public void FileWithIntensitiesMatchesLine() throws Exception {
+		int w = 512, h = 384, n = 3000;
+		float[] coords = Coords(n, w, h, 2);
+		float[] records = new float[5 * n];
+		Random random = new Random(3);
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(coords, 4 * i, records, 5 * i, 4);
+			records[5 * i + 4] = random.nextFloat() * 2;
+		}
+		File file = Write(records, 16);
+
+		InfinidecimalCore expected = new InfinidecimalCore(w, h);
+		expected.SetWeight(3);
+		for (int i = 0; i < records.length; i += 5) {
+			expected.SetIntensity(records[i + 4]);
+			expected.Line(records[i], records[i + 1], records[i + 2], records[i + 3]);
+		}
+
+		InfinidecimalCore actual = new InfinidecimalCore(w, h);
+		actual.SetWeight(3);
+		actual.Lines(file, true);
+
+		Scenes.AssertValues(expected.GetValuesRaw(), actual.GetValuesRaw(), 1e-5f);
+	}
+}
@@ -0,0 +1,61 @@
+package goodRectangle.infinidecimal;
+
+import org.junit.Test;
+
+/**
+ * MergeTest.java - tests of merging Infinidecimal Canvases
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Merging is a sum, so the order and the grouping of the merges may only
+ * change the rounding of the values.
+ */
+public class MergeTest {
+	private static InfinidecimalCore Canvas(long seed) {
+		InfinidecimalCore canvas = new InfinidecimalCore(300, 200);
+		Scenes.Draw(canvas, seed);
+		return canvas;
+	}
+
+	@Test
+	public void Associative() {
+		InfinidecimalCore left = Canvas(7);
+		left.Merge(Canvas(8));
+		left.Merge(Canvas(9));
+
+		InfinidecimalCore right = Canvas(8);
+		right.Merge(Canvas(9));
+		InfinidecimalCore grouped = Canvas(7);
+		grouped.Merge(right);
+
+		Scenes.AssertValues(left.GetValuesRaw(), grouped.GetValuesRaw(), 1e-5f);
+	}
+
+	@Test
+	public void ManyAtOnceMatchesOneByOne() {
+		InfinidecimalCore single = Canvas(10);
+		for (long seed = 11; seed < 15; seed++)
+			single.Merge(Canvas(seed));
+
+		InfinidecimalCore batch = Canvas(10);
+		batch.Merge(new InfinidecimalCore[] { Canvas(11), Canvas(12), Canvas(13), Canvas(14) });
+
+		Scenes.AssertValues(single.GetValuesRaw(), batch.GetValuesRaw(), 1e-5f);
+	}
+
+	@Test
+	public void MatchesDrawingOnOneCanvas() {
+		InfinidecimalCore merged = new InfinidecimalCore(300, 200);
+		merged.Merge(new InfinidecimalCore[] { Canvas(15), Canvas(16) });
+
+		InfinidecimalCore drawn = Canvas(15);
+		Scenes.Draw(drawn, 16);
+
+		Scenes.AssertValues(drawn.GetValuesRaw(), merged.GetValuesRaw(), 1e-5f);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void RejectsItself() {
+		InfinidecimalCore canvas = Canvas(17);
+		canvas.Merge(canvas);
+	}
+}
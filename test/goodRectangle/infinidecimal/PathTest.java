@@ -0,0 +1,68 @@
+package goodRectangle.infinidecimal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * PathTest.java - tests of the polylines and polygons of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * A path is drawn on a single stroke buffer, so the pixels where its
+ * segments meet are drawn once, where separate Line() calls draw them once
+ * for every segment.
+ */
+public class PathTest {
+	private static final int W = 20, H = 20;
+
+	private static float At(InfinidecimalCore canvas, int x, int y) {
+		return canvas.GetValuesRaw()[y * W + x];
+	}
+
+	@Test
+	public void JointIsDrawnOnce() {
+		InfinidecimalCore path = new InfinidecimalCore(W, H);
+		path.Polyline(new float[] { 2, 10, 10 }, new float[] { 10, 10, 2 });
+
+		InfinidecimalCore lines = new InfinidecimalCore(W, H);
+		lines.Line(2, 10, 10, 10);
+		lines.Line(10, 10, 10, 2);
+
+		assertEquals(1, At(path, 10, 10), 1e-5f);
+		assertEquals(2, At(lines, 10, 10), 1e-5f);
+
+		// away from the joint, both draw the same
+		assertEquals(At(lines, 5, 10), At(path, 5, 10), 1e-5f);
+		assertEquals(At(lines, 10, 5), At(path, 10, 5), 1e-5f);
+	}
+
+	@Test
+	public void PolygonClosesLastEdge() {
+		float[] xs = { 3, 16, 16 }, ys = { 3, 3, 16 };
+
+		InfinidecimalCore open = new InfinidecimalCore(W, H);
+		open.Polyline(xs, ys);
+		assertEquals(0, At(open, 8, 8), 0);
+
+		InfinidecimalCore closed = new InfinidecimalCore(W, H);
+		closed.Polygon(xs, ys);
+		assertEquals(1, At(closed, 8, 8), 1e-5f);
+
+		// the same as an open path that goes back to the first vertex
+		InfinidecimalCore back = new InfinidecimalCore(W, H);
+		back.Polyline(new float[] { 3, 16, 16, 3 }, new float[] { 3, 3, 16, 3 });
+		Scenes.AssertValues(back.GetValuesRaw(), closed.GetValuesRaw(), 1e-5f);
+	}
+
+	@Test
+	public void SingleVertexIsADot() {
+		InfinidecimalCore path = new InfinidecimalCore(W, H);
+		path.Polyline(new float[] { 7.25f }, new float[] { 9.5f });
+
+		InfinidecimalCore dot = new InfinidecimalCore(W, H);
+		dot.Dot(7.25f, 9.5f);
+
+		assertTrue(path.GetMaxValue() > 0);
+		Scenes.AssertValues(dot.GetValuesRaw(), path.GetValuesRaw(), 1e-5f);
+	}
+}
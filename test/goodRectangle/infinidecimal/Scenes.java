@@ -0,0 +1,60 @@
+package goodRectangle.infinidecimal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+/**
+ * Scenes.java - shared drawings and checks of the Infinidecimal Canvas tests
+ * Copyright (C) 2020 C. Sina Cetin
+ */
+final class Scenes {
+	private Scenes() {
+	}
+
+	/**
+	 * Draws a repeatable mix of strokes, shapes and points on a canvas, all
+	 * within its bounds and some across them.
+	 *
+	 * @param canvas: canvas to draw on
+	 * @param seed:   seed of the positions
+	 */
+	static void Draw(InfinidecimalCore canvas, long seed) {
+		Random random = new Random(seed);
+		float w = canvas.Width(), h = canvas.Height();
+
+		for (int i = 0; i < 40; i++) {
+			canvas.SetWeight(1 + random.nextInt(6));
+			canvas.Line(random.nextFloat() * w, random.nextFloat() * h, random.nextFloat() * w, random.nextFloat() * h);
+		}
+
+		canvas.SetWeight(2);
+		for (int i = 0; i < 10; i++)
+			canvas.CubicBezier(random.nextFloat() * w, random.nextFloat() * h, random.nextFloat() * w, random.nextFloat() * h,
+					random.nextFloat() * w, random.nextFloat() * h, random.nextFloat() * w, random.nextFloat() * h);
+
+		canvas.SetWeight(1);
+		for (int i = 0; i < 10; i++)
+			canvas.Ellipse(random.nextFloat() * w, random.nextFloat() * h, 4 + random.nextFloat() * w / 2, 4 + random.nextFloat() * h / 2);
+
+		for (int i = 0; i < 200; i++)
+			canvas.Dot(random.nextFloat() * w, random.nextFloat() * h);
+	}
+
+	/**
+	 * Asserts that two value arrays are equal within a tolerance relative to
+	 * the larger of the two values.
+	 *
+	 * @param expected:  expected values
+	 * @param actual:    actual values
+	 * @param tolerance: relative tolerance
+	 */
+	static void AssertValues(float[] expected, float[] actual, float tolerance) {
+		assertEquals("length", expected.length, actual.length);
+
+		for (int i = 0; i < expected.length; i++) {
+			float scale = Math.max(1, Math.max(Math.abs(expected[i]), Math.abs(actual[i])));
+			assertEquals("value " + i, expected[i], actual[i], tolerance * scale);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package goodRectangle.infinidecimal;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * SnapshotTest.java - tests of the snapshots of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ */
+public class SnapshotTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private void AssertRoundTrip(boolean compress) throws Exception {
+		File file = new File(folder.getRoot(), "canvas.idc");
+
+		InfinidecimalCore saved = new InfinidecimalCore(300, 200);
+		Scenes.Draw(saved, 4);
+		saved.Save(file, compress);
+
+		InfinidecimalCore loaded = new InfinidecimalCore(300, 200);
+		Scenes.Draw(loaded, 5);
+		loaded.Load(file);
+
+		assertArrayEquals(saved.GetValuesRaw(), loaded.GetValuesRaw(), 0);
+		assertEquals(saved.GetMaxValue(), loaded.GetMaxValue(), 0);
+	}
+
+	@Test
+	public void RoundTrip() throws Exception {
+		AssertRoundTrip(false);
+	}
+
+	@Test
+	public void CompressedRoundTrip() throws Exception {
+		AssertRoundTrip(true);
+	}
+
+	@Test
+	public void MergeAddsSnapshot() throws Exception {
+		File file = new File(folder.getRoot(), "canvas.idc");
+
+		InfinidecimalCore saved = new InfinidecimalCore(300, 200);
+		Scenes.Draw(saved, 6);
+		saved.Save(file, true);
+
+		InfinidecimalCore merged = new InfinidecimalCore(300, 200);
+		Scenes.Draw(merged, 6);
+		merged.Merge(file);
+
+		float[] expected = saved.GetValuesRaw().clone();
+		for (int i = 0; i < expected.length; i++)
+			expected[i] *= 2;
+
+		assertArrayEquals(expected, merged.GetValuesRaw(), 0);
+	}
+
+	@Test
+	public void LoadsVersionOne() throws Exception {
+		File file = new File(folder.getRoot(), "canvas.idc");
+
+		InfinidecimalCore saved = new InfinidecimalCore(300, 200);
+		Scenes.Draw(saved, 8);
+		saved.Save(file, false);
+
+		// version 1 has no channel count after the flags
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		byte[] old = new byte[bytes.length - 4];
+		System.arraycopy(bytes, 0, old, 0, 20);
+		System.arraycopy(bytes, 24, old, 20, bytes.length - 24);
+		old[4] = 1;
+		Files.write(file.toPath(), old);
+
+		InfinidecimalCore loaded = new InfinidecimalCore(300, 200);
+		loaded.Load(file);
+
+		assertArrayEquals(saved.GetValuesRaw(), loaded.GetValuesRaw(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void LoadRejectsOtherSize() throws Exception {
+		File file = new File(folder.getRoot(), "canvas.idc");
+		new InfinidecimalCore(300, 200).Save(file, false);
+
+		new InfinidecimalCore(200, 300).Load(file);
+	}
+
+	/**
+	 * Saves a drawing and cuts the file short.
+	 */
+	private File Truncated(boolean compress) throws Exception {
+		File file = new File(folder.getRoot(), "canvas.idc");
+
+		InfinidecimalCore saved = new InfinidecimalCore(300, 200);
+		Scenes.Draw(saved, 9);
+		saved.Save(file, compress);
+
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length * 2 / 3));
+		return file;
+	}
+
+	private void AssertLoadKeepsCanvas(boolean compress) throws Exception {
+		File file = Truncated(compress);
+
+		InfinidecimalCore loaded = new InfinidecimalCore(300, 200);
+		Scenes.Draw(loaded, 10);
+		float[] before = loaded.GetValuesRaw().clone();
+
+		try {
+			loaded.Load(file);
+			fail("Loaded a truncated snapshot");
+		} catch (UncheckedIOException e) {
+		}
+
+		assertArrayEquals(before, loaded.GetValuesRaw(), 0);
+	}
+
+	@Test
+	public void TruncatedLoadKeepsCanvas() throws Exception {
+		AssertLoadKeepsCanvas(false);
+	}
+
+	@Test
+	public void TruncatedCompressedLoadKeepsCanvas() throws Exception {
+		AssertLoadKeepsCanvas(true);
+	}
+
+	@Test
+	public void TruncatedMergeKeepsCanvas() throws Exception {
+		for (boolean compress : new boolean[] { false, true }) {
+			File file = Truncated(compress);
+
+			InfinidecimalCore merged = new InfinidecimalCore(300, 200);
+			Scenes.Draw(merged, 11);
+			float[] before = merged.GetValuesRaw().clone();
+
+			try {
+				merged.Merge(file);
+				fail("Merged a truncated snapshot");
+			} catch (UncheckedIOException e) {
+			}
+
+			assertArrayEquals(before, merged.GetValuesRaw(), 0);
+		}
+	}
+}
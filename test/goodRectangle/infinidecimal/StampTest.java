@@ -0,0 +1,68 @@
+package goodRectangle.infinidecimal;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * StampTest.java - tests of the stamps of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Stamping a shape has to leave the same values as drawing it, for every
+ * pen, and whichever shapes were stamped before it.
+ */
+public class StampTest {
+	private static final int W = 300, H = 200, N = 500;
+
+	private static final Shape CURVE = new Shape() {
+		public void Draw(InfinidecimalCore canvas, float x, float y, Pen pen) {
+			canvas.QuadraticBezier(x, y, x + 10, y - 20, x + 25, y + 3, pen);
+		}
+	};
+
+	@Test
+	public void StampsMatchDrawing() {
+		Random random = new Random(30);
+		float[] xs = new float[N], ys = new float[N];
+		for (int i = 0; i < N; i++) {
+			xs[i] = Math.round((random.nextFloat() * (W + 60) - 30) * 4) / 4f;
+			ys[i] = Math.round((random.nextFloat() * (H + 60) - 30) * 4) / 4f;
+		}
+
+		for (Pen pen : new Pen[] { new Pen(1, 1), new Pen(3.5f, 0.3f), new Pen(2, 0.7f, true) }) {
+			InfinidecimalCore drawn = new InfinidecimalCore(W, H);
+			for (int i = 0; i < N; i++)
+				drawn.Ellipse(xs[i], ys[i], 23, 17, pen);
+			for (int i = 0; i < N; i++)
+				drawn.QuadraticBezier(xs[i], ys[i], xs[i] + 10, ys[i] - 20, xs[i] + 25, ys[i] + 3, pen);
+
+			InfinidecimalCore stamped = new InfinidecimalCore(W, H);
+			int ellipse = stamped.DefineEllipse(23, 17);
+			int curve = stamped.DefineShape(CURVE, 30);
+			stamped.Stamp(ellipse, xs, ys, pen);
+			stamped.Stamp(curve, xs, ys, pen);
+
+			assertArrayEquals("weight " + pen.Weight() + ", intensity " + pen.Intensity(), drawn.GetValuesRaw(), stamped.GetValuesRaw(), 0);
+		}
+	}
+
+	@Test
+	public void EvictedStampsAreDrawnAgain() {
+		float[] xs = { 50, 120.25f, 200.5f }, ys = { 40, 100.75f, 150 };
+
+		InfinidecimalCore cached = new InfinidecimalCore(W, H);
+		int id = cached.DefineCircle(12);
+		cached.Stamp(id, xs, ys);
+		cached.Stamp(id, xs, ys);
+
+		InfinidecimalCore evicted = new InfinidecimalCore(W, H);
+		evicted.SetStampCacheSize(0);
+		id = evicted.DefineCircle(12);
+		evicted.Stamp(id, xs, ys);
+		evicted.Stamp(id, xs, ys);
+
+		assertArrayEquals(cached.GetValuesRaw(), evicted.GetValuesRaw(), 0);
+	}
+}
@@ -0,0 +1,142 @@
+package goodRectangle.infinidecimal;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * StorageTest.java - tests of the storage backends of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ *
+ * Every backend has to record the same drawing as FLOAT, within its own
+ * precision.
+ */
+public class StorageTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static float[] Drawn(InfinidecimalCore canvas) {
+		Scenes.Draw(canvas, 1);
+		return canvas.GetValuesRaw().clone();
+	}
+
+	@Test
+	public void DoubleMatchesFloat() {
+		Scenes.AssertValues(Drawn(new InfinidecimalCore(300, 200)), Drawn(new InfinidecimalCore(300, 200, Storage.DOUBLE)), 1e-5f);
+	}
+
+	@Test
+	public void FixedMatchesFloat() {
+		// every contribution is rounded to 1/65536
+		InfinidecimalCore fixed = new InfinidecimalCore(300, 200, Storage.FIXED);
+		Scenes.AssertValues(Drawn(new InfinidecimalCore(300, 200)), Drawn(fixed), 1e-4f);
+		assertFalse(fixed.IsSaturated());
+	}
+
+	@Test
+	public void FixedSaturatesAtCeiling() {
+		ValueStore store = ValueStore.Create(Storage.FIXED, 2);
+		store.Add(0, 30000);
+		store.Add(1, 30000);
+		assertFalse(store.Saturated());
+
+		store.Add(1, 30000);
+		assertTrue(store.Saturated());
+		assertEquals(30000, store.Get(0), 0);
+		assertEquals(32768, store.Get(1), 1e-4f);
+	}
+
+	@Test
+	public void MappedMatchesFloat() throws Exception {
+		File file = new File(folder.getRoot(), "values.bin");
+		Scenes.AssertValues(Drawn(new InfinidecimalCore(300, 200)), Drawn(new InfinidecimalCore(300, 200, file)), 0);
+	}
+
+	/**
+	 * Tiles that stick out of every edge of a mapped canvas have to plot the
+	 * same pixels as the whole canvas, and empty pixels outside of it.
+	 */
+	@Test
+	public void MappedTilesMatchOutput() throws Exception {
+		int w = 300, h = 200;
+		InfinidecimalCore canvas = new InfinidecimalCore(w, h, new File(folder.getRoot(), "values.bin"));
+		Scenes.Draw(canvas, 1);
+
+		int[] whole = new int[w * h];
+		canvas.Output(whole);
+		int[] empty = new int[1];
+		canvas.Output(empty, -1, -1, 1, 1);
+
+		int size = 128;
+		int[] tile = new int[size * size];
+		for (int y = -50; y < h; y += size) {
+			for (int x = -70; x < w; x += size) {
+				canvas.Output(tile, x, y, size, size);
+				for (int i = 0; i < tile.length; i++) {
+					int px = x + i % size, py = y + i / size;
+					boolean inside = px >= 0 && px < w && py >= 0 && py < h;
+					assertEquals(px + ", " + py, inside ? whole[py * w + px] : empty[0], tile[i]);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void TileLargerThanIntIsRejected() {
+		new InfinidecimalCore(64, 64).Output(new int[16], 0, 0, 65536, 65536);
+	}
+
+	/**
+	 * A closed mapped canvas has to keep its values in the file, let the file
+	 * be mapped again, and refuse to be drawn on.
+	 */
+	@Test
+	public void ClosedMappedCanvasKeepsFile() throws Exception {
+		File file = new File(folder.getRoot(), "values.bin");
+		InfinidecimalCore canvas = new InfinidecimalCore(300, 200, file);
+		float[] drawn = Drawn(canvas);
+		canvas.Close();
+		canvas.Close();
+
+		try {
+			canvas.Dot(10, 10);
+			canvas.Flush();
+			fail("drew on a closed canvas");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		InfinidecimalCore reopened = new InfinidecimalCore(300, 200, file);
+		Scenes.AssertValues(drawn, reopened.GetValuesRaw(), 0);
+		reopened.Close();
+		assertTrue(file.delete());
+	}
+
+	@Test
+	public void MaximumMatchesFloat() {
+		for (Storage storage : new Storage[] { Storage.DOUBLE, Storage.FIXED }) {
+			InfinidecimalCore expected = new InfinidecimalCore(300, 200);
+			InfinidecimalCore actual = new InfinidecimalCore(300, 200, storage);
+			Scenes.Draw(expected, 2);
+			Scenes.Draw(actual, 2);
+
+			assertEquals(storage.toString(), expected.GetMaxValue(), actual.GetMaxValue(), 1e-5f * expected.GetMaxValue());
+		}
+	}
+
+	@Test
+	public void EmptyCanvasHasNoMaximum() {
+		for (Storage storage : new Storage[] { Storage.FLOAT, Storage.DOUBLE, Storage.FIXED }) {
+			InfinidecimalCore canvas = new InfinidecimalCore(64, 64, storage);
+			assertEquals(storage.toString(), 0, canvas.GetMaxValue(), 0);
+
+			Scenes.Draw(canvas, 3);
+			canvas.Clear();
+			assertEquals(storage.toString(), 0, canvas.GetMaxValue(), 0);
+		}
+	}
+}
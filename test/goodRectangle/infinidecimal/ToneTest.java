@@ -0,0 +1,78 @@
+package goodRectangle.infinidecimal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * ToneTest.java - tests of the tone mapping of Infinidecimal Canvas
+ * Copyright (C) 2020 C. Sina Cetin
+ */
+public class ToneTest {
+	private static final int W = 300, H = 200;
+
+	/**
+	 * Returns the output of a fresh canvas with the same drawing and mode.
+	 */
+	private static int[] Fresh(ToneMap mode, long... seeds) {
+		InfinidecimalCore canvas = new InfinidecimalCore(W, H);
+		canvas.SetToneMap(mode);
+		for (long seed : seeds)
+			Scenes.Draw(canvas, seed);
+
+		int[] pixels = new int[W * H];
+		canvas.Output(pixels);
+		return pixels;
+	}
+
+	@Test
+	public void IncrementalOutputMatchesFresh() {
+		for (ToneMap mode : ToneMap.values()) {
+			InfinidecimalCore canvas = new InfinidecimalCore(W, H);
+			canvas.SetToneMap(mode);
+			int[] pixels = new int[W * H];
+
+			Scenes.Draw(canvas, 20);
+			canvas.Output(pixels);
+			Scenes.Draw(canvas, 21);
+			canvas.Output(pixels);
+
+			assertArrayEquals(mode.toString(), Fresh(mode, 20, 21), pixels);
+		}
+	}
+
+	/**
+	 * Returns the index of a drawn pixel whose value stays in the same bin
+	 * of the histogram when it grows by a thousandth.
+	 */
+	private static int StableBin(float[] vals) {
+		for (int i = 0; i < vals.length; i++) {
+			float v = vals[i];
+			if (v > 0 && Float.floatToIntBits(v) >>> 20 == Float.floatToIntBits(v * 1.001f) >>> 20)
+				return i;
+		}
+
+		throw new AssertionError("No drawn pixel found");
+	}
+
+	@Test
+	public void PercentileKeepsMappingWhenHistogramHolds() {
+		for (ToneMap mode : new ToneMap[] { ToneMap.PERCENTILE, ToneMap.EQUALIZE }) {
+			InfinidecimalCore canvas = new InfinidecimalCore(W, H);
+			canvas.SetToneMap(mode);
+			canvas.SetStats(true);
+			int[] pixels = new int[W * H];
+
+			Scenes.Draw(canvas, 22);
+			canvas.Output(pixels);
+
+			int i = StableBin(canvas.GetValuesRaw());
+			long before = canvas.GetStats().Pixels(Stats.Op.OUTPUT);
+			canvas.Dot(i % W, i / W, canvas.GetValuesRaw()[i] * 0.001f);
+			canvas.Output(pixels);
+
+			long mapped = canvas.GetStats().Pixels(Stats.Op.OUTPUT) - before;
+			assertTrue(mode + " mapped " + mapped + " pixels", mapped < W * H);
+		}
+	}
+}